@@ -0,0 +1,87 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.LocalStorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上傳檔案寫入磁碟的路徑：FileStorageService.storeFile (串流寫入 + SHA-256 + 分層目錄)
+ * 與直接 Files.copy 的比較，依檔案大小分別量測。
+ * 檔案寫入系統暫存目錄，每一輪量測結束後刪除。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileStorageBenchmark {
+
+    @Param({"16384", "262144", "4194304"})
+    public int fileSize;
+
+    private Path directory;
+    private FileStorageService fileStorageService;
+    private byte[] content;
+    private MockMultipartFile multipartFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("storage-benchmark");
+        fileStorageService = new FileStorageService(directory + "/", DataSize.ofMegabytes(10), false, true, null,
+                new LocalStorageBackend(directory), null, new SimpleMeterRegistry());
+        content = new byte[fileSize];
+        ThreadLocalRandom.current().nextBytes(content);
+        // PNG 檔頭，讓內容通過圖片類型檢查
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+        System.arraycopy(png, 0, content, 0, png.length);
+        multipartFile = new MockMultipartFile("file", "My Photo (1).png", "image/png", content);
+    }
+
+    // 每一輪量測之後清空目錄，避免目錄中的檔案數量影響結果
+    @TearDown(Level.Iteration)
+    public void cleanUp() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+        Files.createDirectories(directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public String storeFile() {
+        return fileStorageService.storeFile(multipartFile);
+    }
+
+    // 比較基準：不檢查類型、不計算雜湊、不分層，直接複製到單層目錄
+    @Benchmark
+    public long filesCopy() throws IOException {
+        return Files.copy(new ByteArrayInputStream(content), directory.resolve(UUID.randomUUID() + ".png"));
+    }
+}
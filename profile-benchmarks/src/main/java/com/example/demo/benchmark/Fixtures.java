@@ -0,0 +1,104 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.dto.UserProfileView;
+import com.example.demo.entity.Theme;
+import com.example.demo.entity.UserProfile;
+import com.example.demo.repository.ThemeRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 各個效能測試共用的測試資料。
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static Theme theme(long id) {
+        Theme theme = new Theme();
+        theme.setId(id);
+        theme.setThemeName("Theme " + id);
+        theme.setDescription("主題 " + id + " 的說明文字，長度接近實際資料。");
+        theme.setDefaultBackgroundImageUrl("/uploads/3f/a2/" + id + "_background.jpg");
+        theme.setDefaultAvatarUrl("/uploads/1c/07/" + id + "_avatar.png");
+        theme.setDefaultButtonStyleConfig("background-color: #3366ff; color: white; border-radius: 6px; padding: 8px 16px;");
+        theme.setDefaultTextColor("#222222");
+        theme.setDefaultBackgroundColor("#fafafa");
+        theme.setVersion(3);
+        return theme;
+    }
+
+    static List<Theme> themes(int count) {
+        List<Theme> themes = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            themes.add(theme(id));
+        }
+        return themes;
+    }
+
+    static UserProfile profile(long userId, Theme theme) {
+        UserProfile profile = new UserProfile();
+        profile.setUserId(userId);
+        profile.setAvatarUrl("/uploads/8e/4b/0f1c2d3e-4f5a-6b7c-8d9e-0a1b2c3d4e5f_avatar.jpg");
+        profile.setAvatarVariants("64,128,256");
+        profile.setBackgroundImageUrl("/uploads/d2/91/1a2b3c4d-5e6f-7a8b-9c0d-1e2f3a4b5c6d_background.jpg");
+        profile.setBackgroundImageVariants("640,1280");
+        profile.setButtonStyleConfig("background-color: red; color: white;");
+        profile.setCurrentTheme(theme);
+        profile.setVersion(7);
+        return profile;
+    }
+
+    static UserProfileView view(long userId, Theme theme) {
+        return UserProfileView.from(profile(userId, theme));
+    }
+
+    /**
+     * 只實作主題查詢方法的記憶體 ThemeRepository，用來量測 ThemeService 本身 (快取) 的成本。
+     * 每次查詢會忙等 latencyNanos 模擬資料庫往返。
+     */
+    static ThemeRepository themeRepository(List<Theme> themes, long latencyNanos) {
+        return (ThemeRepository) Proxy.newProxyInstance(ThemeRepository.class.getClassLoader(),
+                new Class<?>[] {ThemeRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findById" -> {
+                            simulateLatency(latencyNanos);
+                            return themes.stream().filter(t -> t.getId().equals(args[0])).findFirst();
+                        }
+                        case "findByThemeName" -> {
+                            simulateLatency(latencyNanos);
+                            return themes.stream().filter(t -> t.getThemeName().equals(args[0])).findFirst();
+                        }
+                        case "findAll" -> {
+                            simulateLatency(latencyNanos);
+                            return new ArrayList<>(themes);
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        case "toString" -> {
+                            return "InMemoryThemeRepository";
+                        }
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static void simulateLatency(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    static long randomId(int count) {
+        return ThreadLocalRandom.current().nextLong(1, count + 1);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.dto.UserProfileBatchResponse;
+import com.example.demo.dto.UserProfileView;
+import com.example.demo.entity.Theme;
+import com.example.demo.entity.UserProfile;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * API 回應的 JSON 序列化：個人檔案 (唯讀模型與實體)、主題列表與批次查詢回應。
+ * ObjectMapper 以 Spring 預設的方式建立，與應用程式中的設定相同。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private UserProfileView view;
+    private UserProfile entity;
+    private List<Theme> themes;
+    private UserProfileBatchResponse batch;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        Theme theme = Fixtures.theme(1);
+        view = Fixtures.view(1, theme);
+        entity = Fixtures.profile(1, theme);
+        themes = Fixtures.themes(20);
+        List<UserProfileView> views = new ArrayList<>();
+        for (long id = 1; id <= 200; id++) {
+            views.add(Fixtures.view(id, theme));
+        }
+        batch = new UserProfileBatchResponse(views, List.of());
+    }
+
+    // GET /api/profile/{userId} 回傳的唯讀模型
+    @Benchmark
+    public byte[] profileView() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(view);
+    }
+
+    // 實體直接序列化 (舊的回應方式)，與唯讀模型比較
+    @Benchmark
+    public byte[] profileEntity() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(entity);
+    }
+
+    // GET /api/profile/themes
+    @Benchmark
+    public byte[] themeList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(themes);
+    }
+
+    // GET /api/profile/batch，200 位使用者
+    @Benchmark
+    public byte[] batchResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(batch);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.entity.Theme;
+import com.example.demo.repository.ThemeRepository;
+import com.example.demo.service.ButtonStyleCompiler;
+import com.example.demo.service.ReadYourWrites;
+import com.example.demo.service.ThemeBundle;
+import com.example.demo.service.ThemeBundleService;
+import com.example.demo.service.ThemeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主題查詢路徑：經過 ThemeService 快取的查詢，與每次都查詢資料庫 (以 50 微秒的模擬延遲代表) 的比較，
+ * 以及主題資源包與按鈕樣式表的取得。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThemeLookupBenchmark {
+
+    private static final int THEMES = 20;
+    private static final long DATABASE_LATENCY_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private ThemeRepository repository;
+    private ThemeService themeService;
+    private ThemeBundleService themeBundleService;
+    private ButtonStyleCompiler buttonStyleCompiler;
+
+    @Setup
+    public void setUp() {
+        List<Theme> themes = Fixtures.themes(THEMES);
+        repository = Fixtures.themeRepository(themes, DATABASE_LATENCY_NANOS);
+        themeService = new ThemeService(repository, event -> { }, new ReadYourWrites("", Duration.ZERO),
+                new SimpleMeterRegistry(), 200, Duration.ofMinutes(10));
+        buttonStyleCompiler = new ButtonStyleCompiler(1000, new SimpleMeterRegistry());
+        themeBundleService = new ThemeBundleService(themeService, buttonStyleCompiler, Jackson2ObjectMapperBuilder.json().build());
+    }
+
+    @Benchmark
+    public Optional<Theme> themeByIdCached() {
+        return themeService.getThemeById(Fixtures.randomId(THEMES));
+    }
+
+    @Benchmark
+    public Optional<Theme> themeByIdUncached() {
+        return repository.findById(Fixtures.randomId(THEMES));
+    }
+
+    @Benchmark
+    public Optional<Theme> themeByNameCached() {
+        return themeService.getThemeByName("Theme " + Fixtures.randomId(THEMES));
+    }
+
+    @Benchmark
+    public List<Theme> allThemesCached() {
+        return themeService.getAllThemes();
+    }
+
+    @Benchmark
+    public Optional<ThemeBundle> themeBundle() {
+        return themeBundleService.getBundle(Fixtures.randomId(THEMES));
+    }
+
+    @Benchmark
+    public String buttonStyleSheet() {
+        return buttonStyleCompiler.compile("background-color: #3366ff; color: white; border-radius: 6px;").css();
+    }
+
+    // 寫入時的驗證與整理 (PUT /button-style、PATCH)
+    @Benchmark
+    public String normalizeButtonStyle() {
+        return ButtonStyleCompiler.normalize("Background-Color: #3366ff ; color:white;border-radius: 6px");
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.demo.config;
+
+import com.example.demo.service.OrphanFileCollector;
+import com.example.demo.service.StorageBackend;
+import com.example.demo.service.UploadLayoutMigration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 以 Spring AOT 建置 (mvn -Pfast-start) 時，@Conditional 的結果在建置時就已經決定，執行時修改這些設定不會增減 bean：
+ * 例如建置時是本機儲存、執行時設定 file.storage.backend=s3，仍然會把檔案寫到本機目錄。
+ * 啟動時比對執行時的設定與實際建立的 bean，不一致時啟動失敗，而不是默默以建置時的設定運作。
+ * 沒有使用 AOT 時條件在啟動時評估，兩者一定一致。
+ */
+@Component
+public class AotConditionCheck implements SmartInitializingSingleton {
+
+    private final Environment environment;
+    private final StorageBackend storageBackend;
+    private final ObjectProvider<OrphanFileCollector> orphanFileCollector;
+    private final ObjectProvider<UploadLayoutMigration> uploadLayoutMigration;
+    private final ObjectProvider<ReadReplicaDataSourceConfig> readReplicaDataSourceConfig;
+
+    @Autowired
+    public AotConditionCheck(Environment environment,
+                             StorageBackend storageBackend,
+                             ObjectProvider<OrphanFileCollector> orphanFileCollector,
+                             ObjectProvider<UploadLayoutMigration> uploadLayoutMigration,
+                             ObjectProvider<ReadReplicaDataSourceConfig> readReplicaDataSourceConfig) {
+        this.environment = environment;
+        this.storageBackend = storageBackend;
+        this.orphanFileCollector = orphanFileCollector;
+        this.uploadLayoutMigration = uploadLayoutMigration;
+        this.readReplicaDataSourceConfig = readReplicaDataSourceConfig;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<String> mismatches = new ArrayList<>();
+        check(mismatches, "file.storage.backend=s3",
+                "s3".equals(environment.getProperty("file.storage.backend", "local")), !storageBackend.isLocal());
+        check(mismatches, "file.gc.enabled=true",
+                environment.getProperty("file.gc.enabled", Boolean.class, false), orphanFileCollector.getIfAvailable() != null);
+        check(mismatches, "file.upload.migrate-layout=true",
+                environment.getProperty("file.upload.migrate-layout", Boolean.class, false), uploadLayoutMigration.getIfAvailable() != null);
+        check(mismatches, "profile.datasource.replica.url",
+                !environment.getProperty("profile.datasource.replica.url", "").isBlank(), readReplicaDataSourceConfig.getIfAvailable() != null);
+        if (!mismatches.isEmpty()) {
+            throw new IllegalStateException("執行時的設定與建置時 (Spring AOT) 決定的 bean 不一致: " + String.join("; ", mismatches)
+                    + "。請以相同的設定重新建置 (-Dspring-boot.aot.jvmArguments=...)，或不使用 -Dspring.aot.enabled=true 啟動");
+        }
+    }
+
+    private static void check(List<String> mismatches, String setting, boolean configured, boolean active) {
+        if (configured != active) {
+            mismatches.add(setting + (configured ? " 已設定，但建置時沒有啟用" : " 沒有設定，但建置時已啟用"));
+        }
+    }
+}
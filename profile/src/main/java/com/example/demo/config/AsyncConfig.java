@@ -0,0 +1,29 @@
+package com.example.demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration // 背景工作使用的執行緒池
+@EnableScheduling // 檔案刪除佇列與孤兒檔案清除等定期工作
+public class AsyncConfig {
+
+    /**
+     * 產生圖片縮圖用的執行緒池。
+     * 佇列有上限，滿了就拒絕新工作 (該圖片只提供原圖)，避免上傳尖峰時無限制地佔用記憶體與 CPU。
+     */
+    @Bean(name = "imageVariantExecutor")
+    public ThreadPoolTaskExecutor imageVariantExecutor(@Value("${image.variants.pool-size:2}") int poolSize,
+                                                       @Value("${image.variants.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("image-variant-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
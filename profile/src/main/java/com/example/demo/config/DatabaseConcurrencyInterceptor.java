@@ -0,0 +1,45 @@
+package com.example.demo.config;
+
+import com.example.demo.service.DatabaseConcurrencyLimiter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * 在 API 請求處理期間持有一個資料庫許可 (見 {@link DatabaseConcurrencyLimiter})。
+ * 上傳端點不經過這個攔截器：它們在交易外接收檔案，只在更新資料庫時才取得許可。
+ */
+public class DatabaseConcurrencyInterceptor implements HandlerInterceptor {
+
+    private static final String ACQUIRED = DatabaseConcurrencyInterceptor.class.getName() + ".ACQUIRED";
+
+    private final DatabaseConcurrencyLimiter limiter;
+
+    public DatabaseConcurrencyInterceptor(DatabaseConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        try {
+            if (limiter.acquire()) {
+                request.setAttribute(ACQUIRED, Boolean.TRUE);
+            }
+            return true;
+        } catch (ResponseStatusException ex) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, limiter.retryAfterSeconds());
+            response.sendError(ex.getStatusCode().value(), ex.getReason());
+            return false;
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(ACQUIRED) != null) {
+            request.removeAttribute(ACQUIRED);
+            limiter.release();
+        }
+    }
+}
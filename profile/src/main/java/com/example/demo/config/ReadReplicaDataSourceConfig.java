@@ -0,0 +1,60 @@
+package com.example.demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * 設定唯讀副本 (profile.datasource.replica.url) 時，以主資料庫與副本兩個連線池組成路由資料來源，
+ * 唯讀交易由副本處理 (見 {@link ReplicaRoutingDataSource})。
+ * 主資料庫沿用 spring.datasource.* 與 spring.datasource.hikari.* 設定；副本使用 profile.datasource.replica.*。
+ * 沒有設定副本時不啟用，由 Spring Boot 照常建立單一資料來源。
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnExpression("!'${profile.datasource.replica.url:}'.isBlank()")
+public class ReadReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("profile.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(@Value("${profile.datasource.replica.url}") String url,
+                                              @Value("${profile.datasource.replica.username:${spring.datasource.username:}}") String username,
+                                              @Value("${profile.datasource.replica.password:${spring.datasource.password:}}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class)
+                .url(url).username(username).password(password).build();
+        dataSource.setPoolName("replica");
+        // 副本只用來讀取，連線設為唯讀，誤送到副本的寫入會直接失敗
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /**
+     * JPA 與 JdbcTemplate 使用的資料來源。
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 @Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                 MeterRegistry meterRegistry) {
+        return new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource, meterRegistry));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.demo.config;
+
+import com.example.demo.service.ReadYourWrites;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * 依目前的交易把連線導向主資料庫或唯讀副本：
+ * 唯讀交易 (@Transactional(readOnly = true) 與 Spring Data repository 的讀取方法) 使用副本；
+ * 寫入、沒有交易的操作，以及 {@link ReadYourWrites} 要求的讀取使用主資料庫。
+ * 必須包在 LazyConnectionDataSourceProxy 中，讓交易送出第一個敘述時才取得連線，此時交易的唯讀屬性才已經設定。
+ * 每次決定都記錄在 profile.datasource.routing 計數器 (以 target 與 reason 標籤區分)。
+ */
+class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Target { PRIMARY, REPLICA }
+
+    private final Counter readWrite;
+    private final Counter readYourWrites;
+    private final Counter readOnly;
+
+    ReplicaRoutingDataSource(DataSource primary, DataSource replica, MeterRegistry meterRegistry) {
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+        this.readWrite = routingCounter(meterRegistry, "primary", "read-write");
+        this.readYourWrites = routingCounter(meterRegistry, "primary", "read-your-writes");
+        this.readOnly = routingCounter(meterRegistry, "replica", "read-only");
+    }
+
+    private static Counter routingCounter(MeterRegistry meterRegistry, String target, String reason) {
+        return Counter.builder("profile.datasource.routing").description("取得資料庫連線時選擇的資料來源")
+                .tag("target", target).tag("reason", reason).register(meterRegistry);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            readWrite.increment();
+            return Target.PRIMARY;
+        }
+        if (ReadYourWrites.isPrimaryRequired()) {
+            readYourWrites.increment();
+            return Target.PRIMARY;
+        }
+        readOnly.increment();
+        return Target.REPLICA;
+    }
+}
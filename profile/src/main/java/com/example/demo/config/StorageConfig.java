@@ -0,0 +1,83 @@
+package com.example.demo.config;
+
+import com.example.demo.service.HotFileCache;
+import com.example.demo.service.LocalStorageBackend;
+import com.example.demo.service.S3StorageBackend;
+import com.example.demo.service.StorageBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.net.URI;
+import java.nio.file.Paths;
+
+/**
+ * 上傳檔案的儲存後端 (file.storage.backend)：
+ * local (預設) 以上傳目錄 (file.upload.dir) 作為儲存位置，多個節點需要共用同一個目錄；
+ * s3 以 S3 相容的物件儲存作為共用的儲存位置，上傳目錄改為各節點的熱門檔案快取，大小上限為 file.storage.cache.max-size。
+ */
+@Configuration(proxyBeanMethods = false)
+public class StorageConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "file.storage.backend", havingValue = "local", matchIfMissing = true)
+    public StorageBackend localStorageBackend(@Value("${file.upload.dir}") String fileUploadDir) {
+        return new LocalStorageBackend(Paths.get(fileUploadDir));
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(name = "file.storage.backend", havingValue = "s3")
+    static class S3StorageConfig {
+
+        @Bean(destroyMethod = "close")
+        public S3Client storageS3Client(@Value("${file.storage.s3.region:us-east-1}") String region,
+                                        @Value("${file.storage.s3.endpoint:}") String endpoint,
+                                        @Value("${file.storage.s3.path-style-access:false}") boolean pathStyleAccess,
+                                        @Value("${file.storage.s3.access-key:}") String accessKey,
+                                        @Value("${file.storage.s3.secret-key:}") String secretKey) {
+            // 沒有設定金鑰時使用預設的來源 (環境變數、~/.aws/credentials、EC2/ECS 的 IAM 角色)
+            AwsCredentialsProvider credentials = accessKey.isBlank()
+                    ? DefaultCredentialsProvider.builder().build()
+                    : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+            S3ClientBuilder builder = S3Client.builder()
+                    .region(Region.of(region))
+                    .credentialsProvider(credentials)
+                    .forcePathStyle(pathStyleAccess);
+            if (!endpoint.isBlank()) {
+                // S3 相容的服務 (MinIO 等) 不一定支援新版 SDK 預設附加的 CRC 檢查碼，只在 API 要求時才計算
+                builder.endpointOverride(URI.create(endpoint))
+                        .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                        .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED);
+            }
+            return builder.build();
+        }
+
+        @Bean
+        public HotFileCache hotFileCache(@Value("${file.upload.dir}") String fileUploadDir,
+                                         @Value("${file.storage.cache.max-size:2GB}") DataSize maxSize,
+                                         MeterRegistry meterRegistry) {
+            return new HotFileCache(Paths.get(fileUploadDir), maxSize.toBytes(), meterRegistry);
+        }
+
+        @Bean
+        public StorageBackend s3StorageBackend(S3Client storageS3Client,
+                                               @Value("${file.storage.s3.bucket}") String bucket,
+                                               @Value("${file.storage.s3.prefix:}") String prefix,
+                                               @Value("${file.upload.dir}") String fileUploadDir,
+                                               HotFileCache hotFileCache) {
+            return new S3StorageBackend(storageS3Client, bucket, prefix, Paths.get(fileUploadDir), hotFileCache);
+        }
+    }
+}
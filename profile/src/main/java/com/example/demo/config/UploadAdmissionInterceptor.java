@@ -0,0 +1,67 @@
+package com.example.demo.config;
+
+import com.example.demo.service.UploadAdmissionLimiter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * 上傳端點在讀取請求本體之前先取得准入許可 (見 {@link UploadAdmissionLimiter})，請求結束後歸還。
+ * multipart 請求以 spring.servlet.multipart.resolve-lazily=true 延後解析，被拒絕的上傳不會先寫入暫存檔。
+ */
+public class UploadAdmissionInterceptor implements HandlerInterceptor {
+
+    private static final String PERMIT = UploadAdmissionInterceptor.class.getName() + ".PERMIT";
+
+    private final UploadAdmissionLimiter limiter;
+
+    public UploadAdmissionInterceptor(UploadAdmissionLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        Long userId = userId(request);
+        if (userId == null) {
+            // 路徑不符合 (例如不支援的方法)，交給後續處理回應錯誤
+            return true;
+        }
+        // 沒有 Content-Length 也不是 chunked 時表示沒有請求本體 (查詢、完成上傳等)
+        long contentLength = request.getContentLengthLong();
+        if (contentLength < 0 && request.getHeader(HttpHeaders.TRANSFER_ENCODING) == null) {
+            contentLength = 0;
+        }
+        try {
+            request.setAttribute(PERMIT, limiter.admit(userId, contentLength));
+            return true;
+        } catch (UploadAdmissionLimiter.UploadRejectedException ex) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+            response.sendError(ex.getStatusCode().value(), ex.getReason());
+            return false;
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(PERMIT) instanceof UploadAdmissionLimiter.Permit permit) {
+            request.removeAttribute(PERMIT);
+            permit.release();
+        }
+    }
+
+    private static Long userId(HttpServletRequest request) {
+        Object variables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (!(variables instanceof Map<?, ?> map) || !(map.get("userId") instanceof String value)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
@@ -1,24 +1,40 @@
 package com.example.demo.config; // 請根據您的實際套件名稱調整
 
-import org.springframework.beans.factory.annotation.Value;
+import com.example.demo.service.DatabaseConcurrencyLimiter;
+import com.example.demo.service.UploadAdmissionLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration // 標記為 Spring 配置類
 public class WebConfig implements WebMvcConfigurer {
 
-    // 從 application.properties 讀取 'file.upload.dir' 的值
-    @Value("${file.upload.dir}")
-    private String fileUploadDir;
+    private final DatabaseConcurrencyLimiter databaseConcurrencyLimiter;
+    private final UploadAdmissionLimiter uploadAdmissionLimiter;
+
+    @Autowired
+    public WebConfig(DatabaseConcurrencyLimiter databaseConcurrencyLimiter, UploadAdmissionLimiter uploadAdmissionLimiter) {
+        this.databaseConcurrencyLimiter = databaseConcurrencyLimiter;
+        this.uploadAdmissionLimiter = uploadAdmissionLimiter;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // 使用虛擬執行緒時限制同時存取資料庫的 API 請求數；上傳端點自行在更新資料庫時取得許可
+        registry.addInterceptor(new DatabaseConcurrencyInterceptor(databaseConcurrencyLimiter))
+                .addPathPatterns("/api/**")
+                .excludePathPatterns("/api/profile/*/avatar", "/api/profile/*/background-image", "/api/profile/*/uploads/**");
+        // 上傳端點 (包含可續傳上傳的區塊) 在接收檔案前檢查同時上傳數與上傳速度，超過時回傳 429
+        registry.addInterceptor(new UploadAdmissionInterceptor(uploadAdmissionLimiter))
+                .addPathPatterns("/api/profile/*/avatar", "/api/profile/*/background-image", "/api/profile/*/uploads/**");
+    }
 
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        // 1. 配置上傳圖片的訪問路徑
-        // 當瀏覽器請求 /uploads/** 時，Spring 會到 fileUploadDir 指定的真實檔案系統路徑去尋找檔案。
-        // 請確保 fileUploadDir 的值是 "C:/Users/User/eclipse-workspace/profile/uploads/" 且以斜線結尾。
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations("file:" + fileUploadDir); // 注意 "file:" 前綴
+        // 1. 上傳圖片 (/uploads/**) 不在這裡配置，改由 UploadFileController 處理：
+        //    支援零複製傳輸 (sendfile)、Range 請求、條件式請求與 immutable 快取標頭。
 
         // 2. 配置其他靜態資源 (例如您的 index.html) 的訪問路徑
         // 當瀏覽器請求根路徑 / 或其他未匹配的路徑時，Spring 會到 classpath:/static/ 去尋找檔案。
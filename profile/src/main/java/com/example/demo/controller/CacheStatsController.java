@@ -0,0 +1,56 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.ButtonStyleCompiler;
+import com.example.demo.service.ThemeService;
+import com.example.demo.service.UserProfileService;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/cache-stats") // 快取統計資料，供監控與調整快取大小使用
+public class CacheStatsController {
+
+    private final UserProfileService userProfileService;
+    private final ThemeService themeService;
+    private final ButtonStyleCompiler buttonStyleCompiler;
+
+    @Autowired
+    public CacheStatsController(UserProfileService userProfileService, ThemeService themeService,
+                                ButtonStyleCompiler buttonStyleCompiler) {
+        this.userProfileService = userProfileService;
+        this.themeService = themeService;
+        this.buttonStyleCompiler = buttonStyleCompiler;
+    }
+
+    /**
+     * 獲取個人檔案快取、主題快取與按鈕樣式表快取的統計資料。
+     *
+     * @return 各快取的命中率、淘汰次數等資訊
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Map<String, Object>>> getCacheStats() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        Map<String, Object> profiles = toMap(userProfileService.getCacheStats());
+        profiles.put("size", userProfileService.getCacheSize());
+        result.put("profiles", profiles);
+        result.put("themes", toMap(themeService.getCacheStats()));
+        result.put("buttonStyles", toMap(buttonStyleCompiler.getCacheStats()));
+        return ResponseEntity.ok(result);
+    }
+
+    private static Map<String, Object> toMap(CacheStats stats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("hitCount", stats.hitCount());
+        map.put("missCount", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("evictionCount", stats.evictionCount());
+        return map;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.UploadSessionRequest;
+import com.example.demo.dto.UploadSessionView;
+import com.example.demo.service.ResumableUploadService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * 可續傳的分段上傳 (見 {@link ResumableUploadService})：
+ * POST 建立工作階段 → PUT 依序上傳區塊 (Upload-Offset 標頭指定位移) → POST .../complete 完成。
+ * 連線中斷後 (或區塊回應 409 時) 以 GET 查詢目前位移，從那裡繼續上傳。
+ */
+@RestController
+@RequestMapping("/api/profile/{userId}/uploads")
+public class ResumableUploadController {
+
+    // 區塊的起始位移 (請求) 與目前位移 (回應)
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    private final ResumableUploadService resumableUploadService;
+
+    @Autowired
+    public ResumableUploadController(ResumableUploadService resumableUploadService) {
+        this.resumableUploadService = resumableUploadService;
+    }
+
+    /**
+     * 建立上傳工作階段。
+     *
+     * @param userId 使用者 ID
+     * @param request 要更新的圖片 (avatar 或 background-image)、原始檔案名稱與檔案大小
+     * @return 201 與工作階段狀態，Location 為之後上傳區塊的位址
+     */
+    @PostMapping
+    public ResponseEntity<UploadSessionView> createSession(@PathVariable Long userId,
+                                                           @RequestBody UploadSessionRequest request) {
+        if (request.size() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            UploadSessionView session = resumableUploadService.create(userId, request.target(), request.fileName(), request.size());
+            return ResponseEntity.created(URI.create("/api/profile/" + userId + "/uploads/" + session.uploadId()))
+                    .header(UPLOAD_OFFSET, "0")
+                    .body(session);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).build();
+        }
+    }
+
+    /**
+     * 查詢工作階段目前的位移 (連線中斷後從這裡繼續上傳)。
+     *
+     * @param userId 使用者 ID
+     * @param uploadId 工作階段 ID
+     * @return 工作階段狀態或 404 Not Found (不存在或已過期)
+     */
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<UploadSessionView> getSession(@PathVariable Long userId, @PathVariable String uploadId) {
+        try {
+            UploadSessionView session = resumableUploadService.status(userId, uploadId);
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .header(UPLOAD_OFFSET, String.valueOf(session.offset()))
+                    .body(session);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).build();
+        }
+    }
+
+    /**
+     * 上傳一個區塊，請求本體就是區塊內容。
+     *
+     * @param userId 使用者 ID
+     * @param uploadId 工作階段 ID
+     * @param offset 區塊的起始位移 (Upload-Offset 標頭)，不能大於目前位移
+     * @param content 請求本體
+     * @return 寫入後的工作階段狀態；位移不正確或另一個請求正在寫入時為 409，超出宣告的大小時為 413
+     */
+    @PutMapping("/{uploadId}")
+    public ResponseEntity<UploadSessionView> uploadChunk(@PathVariable Long userId, @PathVariable String uploadId,
+                                                         @RequestHeader(UPLOAD_OFFSET) long offset,
+                                                         InputStream content) {
+        try {
+            UploadSessionView session = resumableUploadService.writeChunk(userId, uploadId, offset, content);
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET, String.valueOf(session.offset()))
+                    .body(session);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).build();
+        }
+    }
+
+    /**
+     * 完成上傳並更新個人檔案的頭像或背景圖片。
+     *
+     * @param userId 使用者 ID
+     * @param uploadId 工作階段 ID
+     * @return 新圖片的 URL
+     */
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<String> completeSession(@PathVariable Long userId, @PathVariable String uploadId) {
+        try {
+            return ResponseEntity.ok(resumableUploadService.complete(userId, uploadId));
+        } catch (ResponseStatusException e) {
+            // 尚未收到所有區塊 (409)、檔案格式錯誤 (415)、不存在或已過期 (404)
+            return ResponseEntity.status(e.getStatusCode()).body("完成上傳失敗: " + e.getReason());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("完成上傳失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 取消上傳並刪除已上傳的區塊。
+     *
+     * @param userId 使用者 ID
+     * @param uploadId 工作階段 ID
+     * @return 204 No Content 或 404 Not Found
+     */
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> abortSession(@PathVariable Long userId, @PathVariable String uploadId) {
+        try {
+            resumableUploadService.abort(userId, uploadId);
+            return ResponseEntity.noContent().build();
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).build();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.ImageVariantService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+
+/**
+ * 提供上傳的圖片 (/uploads/**)。
+ * storeFile 產生的檔名不會重複也不會被覆寫，因此回應標記為 immutable 並給予很長的 max-age，
+ * 瀏覽器與 CDN 不需要再重新下載。支援 ETag / Last-Modified 條件式請求與單一 Range 請求，
+ * 在 Tomcat 上透過 sendfile 直接由核心傳送檔案 (零複製)。
+ * 其他容器 (或關閉 sendfile 的 connector) 沒有零複製的途徑：Servlet API 只提供輸出串流，
+ * 檔案內容會經過 JVM 的緩衝區複製到 socket。
+ */
+@Controller
+public class UploadFileController {
+
+    private static final String UPLOADS_PREFIX = "/uploads/";
+
+    // Tomcat 的 sendfile 請求屬性 (NIO/NIO2 connector 預設啟用)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // 檔案內容永遠不變，可以快取一年
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
+    // 要求縮圖但沒有縮圖、以原圖代替時，每次使用前都要重新驗證：縮圖產生後 ETag 不同，會改為提供縮圖；
+    // 原圖本身就比要求的寬度小 (永遠不會有縮圖) 時，重新驗證只會得到 304，不會重新下載
+    private static final CacheControl FALLBACK = CacheControl.noCache().cachePublic();
+
+    private final FileStorageService fileStorageService;
+    private final ImageVariantService imageVariantService;
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    @Autowired
+    public UploadFileController(FileStorageService fileStorageService, ImageVariantService imageVariantService) {
+        this.fileStorageService = fileStorageService;
+        this.imageVariantService = imageVariantService;
+    }
+
+    /**
+     * 提供上傳的檔案。請求帶有 ?w=寬度 時優先提供不小於該寬度的縮圖。
+     *
+     * @param request HTTP 請求
+     * @param response HTTP 回應
+     */
+    @RequestMapping(value = "/uploads/**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serveFile(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = urlPathHelper.getPathWithinApplication(request);
+        // 以 "." 開頭的項目是內部檔案 (寫入中的暫存檔、可續傳上傳的區塊、遷移檢查點)，不對外提供
+        Path file = path.startsWith(UPLOADS_PREFIX) && !path.contains("/.") ? fileStorageService.resolveUrl(path) : null;
+        if (file == null || !Files.isRegularFile(file)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        CacheControl cacheControl = IMMUTABLE;
+        Integer requestedWidth = requestedWidth(request);
+        if (requestedWidth != null) {
+            Path variant = imageVariantService.resolveVariant(file, requestedWidth);
+            if (variant != null) {
+                file = variant;
+            } else {
+                cacheControl = FALLBACK;
+            }
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long length = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // 條件式請求：If-None-Match / If-Modified-Since 符合時直接回傳 304 (同時會設定 ETag 與 Last-Modified)
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+        response.setContentType(MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+
+        long start = 0;
+        long end = length; // 不包含
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && ifRangeMatches(request, etag, lastModified)) {
+            long[] bounds = parseSingleRange(range, length);
+            if (bounds == null) {
+                // 無法滿足的範圍 (已設定圖片的 Content-Type，因此不經過錯誤頁面，直接回傳空內容)
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setContentLength(0);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+        }
+        response.setContentLengthLong(end - start);
+
+        if ("HEAD".equals(request.getMethod()) || end == start) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // 交給 Tomcat 在請求結束後以 sendfile 傳送，資料不經過 JVM heap
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        // 不支援 sendfile：經過輸出串流複製 (不是零複製)
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+        }
+    }
+
+    private static Integer requestedWidth(HttpServletRequest request) {
+        String value = request.getParameter("w");
+        if (value == null) {
+            return null;
+        }
+        try {
+            int width = Integer.parseInt(value);
+            return width > 0 ? width : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    // If-Range 不符合 (檔案已變更) 時忽略 Range，回傳完整內容
+    private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * 解析 "bytes=a-b"、"bytes=a-"、"bytes=-n" 形式的單一範圍。
+     * @return {start, end(不包含)}；多重範圍或格式不正確時回傳空陣列 (改為回傳完整內容)；範圍無法滿足時回傳 null。
+     */
+    private static long[] parseSingleRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // 最後 n 個位元組
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length : Math.min(Long.parseLong(last) + 1, length);
+            }
+            if (start >= length || start >= end) {
+                return null;
+            }
+            return new long[] {start, end};
+        } catch (NumberFormatException ex) {
+            return new long[0];
+        }
+    }
+}
@@ -1,18 +1,36 @@
 package com.example.demo.controller;
 
+import com.example.demo.dto.BulkInitializationResult;
+import com.example.demo.dto.UserProfileBatchResponse;
+import com.example.demo.dto.UserProfilePatch;
+import com.example.demo.dto.UserProfileView;
 import com.example.demo.entity.Theme;
-import com.example.demo.entity.UserProfile;
+import com.example.demo.service.BulkProfileInitializer;
+import com.example.demo.service.ButtonStyleCompiler;
+import com.example.demo.service.CompiledButtonStyle;
+import com.example.demo.service.ThemeBundleService;
 import com.example.demo.service.UserProfileService;
 import com.example.demo.service.ThemeService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map; // 用於接收簡單的 JSON 請求體
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @RestController // 標記為 RESTful Controller，自動將返回值序列化為 JSON
 @RequestMapping("/api/profile") // 設定基礎路徑為 /api/profile
@@ -20,11 +38,30 @@ public class UserProfileController {
 
     private final UserProfileService userProfileService;
     private final ThemeService themeService;
+    private final BulkProfileInitializer bulkProfileInitializer;
+    private final ButtonStyleCompiler buttonStyleCompiler;
+    private final ThemeBundleService themeBundleService;
+
+    // 批次查詢一次最多可以指定的使用者數
+    private final int batchMaxSize;
+
+    // 批次建立個人檔案一次最多可以指定的使用者數
+    private final int bulkInitMaxSize;
 
     @Autowired
-    public UserProfileController(UserProfileService userProfileService, ThemeService themeService) {
+    public UserProfileController(UserProfileService userProfileService, ThemeService themeService,
+                                 BulkProfileInitializer bulkProfileInitializer,
+                                 ButtonStyleCompiler buttonStyleCompiler,
+                                 ThemeBundleService themeBundleService,
+                                 @Value("${profile.batch.max-size:200}") int batchMaxSize,
+                                 @Value("${profile.bulk-init.max-size:50000}") int bulkInitMaxSize) {
         this.userProfileService = userProfileService;
         this.themeService = themeService;
+        this.bulkProfileInitializer = bulkProfileInitializer;
+        this.buttonStyleCompiler = buttonStyleCompiler;
+        this.themeBundleService = themeBundleService;
+        this.batchMaxSize = batchMaxSize;
+        this.bulkInitMaxSize = bulkInitMaxSize;
     }
 
     /**
@@ -33,21 +70,86 @@ public class UserProfileController {
      * 這裡為了範例方便，暫時從路徑變數獲取。
      *
      * @param userId 使用者 ID
-     * @return UserProfile 物件或 404 Not Found
+     * 回應帶有強 ETag；瀏覽器以 If-None-Match 重新驗證時，若未變更則回傳 304 Not Modified 且不序列化內容。
+     *
+     * @return 個人檔案唯讀模型 (UserProfileView) 或 404 Not Found
      */
     @GetMapping("/{userId}")
-    public ResponseEntity<UserProfile> getUserProfile(@PathVariable Long userId) {
+    public ResponseEntity<UserProfileView> getUserProfile(@PathVariable Long userId) {
         // 在實際應用中，這裡會是從 Spring Security 上下文獲取當前使用者 ID 的地方
         // Long authenticatedUserId = getAuthenticatedUserId(); // 假設有這樣的方法
         // if (!userId.equals(authenticatedUserId)) {
         //     return ResponseEntity.status(HttpStatus.FORBIDDEN).build(); // 禁止訪問非自己的個人檔案
         // }
 
-        Optional<UserProfile> userProfile = userProfileService.getUserProfile(userId);
-        return userProfile.map(ResponseEntity::ok) // 如果找到，返回 200 OK 和 UserProfile
+        Optional<UserProfileView> userProfile = userProfileService.getUserProfile(userId);
+        return userProfile.map(profile -> ResponseEntity.ok() // 如果找到，返回 200 OK 和 UserProfileView
+                                  .cacheControl(CacheControl.noCache()) // 可快取，但每次使用前都要重新驗證
+                                  .eTag(profile.etag())
+                                  .body(profile))
                           .orElseGet(() -> ResponseEntity.notFound().build()); // 否則返回 404 Not Found
     }
 
+    /**
+     * 獲取使用者按鈕樣式編譯後的樣式表 (.profile-button)。
+     * 網址帶有與目前樣式相符的 ?v=雜湊 時 (即個人檔案回應中的 buttonStyleUrl)，內容永遠不變，可以快取一年；
+     * 其他情況 (沒有帶版本或版本已過時) 以 ETag 重新驗證。使用相同樣式的使用者共用同一份編譯結果。
+     *
+     * @param userId 使用者 ID
+     * @param version 樣式內容的雜湊
+     * @return text/css 樣式表或 404 Not Found
+     */
+    @GetMapping(value = "/{userId}/button-style.css", produces = "text/css;charset=UTF-8")
+    public ResponseEntity<String> getButtonStyleSheet(@PathVariable Long userId,
+                                                      @RequestParam(value = "v", required = false) String version) {
+        return userProfileService.getUserProfile(userId)
+                .map(profile -> {
+                    CompiledButtonStyle style = buttonStyleCompiler.compile(profile.effectiveButtonStyleConfig());
+                    CacheControl cacheControl = style.hash().equals(version)
+                            ? CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable()
+                            : CacheControl.noCache();
+                    return ResponseEntity.ok().cacheControl(cacheControl).eTag(style.hash()).body(style.css());
+                })
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 一次獲取多位使用者的個人檔案 (例如動態牆、成員列表)，取代逐一呼叫 GET /{userId}。
+     * 後端以單一 IN 查詢 (含主題) 載入快取中沒有的個人檔案。
+     *
+     * @param ids 使用者 ID，以逗號分隔，例如 ?ids=1,2,3
+     * @return 找到的個人檔案 (依請求順序) 與找不到的使用者 ID；超過數量上限時回傳 400
+     */
+    @GetMapping("/batch")
+    public ResponseEntity<UserProfileBatchResponse> getUserProfiles(@RequestParam("ids") List<Long> ids) {
+        return batchLookup(ids);
+    }
+
+    /**
+     * 同上，使用者 ID 放在請求本體中 ({"userIds": [1, 2, 3]})，適合 ID 很多、不方便放在網址中的情況。
+     *
+     * @param payload 包含 userIds 陣列的 JSON 物件
+     * @return 找到的個人檔案與找不到的使用者 ID
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<UserProfileBatchResponse> getUserProfiles(@RequestBody Map<String, List<Long>> payload) {
+        List<Long> ids = payload.get("userIds");
+        if (ids == null) {
+            return ResponseEntity.badRequest().build(); // 請求體中缺少必要參數
+        }
+        return batchLookup(ids);
+    }
+
+    private ResponseEntity<UserProfileBatchResponse> batchLookup(List<Long> ids) {
+        List<Long> userIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (userIds.size() > batchMaxSize) {
+            return ResponseEntity.badRequest().build();
+        }
+        Map<Long, UserProfileView> profiles = userProfileService.getUserProfiles(userIds);
+        List<Long> missing = userIds.stream().filter(id -> !profiles.containsKey(id)).toList();
+        return ResponseEntity.ok(new UserProfileBatchResponse(List.copyOf(profiles.values()), missing));
+    }
+
     /**
      * 上傳並更新使用者的背景圖片。
      *
@@ -61,6 +163,9 @@ public class UserProfileController {
         try {
             String imageUrl = userProfileService.updateBackgroundImage(userId, file);
             return ResponseEntity.ok(imageUrl);
+        } catch (ResponseStatusException e) {
+            // 檔案格式錯誤 (415) 或超過大小上限 (413)
+            return ResponseEntity.status(e.getStatusCode()).body("更新背景圖片失敗: " + e.getReason());
         } catch (RuntimeException e) {
             // 實際應用中，應返回更具體的錯誤碼和訊息，例如：
             // ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
@@ -81,28 +186,96 @@ public class UserProfileController {
         try {
             String imageUrl = userProfileService.updateAvatar(userId, file);
             return ResponseEntity.ok(imageUrl);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body("更新頭像失敗: " + e.getReason());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("更新頭像失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 以串流方式上傳並更新使用者的背景圖片。
+     * 請求本體直接是圖片內容 (Content-Type 為 image/* 或 application/octet-stream)，
+     * 伺服器邊讀取邊寫入最終位置，不會先緩衝成 multipart 暫存檔。
+     *
+     * @param userId 使用者 ID
+     * @param fileName 原始檔案名稱 (X-File-Name 標頭，可省略)
+     * @param content 請求本體
+     * @return 新圖片的 URL
+     */
+    @PutMapping(value = "/{userId}/background-image", consumes = {"image/*", "application/octet-stream"})
+    public ResponseEntity<String> streamBackgroundImage(@PathVariable Long userId,
+                                                        @RequestHeader(value = "X-File-Name", defaultValue = "background") String fileName,
+                                                        InputStream content) {
+        try {
+            String imageUrl = userProfileService.updateBackgroundImage(userId, content, fileName);
+            return ResponseEntity.ok(imageUrl);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body("更新背景圖片失敗: " + e.getReason());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("更新背景圖片失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 以串流方式上傳並更新使用者的頭像。
+     *
+     * @param userId 使用者 ID
+     * @param fileName 原始檔案名稱 (X-File-Name 標頭，可省略)
+     * @param content 請求本體
+     * @return 新圖片的 URL
+     */
+    @PutMapping(value = "/{userId}/avatar", consumes = {"image/*", "application/octet-stream"})
+    public ResponseEntity<String> streamAvatar(@PathVariable Long userId,
+                                               @RequestHeader(value = "X-File-Name", defaultValue = "avatar") String fileName,
+                                               InputStream content) {
+        try {
+            String imageUrl = userProfileService.updateAvatar(userId, content, fileName);
+            return ResponseEntity.ok(imageUrl);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).body("更新頭像失敗: " + e.getReason());
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("更新頭像失敗: " + e.getMessage());
         }
     }
 
+    /**
+     * 部分更新個人檔案，只寫入請求中提供的欄位 (buttonStyleConfig、themeId)。
+     * 以單一 UPDATE 完成，不會先讀取個人檔案。
+     *
+     * @param userId 使用者 ID
+     * @param patch 要更新的欄位，未提供的欄位保持不變
+     * @return 成功時為 204；沒有要更新的欄位或主題不存在時為 400；找不到個人檔案時為 404
+     */
+    @PatchMapping("/{userId}")
+    public ResponseEntity<Void> patchUserProfile(@PathVariable Long userId, @RequestBody UserProfilePatch patch) {
+        try {
+            userProfileService.patchUserProfile(userId, patch);
+            return ResponseEntity.noContent().build();
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).build();
+        }
+    }
+
     /**
      * 更新使用者的按鈕樣式配置。
      *
      * @param userId 使用者 ID
      * @param payload 包含 buttonStyleConfig 鍵值對的 JSON 物件
-     * @return 更新後的 UserProfile 物件
+     * @return 更新後的個人檔案唯讀模型
      */
     @PutMapping("/{userId}/button-style")
-    public ResponseEntity<UserProfile> updateButtonStyle(@PathVariable Long userId,
+    public ResponseEntity<UserProfileView> updateButtonStyle(@PathVariable Long userId,
                                                         @RequestBody Map<String, String> payload) {
         String buttonStyleConfig = payload.get("buttonStyleConfig");
         if (buttonStyleConfig == null) {
             return ResponseEntity.badRequest().build(); // 請求體中缺少必要參數
         }
         try {
-            UserProfile updatedProfile = userProfileService.updateButtonStyle(userId, buttonStyleConfig);
+            UserProfileView updatedProfile = userProfileService.updateButtonStyle(userId, buttonStyleConfig);
             return ResponseEntity.ok(updatedProfile);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).build(); // 樣式不合法 (400) 或找不到使用者檔案 (404)
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build(); // 找不到使用者檔案
         }
@@ -113,18 +286,20 @@ public class UserProfileController {
      *
      * @param userId 使用者 ID
      * @param payload 包含 themeId 鍵值對的 JSON 物件
-     * @return 更新後的 UserProfile 物件
+     * @return 更新後的個人檔案唯讀模型
      */
     @PutMapping("/{userId}/theme")
-    public ResponseEntity<UserProfile> updateUserTheme(@PathVariable Long userId,
+    public ResponseEntity<UserProfileView> updateUserTheme(@PathVariable Long userId,
                                                       @RequestBody Map<String, Long> payload) {
         Long themeId = payload.get("themeId");
         if (themeId == null) {
             return ResponseEntity.badRequest().build();
         }
         try {
-            UserProfile updatedProfile = userProfileService.updateUserTheme(userId, themeId);
+            UserProfileView updatedProfile = userProfileService.updateUserTheme(userId, themeId);
             return ResponseEntity.ok(updatedProfile);
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode()).build(); // 主題不存在 (400) 或找不到使用者檔案 (404)
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null); // 例如，主題不存在
         }
@@ -132,13 +307,21 @@ public class UserProfileController {
 
     /**
      * 獲取所有可用的主題列表。
+     * ETag 由每個主題的 ID 與版本號組成，任何主題新增、修改或刪除都會改變 ETag。
      *
      * @return 所有 Theme 物件的列表
      */
     @GetMapping("/themes")
     public ResponseEntity<List<Theme>> getAllThemes() {
         List<Theme> themes = themeService.getAllThemes();
-        return ResponseEntity.ok(themes);
+        String versions = themes.stream()
+                .map(theme -> theme.getId() + "-" + theme.getVersion())
+                .collect(Collectors.joining("."));
+        String etag = "themes-" + DigestUtils.md5DigestAsHex(versions.getBytes(StandardCharsets.UTF_8));
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(etag)
+                .body(themes);
     }
 
     /**
@@ -150,19 +333,88 @@ public class UserProfileController {
     @GetMapping("/themes/{themeId}")
     public ResponseEntity<Theme> getThemeById(@PathVariable Long themeId) {
         Optional<Theme> theme = themeService.getThemeById(themeId);
-        return theme.map(ResponseEntity::ok)
+        return theme.map(t -> ResponseEntity.ok()
+                             .cacheControl(CacheControl.noCache())
+                             .eTag("t" + t.getId() + "-" + t.getVersion())
+                             .body(t))
                      .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    /**
+     * 獲取主題資源包：主題的所有預設值與樣式表 (CSS 變數與預設按鈕樣式) 合併成一個 JSON。
+     * 資源包事先壓縮好，用戶端支援 gzip 時直接回傳壓縮後的內容，不會在每次請求時壓縮。
+     *
+     * @param themeId 主題 ID
+     * @param acceptEncoding 用戶端接受的內容編碼
+     * @return 資源包或 404 Not Found
+     */
+    @GetMapping("/themes/{themeId}/bundle")
+    public ResponseEntity<byte[]> getThemeBundle(@PathVariable Long themeId,
+                                                 @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return themeBundleService.getBundle(themeId)
+                .map(bundle -> {
+                    boolean gzip = acceptsGzip(acceptEncoding);
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .cacheControl(CacheControl.noCache())
+                            .varyBy(HttpHeaders.ACCEPT_ENCODING);
+                    if (!gzip) {
+                        return response.eTag(bundle.etag()).body(bundle.json());
+                    }
+                    // 壓縮與未壓縮的內容不同，使用不同的 ETag
+                    return response.eTag(bundle.etag() + "-gz")
+                            .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                            .body(bundle.gzip());
+                })
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // Accept-Encoding 中有 gzip (或 *) 且 q 不為 0
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim();
+            if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*")) {
+                continue;
+            }
+            boolean rejected = tokens.length > 1 && tokens[1].trim().matches("q\\s*=\\s*0(\\.0*)?");
+            if (!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 批次為多位使用者建立預設個人檔案 (新使用者匯入、資料遷移)，取代逐一呼叫 initialize-profile。
+     * 已經有個人檔案的使用者會被略過，不存在的使用者列在 unknownUserIds 中。
+     *
+     * @param payload 包含 userIds 陣列的 JSON 物件
+     * @return 建立數量與每個批次的進度；超過數量上限時回傳 400
+     */
+    @PostMapping("/initialize-profiles")
+    public ResponseEntity<BulkInitializationResult> initializeUserProfiles(@RequestBody Map<String, List<Long>> payload) {
+        List<Long> userIds = payload.get("userIds");
+        if (userIds == null || userIds.size() > bulkInitMaxSize) {
+            return ResponseEntity.badRequest().build();
+        }
+        BulkInitializationResult result = bulkProfileInitializer.initializeDefaultProfiles(
+                userIds.stream().filter(Objects::nonNull).toList());
+        return ResponseEntity.ok(result);
+    }
+
     // 您可能還需要一個端點來處理預設個人檔案的建立
     // 例如：當新使用者註冊後，可以呼叫此 API 來初始化其個人檔案
     @PostMapping("/{userId}/initialize-profile")
-    public ResponseEntity<UserProfile> initializeUserProfile(@PathVariable Long userId) {
+    public ResponseEntity<UserProfileView> initializeUserProfile(@PathVariable Long userId) {
         try {
-            UserProfile defaultProfile = userProfileService.createDefaultUserProfile(userId);
+            UserProfileView defaultProfile = userProfileService.createDefaultUserProfile(userId);
             return ResponseEntity.status(HttpStatus.CREATED).body(defaultProfile);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
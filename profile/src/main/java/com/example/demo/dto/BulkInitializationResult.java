@@ -0,0 +1,26 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+/**
+ * 批次建立預設個人檔案的結果。
+ * @param requested 請求的使用者數 (去除重複後)。
+ * @param created 實際建立的個人檔案數。
+ * @param alreadyInitialized 已經有個人檔案而略過的使用者數。
+ * @param unknownUserIds 不存在的使用者 ID。
+ * @param chunks 每個批次的處理進度。
+ */
+public record BulkInitializationResult(int requested, int created, int alreadyInitialized,
+                                       List<Long> unknownUserIds, List<ChunkProgress> chunks) {
+
+    /**
+     * 單一批次的處理結果。
+     * @param chunk 批次序號 (從 1 開始)。
+     * @param size 這個批次的使用者數。
+     * @param created 這個批次建立的個人檔案數。
+     * @param alreadyInitialized 這個批次略過的使用者數。
+     * @param elapsedMillis 這個批次花費的時間 (毫秒)。
+     */
+    public record ChunkProgress(int chunk, int size, int created, int alreadyInitialized, long elapsedMillis) {
+    }
+}
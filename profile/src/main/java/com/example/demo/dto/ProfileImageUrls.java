@@ -0,0 +1,7 @@
+package com.example.demo.dto;
+
+/**
+ * 個人檔案中引用的圖片 URL，只在批次處理 (例如檔案遷移) 時使用，不需要載入整個實體。
+ */
+public record ProfileImageUrls(Long userId, String avatarUrl, String backgroundImageUrl) {
+}
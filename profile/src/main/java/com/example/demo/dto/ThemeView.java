@@ -0,0 +1,35 @@
+package com.example.demo.dto;
+
+import com.example.demo.entity.Theme;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * 主題的唯讀資料模型，嵌入在 {@link UserProfileView} 中回傳給前端。
+ * 是一般的 record，序列化時不會碰到 Hibernate 代理。
+ */
+public record ThemeView(
+        Long id,
+        String themeName,
+        String description,
+        String defaultBackgroundImageUrl,
+        String defaultAvatarUrl,
+        String defaultButtonStyleConfig,
+        String defaultTextColor,
+        String defaultBackgroundColor,
+        @JsonIgnore long version) {
+
+    /**
+     * 由 Theme 實體建立唯讀模型。
+     * @param theme Theme 實體，可以為 null。
+     * @return 對應的 ThemeView，若 theme 為 null 則回傳 null。
+     */
+    public static ThemeView from(Theme theme) {
+        if (theme == null) {
+            return null;
+        }
+        return new ThemeView(theme.getId(), theme.getThemeName(), theme.getDescription(),
+                theme.getDefaultBackgroundImageUrl(), theme.getDefaultAvatarUrl(),
+                theme.getDefaultButtonStyleConfig(), theme.getDefaultTextColor(),
+                theme.getDefaultBackgroundColor(), theme.getVersion());
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.demo.dto;
+
+/**
+ * 建立可續傳上傳工作階段的內容。
+ * @param target 完成後要更新的圖片："avatar" 或 "background-image"。
+ * @param fileName 原始檔案名稱 (可省略)。
+ * @param size 檔案的總大小 (位元組)。
+ */
+public record UploadSessionRequest(String target, String fileName, Long size) {
+}
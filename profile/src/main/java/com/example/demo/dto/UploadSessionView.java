@@ -0,0 +1,21 @@
+package com.example.demo.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * 可續傳上傳工作階段的狀態。
+ * @param uploadId 工作階段 ID。
+ * @param target 完成後要更新的圖片："avatar" 或 "background-image"。
+ * @param size 宣告的檔案總大小。
+ * @param offset 目前已連續收到的位元組數，下一個區塊從這裡開始。
+ * @param expiresAt 超過這個時間沒有再收到區塊，工作階段就會被刪除。
+ */
+public record UploadSessionView(String uploadId, String target, long size, long offset, LocalDateTime expiresAt) {
+
+    /**
+     * @return 所有區塊都已收到、可以完成上傳時為 true。
+     */
+    public boolean isComplete() {
+        return offset == size;
+    }
+}
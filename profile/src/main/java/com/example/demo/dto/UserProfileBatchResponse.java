@@ -0,0 +1,10 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+/**
+ * 批次查詢個人檔案的回應。
+ * 找不到的使用者 ID 列在 missingUserIds 中，不會讓整批查詢失敗。
+ */
+public record UserProfileBatchResponse(List<UserProfileView> profiles, List<Long> missingUserIds) {
+}
@@ -0,0 +1,16 @@
+package com.example.demo.dto;
+
+/**
+ * 部分更新個人檔案 (PATCH) 的內容。只有不是 null 的欄位會被更新，沒有提供的欄位維持原值。
+ * @param buttonStyleConfig 新的按鈕樣式配置。
+ * @param themeId 新的主題 ID。
+ */
+public record UserProfilePatch(String buttonStyleConfig, Long themeId) {
+
+    /**
+     * @return 沒有任何要更新的欄位時為 true。
+     */
+    public boolean isEmpty() {
+        return buttonStyleConfig == null && themeId == null;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.demo.dto;
+
+import com.example.demo.entity.UserProfile;
+import com.example.demo.service.ButtonStyleCompiler;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 個人檔案的唯讀資料模型 (read model)。
+ * 只包含前端需要的欄位，不包含 User 實體 (例如密碼欄位)，
+ * 由 UserProfileRepository 以單一 JOIN 查詢直接投影產生。
+ */
+public record UserProfileView(
+        Long userId,
+        String backgroundImageUrl,
+        String avatarUrl,
+        String buttonStyleConfig,
+        String backgroundImageVariants, // 已產生的縮圖寬度 (逗號分隔)，尚未產生時為 null
+        String avatarVariants,
+        ThemeView currentTheme,
+        @JsonIgnore long version) {
+
+    /**
+     * 供 JPQL 建構式查詢 (SELECT new ...) 使用的扁平建構式。
+     * LEFT JOIN 找不到主題時 themeId 為 null，此時 currentTheme 為 null。
+     */
+    public UserProfileView(Long userId, String backgroundImageUrl, String avatarUrl, String buttonStyleConfig,
+                           String backgroundImageVariants, String avatarVariants, long version, Long themeId, String themeName, String description,
+                           String defaultBackgroundImageUrl, String defaultAvatarUrl,
+                           String defaultButtonStyleConfig, String defaultTextColor,
+                           String defaultBackgroundColor, Long themeVersion) {
+        this(userId, backgroundImageUrl, avatarUrl, buttonStyleConfig, backgroundImageVariants, avatarVariants,
+                themeId == null ? null : new ThemeView(themeId, themeName, description,
+                        defaultBackgroundImageUrl, defaultAvatarUrl, defaultButtonStyleConfig,
+                        defaultTextColor, defaultBackgroundColor, themeVersion == null ? 0L : themeVersion),
+                version);
+    }
+
+    /**
+     * 由 UserProfile 實體建立唯讀模型。必須在交易內呼叫，因為 currentTheme 可能是延遲載入的代理。
+     * @param profile UserProfile 實體。
+     * @return 對應的 UserProfileView。
+     */
+    public static UserProfileView from(UserProfile profile) {
+        return new UserProfileView(profile.getUserId(), profile.getBackgroundImageUrl(), profile.getAvatarUrl(),
+                profile.getButtonStyleConfig(), profile.getBackgroundImageVariants(), profile.getAvatarVariants(),
+                ThemeView.from(profile.getCurrentTheme()), profile.getVersion());
+    }
+
+    /**
+     * 實際套用的按鈕樣式配置：個人檔案沒有自訂樣式時使用主題的預設樣式。
+     * @return 樣式配置，兩者都沒有時為 null。
+     */
+    public String effectiveButtonStyleConfig() {
+        if (buttonStyleConfig != null && !buttonStyleConfig.isBlank()) {
+            return buttonStyleConfig;
+        }
+        return currentTheme == null ? null : currentTheme.defaultButtonStyleConfig();
+    }
+
+    /**
+     * 編譯後的按鈕樣式表網址。網址帶有樣式內容的雜湊，樣式改變時網址也會改變，因此可以長期快取。
+     * @return 樣式表的相對網址。
+     */
+    @JsonProperty("buttonStyleUrl")
+    public String buttonStyleUrl() {
+        return "/api/profile/" + userId + "/button-style.css?v=" + ButtonStyleCompiler.hashOf(effectiveButtonStyleConfig());
+    }
+
+    /**
+     * 產生強 ETag 的內容。個人檔案或其主題任何一方更新時版本號都會改變，因此 ETag 也會改變。
+     * @return 不含引號的 ETag 值。
+     */
+    public String etag() {
+        return currentTheme == null
+                ? "p" + userId + "-" + version
+                : "p" + userId + "-" + version + "-t" + currentTheme.id() + "-" + currentTheme.version();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.demo.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "file_blobs") // 內容定址儲存 (content-addressed) 的檔案，每種內容只存一份
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileBlob {
+
+    // 檔案內容的 SHA-256 (十六進位)，同時也是磁碟上的檔案名稱
+    @Id
+    @Column(name = "sha256", length = 64)
+    private String sha256;
+
+    @Column(name = "file_name", nullable = false, length = 100)
+    private String fileName;
+
+    @Column(name = "size", nullable = false)
+    private long size;
+
+    @Column(name = "content_type", length = 50)
+    private String contentType;
+
+    // 引用此檔案的 UserProfile 欄位數 (avatarUrl 與 backgroundImageUrl 各算一次)，歸零時才刪除實體檔案
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+	public String getSha256() {
+		return sha256;
+	}
+
+	public void setSha256(String sha256) {
+		this.sha256 = sha256;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public void setFileName(String fileName) {
+		this.fileName = fileName;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public void setSize(long size) {
+		this.size = size;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public long getRefCount() {
+		return refCount;
+	}
+
+	public void setRefCount(long refCount) {
+		this.refCount = refCount;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+}
@@ -0,0 +1,52 @@
+package com.example.demo.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "file_deletion_queue") // 等待在背景刪除的檔案，與更新個人檔案的交易一起寫入
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingFileDeletion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    // 要刪除的檔案 URL，例如 "/uploads/3f/a2/檔名.jpg"
+    @Column(name = "file_url", nullable = false, length = 255)
+    private String fileUrl;
+
+    @Column(name = "enqueued_at", nullable = false)
+    private LocalDateTime enqueuedAt;
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getFileUrl() {
+		return fileUrl;
+	}
+
+	public void setFileUrl(String fileUrl) {
+		this.fileUrl = fileUrl;
+	}
+
+	public LocalDateTime getEnqueuedAt() {
+		return enqueuedAt;
+	}
+
+	public void setEnqueuedAt(LocalDateTime enqueuedAt) {
+		this.enqueuedAt = enqueuedAt;
+	}
+}
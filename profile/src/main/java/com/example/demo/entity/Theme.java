@@ -38,6 +38,11 @@ public class Theme {
     @Column(name = "default_background_color", length = 20)
     private String defaultBackgroundColor;
 
+    // 樂觀鎖版本號，每次更新自動加一，也用來產生主題 API 的 ETag
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long version;
+
 	public Long getId() {
 		return id;
 	}
@@ -101,6 +106,14 @@ public class Theme {
 	public void setDefaultBackgroundColor(String defaultBackgroundColor) {
 		this.defaultBackgroundColor = defaultBackgroundColor;
 	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
     
     
 
@@ -0,0 +1,101 @@
+package com.example.demo.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "upload_sessions", indexes = {
+        @Index(name = "idx_upload_sessions_expires_at", columnList = "expires_at"),
+        @Index(name = "idx_upload_sessions_user_expires_at", columnList = "user_id, expires_at")}) // 可續傳上傳的工作階段，完成或過期後刪除
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    // 工作階段 ID (UUID)，也是暫存檔的名稱
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // 完成後要更新的欄位："avatar" 或 "background-image"
+    @Column(name = "target", nullable = false, length = 20)
+    private String target;
+
+    // 原始檔案名稱
+    @Column(name = "file_name", nullable = false, length = 255)
+    private String fileName;
+
+    // 建立時宣告的檔案大小，所有區塊寫完 (暫存檔達到這個大小) 才能完成
+    @Column(name = "size", nullable = false)
+    private long size;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // 超過這個時間沒有再收到區塊就視為放棄，由背景工作刪除；每收到一個區塊就延長
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public Long getUserId() {
+		return userId;
+	}
+
+	public void setUserId(Long userId) {
+		this.userId = userId;
+	}
+
+	public String getTarget() {
+		return target;
+	}
+
+	public void setTarget(String target) {
+		this.target = target;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public void setFileName(String fileName) {
+		this.fileName = fileName;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public void setSize(long size) {
+		this.size = size;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public LocalDateTime getExpiresAt() {
+		return expiresAt;
+	}
+
+	public void setExpiresAt(LocalDateTime expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+}
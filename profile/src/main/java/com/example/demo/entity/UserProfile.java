@@ -30,8 +30,20 @@ public class UserProfile {
     @Column(name = "avatar_url", length = 255)
     private String avatarUrl;
 
+    // 背景圖片與頭像已產生的縮圖寬度 (逗號分隔，例如 "64,128")，由背景工作在產生完成後寫入
+    @Column(name = "background_image_variants", length = 100)
+    private String backgroundImageVariants;
+
+    @Column(name = "avatar_variants", length = 100)
+    private String avatarVariants;
+
     @Column(name = "button_style_config", columnDefinition = "TEXT")
     private String buttonStyleConfig; // 使用者自訂的按鈕樣式配置
+
+    // 樂觀鎖版本號，每次更新自動加一，也用來產生 GET 回應的 ETag
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long version;
     
     
 
@@ -83,6 +95,30 @@ public class UserProfile {
 
 
 
+	public String getBackgroundImageVariants() {
+		return backgroundImageVariants;
+	}
+
+
+
+	public void setBackgroundImageVariants(String backgroundImageVariants) {
+		this.backgroundImageVariants = backgroundImageVariants;
+	}
+
+
+
+	public String getAvatarVariants() {
+		return avatarVariants;
+	}
+
+
+
+	public void setAvatarVariants(String avatarVariants) {
+		this.avatarVariants = avatarVariants;
+	}
+
+
+
 	public String getButtonStyleConfig() {
 		return buttonStyleConfig;
 	}
@@ -95,6 +131,18 @@ public class UserProfile {
 
 
 
+	public long getVersion() {
+		return version;
+	}
+
+
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+
+
 	public Theme getCurrentTheme() {
 		return currentTheme;
 	}
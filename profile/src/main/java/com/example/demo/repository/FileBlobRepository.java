@@ -0,0 +1,53 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.FileBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.LockModeType;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FileBlobRepository extends JpaRepository<FileBlob, String> {
+    // 主鍵是檔案內容的 SHA-256
+
+    // 新增一個引用：內容第一次出現時建立紀錄 (ref_count = 1)，否則把 ref_count 加一。
+    // 使用單一 upsert 敘述，多個節點同時上傳相同內容也不會產生主鍵衝突。
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO file_blobs (sha256, file_name, size, content_type, ref_count, created_at) "
+            + "VALUES (:sha256, :fileName, :size, :contentType, 1, CURRENT_TIMESTAMP) "
+            + "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1", nativeQuery = true)
+    int addReference(@Param("sha256") String sha256, @Param("fileName") String fileName,
+                     @Param("size") long size, @Param("contentType") String contentType);
+
+    // 釋放一個引用 (不會減到負數)
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileBlob b SET b.refCount = b.refCount - 1 WHERE b.sha256 = :sha256 AND b.refCount > 0")
+    int releaseReference(@Param("sha256") String sha256);
+
+    // 鎖住紀錄 (SELECT ... FOR UPDATE)，在刪除實體檔案的交易中使用：
+    // 同時新增引用的 upsert 會等到這個交易結束；紀錄不存在時 InnoDB 以 gap lock 擋住同一個主鍵的 INSERT
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM FileBlob b WHERE b.sha256 = :sha256")
+    Optional<FileBlob> lockById(@Param("sha256") String sha256);
+
+    // 刪除已經沒有引用的紀錄 (在刪除實體檔案的同一個交易中)
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM FileBlob b WHERE b.sha256 = :sha256 AND b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("sha256") String sha256);
+
+    // 在指定的 SHA-256 中找出仍有引用的，供清除孤兒檔案時批次檢查
+    @Query("SELECT b.sha256 FROM FileBlob b WHERE b.sha256 IN :sha256s AND b.refCount > 0")
+    List<String> findReferencedIds(@Param("sha256s") Collection<String> sha256s);
+}
@@ -0,0 +1,23 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.PendingFileDeletion;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PendingFileDeletionRepository extends JpaRepository<PendingFileDeletion, Long> {
+
+    // 依加入順序取出一批待刪除的檔案
+    List<PendingFileDeletion> findByOrderByIdAsc(Limit limit);
+
+    // 認領一筆待刪除的檔案：回傳 1 表示由這次呼叫負責刪除 (多個節點同時處理佇列時只有一個會成功)
+    @Modifying
+    @Query("DELETE FROM PendingFileDeletion d WHERE d.id = :id")
+    int claim(@Param("id") Long id);
+}
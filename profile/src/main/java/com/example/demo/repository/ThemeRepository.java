@@ -3,12 +3,14 @@ package com.example.demo.repository;
 import com.example.demo.entity.Theme;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
 @Repository
 public interface ThemeRepository extends JpaRepository<Theme, Long> {
-    // 查找主題名稱
+    // 查找主題名稱 (唯讀交易，設定唯讀副本時由副本處理)
+    @Transactional(readOnly = true)
     Optional<Theme> findByThemeName(String themeName);
 
     // 檢查主題名稱是否存在
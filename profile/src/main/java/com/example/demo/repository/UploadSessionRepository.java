@@ -0,0 +1,39 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.UploadSession;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    // 使用者的某個工作階段 (不屬於該使用者時找不到)
+    Optional<UploadSession> findByIdAndUserId(String id, Long userId);
+
+    // 使用者目前進行中的工作階段數
+    long countByUserIdAndExpiresAtAfter(Long userId, LocalDateTime now);
+
+    // 收到區塊後延長到期時間
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadSession s SET s.expiresAt = :expiresAt WHERE s.id = :id")
+    int extend(@Param("id") String id, @Param("expiresAt") LocalDateTime expiresAt);
+
+    // 取出一批已過期的工作階段
+    List<UploadSession> findByExpiresAtBeforeOrderByExpiresAtAsc(LocalDateTime now, Limit limit);
+
+    // 認領一個工作階段 (完成、取消或過期)：回傳 1 表示由這次呼叫負責刪除暫存檔，多個節點同時處理時只有一個會成功
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM UploadSession s WHERE s.id = :id")
+    int claim(@Param("id") String id);
+}
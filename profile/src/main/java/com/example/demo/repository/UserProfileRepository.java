@@ -1,16 +1,109 @@
 package com.example.demo.repository;
 
+import com.example.demo.dto.ProfileImageUrls;
+import com.example.demo.dto.UserProfileView;
 import com.example.demo.entity.UserProfile;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserProfileRepository extends JpaRepository<UserProfile, Long> {
+public interface UserProfileRepository extends JpaRepository<UserProfile, Long>, UserProfileRepositoryCustom {
     // 這裡的主鍵是 Long 類型的 userId
 
     // 因為 UserProfile 的主鍵就是 userId，所以 findById(userId) 就能找到對應的 UserProfile
     // 您也可以明確定義一個方法來基於 userId 查找
     Optional<UserProfile> findByUserId(Long userId);
-}
\ No newline at end of file
+
+    // 以單一 LEFT JOIN 查詢直接投影成唯讀模型，不載入 User 實體，也不產生 Hibernate 代理。
+    // 讀取唯讀模型的方法在唯讀交易中執行，設定唯讀副本時由副本處理
+    String SELECT_VIEW = "SELECT new com.example.demo.dto.UserProfileView(p.userId, p.backgroundImageUrl, p.avatarUrl, "
+            + "p.buttonStyleConfig, p.backgroundImageVariants, p.avatarVariants, p.version, t.id, t.themeName, t.description, t.defaultBackgroundImageUrl, "
+            + "t.defaultAvatarUrl, t.defaultButtonStyleConfig, t.defaultTextColor, t.defaultBackgroundColor, t.version) "
+            + "FROM UserProfile p LEFT JOIN p.currentTheme t ";
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_VIEW + "WHERE p.userId = :userId")
+    Optional<UserProfileView> findViewByUserId(@Param("userId") Long userId);
+
+    // 一次查詢多位使用者的個人檔案 (含主題)，供成員列表等頁面使用；找不到的 ID 不會出現在結果中
+    @Transactional(readOnly = true)
+    @Query(SELECT_VIEW + "WHERE p.userId IN :userIds")
+    List<UserProfileView> findViewsByUserIds(@Param("userIds") Collection<Long> userIds);
+
+    // 只讀取個人檔案目前的圖片 URL (不載入實體)，同時用來確認個人檔案是否存在
+    @Query("SELECT new com.example.demo.dto.ProfileImageUrls(p.userId, p.avatarUrl, p.backgroundImageUrl) "
+            + "FROM UserProfile p WHERE p.userId = :userId")
+    Optional<ProfileImageUrls> findImageUrlsByUserId(@Param("userId") Long userId);
+
+    // 換上新的頭像並清除舊的縮圖紀錄。只有在頭像仍是 expectedUrl 時才更新 (沒有頭像時以空字串表示)，
+    // 回傳 0 表示個人檔案不存在或頭像已經被其他請求更換
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserProfile p SET p.avatarUrl = :newUrl, p.avatarVariants = NULL, p.version = p.version + 1 "
+            + "WHERE p.userId = :userId AND COALESCE(p.avatarUrl, '') = :expectedUrl")
+    int updateAvatarUrl(@Param("userId") Long userId, @Param("expectedUrl") String expectedUrl, @Param("newUrl") String newUrl);
+
+    // 換上新的背景圖片，條件同上
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserProfile p SET p.backgroundImageUrl = :newUrl, p.backgroundImageVariants = NULL, p.version = p.version + 1 "
+            + "WHERE p.userId = :userId AND COALESCE(p.backgroundImageUrl, '') = :expectedUrl")
+    int updateBackgroundImageUrl(@Param("userId") Long userId, @Param("expectedUrl") String expectedUrl, @Param("newUrl") String newUrl);
+
+    // 記錄頭像已產生的縮圖；只有在頭像仍是同一個檔案時才更新，避免覆蓋之後新上傳的頭像
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserProfile p SET p.avatarVariants = :variants, p.version = p.version + 1 "
+            + "WHERE p.userId = :userId AND p.avatarUrl = :url")
+    int updateAvatarVariants(@Param("userId") Long userId, @Param("url") String url, @Param("variants") String variants);
+
+    // 記錄背景圖片已產生的縮圖，條件同上
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserProfile p SET p.backgroundImageVariants = :variants, p.version = p.version + 1 "
+            + "WHERE p.userId = :userId AND p.backgroundImageUrl = :url")
+    int updateBackgroundImageVariants(@Param("userId") Long userId, @Param("url") String url, @Param("variants") String variants);
+
+    // 依 userId 順序 (keyset 分頁) 讀取一批個人檔案的圖片 URL，供檔案遷移使用；不需要 OFFSET，資料量大時也不會變慢
+    @Query("SELECT new com.example.demo.dto.ProfileImageUrls(p.userId, p.avatarUrl, p.backgroundImageUrl) "
+            + "FROM UserProfile p WHERE p.userId > :afterUserId ORDER BY p.userId")
+    List<ProfileImageUrls> findImageUrlsAfter(@Param("afterUserId") Long afterUserId, Limit limit);
+
+    // 把頭像 URL 換成搬移後的位置；只有在頭像仍是舊 URL 時才更新，避免覆蓋遷移期間新上傳的頭像
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserProfile p SET p.avatarUrl = :newUrl, p.version = p.version + 1 "
+            + "WHERE p.userId = :userId AND p.avatarUrl = :oldUrl")
+    int replaceAvatarUrl(@Param("userId") Long userId, @Param("oldUrl") String oldUrl, @Param("newUrl") String newUrl);
+
+    // 把背景圖片 URL 換成搬移後的位置，條件同上
+    @Modifying
+    @Transactional
+    @Query("UPDATE UserProfile p SET p.backgroundImageUrl = :newUrl, p.version = p.version + 1 "
+            + "WHERE p.userId = :userId AND p.backgroundImageUrl = :oldUrl")
+    int replaceBackgroundImageUrl(@Param("userId") Long userId, @Param("oldUrl") String oldUrl, @Param("newUrl") String newUrl);
+
+    // 建立預設個人檔案；已經有個人檔案時不做任何事 (回傳 0)。
+    // 主鍵由 users 決定 (@MapsId)，以 save() 建立需要先載入 User 實體，因此直接 INSERT
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO user_profiles (user_id, current_theme_id, version) VALUES (:userId, :themeId, 0)",
+            nativeQuery = true)
+    int insertDefaultProfile(@Param("userId") Long userId, @Param("themeId") Long themeId);
+
+    // 在指定的 URL 中找出仍被頭像或背景圖片引用的，供清除孤兒檔案時批次檢查
+    @Query("SELECT p.avatarUrl FROM UserProfile p WHERE p.avatarUrl IN :urls")
+    List<String> findReferencedAvatarUrls(@Param("urls") Collection<String> urls);
+
+    @Query("SELECT p.backgroundImageUrl FROM UserProfile p WHERE p.backgroundImageUrl IN :urls")
+    List<String> findReferencedBackgroundImageUrls(@Param("urls") Collection<String> urls);
+}
\ No newline at end of file
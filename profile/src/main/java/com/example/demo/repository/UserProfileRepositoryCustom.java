@@ -0,0 +1,16 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.UserProfilePatch;
+
+// UserProfileRepository 中無法以 @Query 表達的查詢 (實作在 UserProfileRepositoryImpl)
+public interface UserProfileRepositoryCustom {
+
+    /**
+     * 以單一 UPDATE 敘述只更新 patch 中提供的欄位，並把版本號加一。不會先載入實體。
+     * 主題必須由呼叫端先驗證存在 (外鍵也會拒絕不存在的主題)。
+     * @param userId 使用者 ID。
+     * @param patch 要更新的欄位，不可為空。
+     * @return 受影響的列數；0 表示找不到個人檔案。
+     */
+    int applyPatch(Long userId, UserProfilePatch patch);
+}
@@ -0,0 +1,39 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.UserProfilePatch;
+import com.example.demo.entity.Theme;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+// UserProfileRepositoryCustom 的實作，Spring Data 會自動合併到 UserProfileRepository
+public class UserProfileRepositoryImpl implements UserProfileRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int applyPatch(Long userId, UserProfilePatch patch) {
+        // 只把有提供的欄位放進 SET 子句，其餘欄位不會被寫入
+        StringBuilder jpql = new StringBuilder("UPDATE UserProfile p SET p.version = p.version + 1");
+        if (patch.buttonStyleConfig() != null) {
+            jpql.append(", p.buttonStyleConfig = :buttonStyleConfig");
+        }
+        if (patch.themeId() != null) {
+            jpql.append(", p.currentTheme = :theme");
+        }
+        jpql.append(" WHERE p.userId = :userId");
+
+        Query query = entityManager.createQuery(jpql.toString()).setParameter("userId", userId);
+        if (patch.buttonStyleConfig() != null) {
+            query.setParameter("buttonStyleConfig", patch.buttonStyleConfig());
+        }
+        if (patch.themeId() != null) {
+            // getReference 不會查詢主題，只用來提供外鍵值
+            query.setParameter("theme", entityManager.getReference(Theme.class, patch.themeId()));
+        }
+        return query.executeUpdate();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.BulkInitializationResult;
+import com.example.demo.dto.BulkInitializationResult.ChunkProgress;
+import com.example.demo.entity.Theme;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 批次建立預設個人檔案 (新使用者匯入、資料遷移)。
+ * 預設主題只查詢一次；每個批次先以一次查詢找出需要建立的使用者，再以 JDBC batch 一次送出所有 INSERT，
+ * 每個批次各自提交，中途失敗時已完成的批次不會回滾，重新執行時會略過已經建立的個人檔案。
+ * MySQL 需要在連線 URL 加上 rewriteBatchedStatements=true，驅動程式才會把整批合併成多列 INSERT。
+ */
+@Service
+public class BulkProfileInitializer {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ThemeService themeService;
+    private final TransactionTemplate transactionTemplate;
+
+    // 每個批次的使用者數
+    private final int chunkSize;
+
+    @Autowired
+    public BulkProfileInitializer(NamedParameterJdbcTemplate jdbcTemplate,
+                                  ThemeService themeService,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${profile.bulk-init.chunk-size:500}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.themeService = themeService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * 為多位使用者建立預設個人檔案 (使用 "Default" 主題)。已經有個人檔案的使用者會被略過。
+     * @param userIds 使用者 ID。
+     * @return 建立結果與每個批次的進度。
+     */
+    public BulkInitializationResult initializeDefaultProfiles(List<Long> userIds) {
+        List<Long> requested = List.copyOf(new LinkedHashSet<>(userIds));
+        Long defaultThemeId = themeService.getThemeByName("Default").map(Theme::getId).orElse(null);
+
+        List<ChunkProgress> chunks = new ArrayList<>();
+        List<Long> unknownUserIds = new ArrayList<>();
+        int created = 0;
+        int alreadyInitialized = 0;
+        for (int from = 0; from < requested.size(); from += chunkSize) {
+            List<Long> chunk = requested.subList(from, Math.min(from + chunkSize, requested.size()));
+            long start = System.nanoTime();
+            ChunkCounts counts = transactionTemplate.execute(status -> initializeChunk(chunk, defaultThemeId, unknownUserIds));
+            ChunkProgress progress = new ChunkProgress(chunks.size() + 1, chunk.size(), counts.created(),
+                    counts.alreadyInitialized(), (System.nanoTime() - start) / 1_000_000);
+            chunks.add(progress);
+            created += progress.created();
+            alreadyInitialized += progress.alreadyInitialized();
+        }
+        return new BulkInitializationResult(requested.size(), created, alreadyInitialized,
+                List.copyOf(unknownUserIds), List.copyOf(chunks));
+    }
+
+    private ChunkCounts initializeChunk(List<Long> chunk, Long defaultThemeId, List<Long> unknownUserIds) {
+        // 一次查詢取得這批使用者是否存在、是否已經有個人檔案
+        Set<Long> existingUsers = new HashSet<>();
+        List<Long> toCreate = new ArrayList<>();
+        jdbcTemplate.query("SELECT u.id, p.user_id AS profile_id FROM users u "
+                        + "LEFT JOIN user_profiles p ON p.user_id = u.id WHERE u.id IN (:ids)",
+                Map.of("ids", chunk), row -> {
+                    long userId = row.getLong("id");
+                    existingUsers.add(userId);
+                    row.getLong("profile_id");
+                    if (row.wasNull()) {
+                        toCreate.add(userId);
+                    }
+                });
+        for (Long userId : chunk) {
+            if (!existingUsers.contains(userId)) {
+                unknownUserIds.add(userId);
+            }
+        }
+
+        int created = 0;
+        if (!toCreate.isEmpty()) {
+            // INSERT IGNORE：查詢之後才被其他請求建立的個人檔案不會讓整批失敗
+            SqlParameterSource[] rows = toCreate.stream()
+                    .map(userId -> new MapSqlParameterSource("userId", userId).addValue("themeId", defaultThemeId))
+                    .toArray(SqlParameterSource[]::new);
+            int[] results = jdbcTemplate.batchUpdate("INSERT IGNORE INTO user_profiles (user_id, current_theme_id, version) "
+                    + "VALUES (:userId, :themeId, 0)", rows);
+            boolean reported = true;
+            for (int result : results) {
+                if (result > 0) {
+                    created++;
+                } else if (result == Statement.SUCCESS_NO_INFO) {
+                    reported = false;
+                }
+            }
+            if (!reported) {
+                // 驅動程式沒有回報每列的筆數 (例如 rewriteBatchedStatements 合併成多列 INSERT)，
+                // SUCCESS_NO_INFO 也可能是被 INSERT IGNORE 略過的列，改以查詢確認。
+                // 同一個交易中讀取：InnoDB 預設的 REPEATABLE READ 快照在上面的查詢時建立，
+                // 看不到之後由其他交易建立的個人檔案，只會算到這個批次建立的列
+                created = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_profiles WHERE user_id IN (:ids)",
+                        Map.of("ids", toCreate), Integer.class);
+            }
+        }
+        return new ChunkCounts(created, existingUsers.size() - created);
+    }
+
+    private record ChunkCounts(int created, int alreadyInitialized) {
+    }
+}
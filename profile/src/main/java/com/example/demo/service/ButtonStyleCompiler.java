@@ -0,0 +1,176 @@
+package com.example.demo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 把按鈕樣式配置 (CSS 宣告字串，例如 "background-color: red; color: white;") 驗證並編譯成樣式表。
+ * 配置在寫入時就驗證並整理成固定格式，因此相同的樣式只會有一種寫法；
+ * 編譯結果以內容雜湊為鍵放在快取中，使用相同樣式的使用者共用同一份樣式表。
+ */
+@Service
+public class ButtonStyleCompiler {
+
+    // 樣式表中按鈕的 class 名稱
+    public static final String BUTTON_CLASS = "profile-button";
+
+    // 單一配置的長度與宣告數上限
+    private static final int MAX_LENGTH = 2000;
+    private static final int MAX_DECLARATIONS = 30;
+
+    // 允許的 CSS 屬性：按鈕本身的外觀與尺寸 (width、height 等)，
+    // 不包含改變定位或排版方式的屬性 (position、margin、display、float 等)，也不能載入外部資源
+    private static final Set<String> ALLOWED_PROPERTIES = Set.of(
+            "color", "background", "background-color",
+            "border", "border-color", "border-width", "border-style", "border-radius",
+            "padding", "font-size", "font-weight", "font-style", "font-family",
+            "letter-spacing", "line-height", "text-transform", "text-decoration",
+            "text-shadow", "box-shadow", "opacity", "cursor", "outline",
+            "width", "min-width", "height");
+
+    // 屬性值只能包含顏色、長度、關鍵字與函式 (rgb()、linear-gradient() 等) 需要的字元。
+    // 不允許引號 (字串可以帶入任意內容，例如 content 或跳脫序列)、反斜線與 "*"；
+    // "/" 只用於 border-radius 等簡寫的分隔，沒有 "*" 就無法組成註解 "/*"、"*/"
+    private static final Pattern VALUE = Pattern.compile("[\\w\\s#%.,()\\-+/]+");
+
+    // 即使字元合法也不接受的內容：外部資源、舊版 IE 的 expression() 等
+    private static final Pattern FORBIDDEN = Pattern.compile("url\\s*\\(|expression\\s*\\(|image-set\\s*\\(|@import|javascript:",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Cache<String, CompiledButtonStyle> compiledStyles;
+
+    @Autowired
+    public ButtonStyleCompiler(@Value("${button-style.cache.max-size:1000}") long cacheMaxSize,
+                               MeterRegistry meterRegistry) {
+        this.compiledStyles = Caffeine.newBuilder().maximumSize(cacheMaxSize).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, compiledStyles, "buttonStyles");
+    }
+
+    /**
+     * 驗證按鈕樣式配置並整理成固定格式 (屬性名稱小寫、每個宣告以 "; " 分隔)。
+     * @param config 使用者輸入的配置。
+     * @return 整理後的配置；配置為空白時回傳空字串。
+     * @throws ResponseStatusException 400 如果配置格式不正確或使用了不允許的屬性或值。
+     */
+    public static String normalize(String config) {
+        if (config == null || config.isBlank()) {
+            return "";
+        }
+        if (config.length() > MAX_LENGTH) {
+            throw invalid("按鈕樣式配置太長 (上限 " + MAX_LENGTH + " 字元)");
+        }
+        List<String> declarations = new ArrayList<>();
+        for (String declaration : config.split(";")) {
+            if (declaration.isBlank()) {
+                continue;
+            }
+            int colon = declaration.indexOf(':');
+            if (colon < 0) {
+                throw invalid("無效的樣式宣告: " + declaration.trim());
+            }
+            String property = declaration.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = declaration.substring(colon + 1).trim();
+            value = WHITESPACE.matcher(value).replaceAll(" ");
+            if (!ALLOWED_PROPERTIES.contains(property)) {
+                throw invalid("不允許的樣式屬性: " + property);
+            }
+            if (value.isEmpty() || !VALUE.matcher(value).matches() || FORBIDDEN.matcher(value).find()
+                    || !balancedParentheses(value)) {
+                throw invalid("無效的樣式值: " + property + ": " + value);
+            }
+            declarations.add(property + ": " + value + ";");
+        }
+        if (declarations.size() > MAX_DECLARATIONS) {
+            throw invalid("樣式宣告太多 (上限 " + MAX_DECLARATIONS + " 個)");
+        }
+        return String.join(" ", declarations);
+    }
+
+    /**
+     * 計算樣式配置的內容雜湊 (SHA-256 的前 16 個十六進位字元)，用於快取鍵與樣式表網址的版本參數。
+     * @param config 樣式配置，null 視為空字串。
+     * @return 雜湊值。
+     */
+    public static String hashOf(String config) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((config == null ? "" : config).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // 每個 JVM 都必須支援 SHA-256
+        }
+    }
+
+    /**
+     * 取得樣式配置編譯後的樣式表，相同內容只編譯一次。
+     * 資料庫中在加入驗證之前寫入的配置可能不合法，此時略過不合法的宣告而不是失敗。
+     * @param config 樣式配置 (個人檔案的配置，或主題的預設配置)。
+     * @return 編譯結果。
+     */
+    public CompiledButtonStyle compile(String config) {
+        return compiledStyles.get(hashOf(config), hash -> new CompiledButtonStyle(hash, render(config)));
+    }
+
+    /**
+     * 取得樣式表快取的命中/未命中統計。
+     * @return CacheStats。
+     */
+    public CacheStats getCacheStats() {
+        return compiledStyles.stats();
+    }
+
+    private static String render(String config) {
+        StringBuilder css = new StringBuilder("." + BUTTON_CLASS + " {\n");
+        if (config != null) {
+            for (String declaration : config.split(";")) {
+                try {
+                    String normalized = normalize(declaration);
+                    if (!normalized.isEmpty()) {
+                        css.append("  ").append(normalized).append('\n');
+                    }
+                } catch (ResponseStatusException ex) {
+                    System.err.println("略過不合法的按鈕樣式宣告: " + ex.getReason());
+                }
+            }
+        }
+        return css.append("}\n").toString();
+    }
+
+    // 未閉合的 "(" 會讓瀏覽器把之後的內容 (包含規則結尾的 "}") 都當成函式參數
+    private static boolean balancedParentheses(String value) {
+        int depth = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth < 0) {
+                return false;
+            }
+        }
+        return depth == 0;
+    }
+
+    private static ResponseStatusException invalid(String reason) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, reason);
+    }
+}
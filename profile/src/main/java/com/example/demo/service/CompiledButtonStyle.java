@@ -0,0 +1,9 @@
+package com.example.demo.service;
+
+/**
+ * 編譯完成的按鈕樣式表。
+ * @param hash 樣式配置內容的雜湊值，相同配置的使用者共用同一份樣式表。
+ * @param css 樣式表內容。
+ */
+public record CompiledButtonStyle(String hash, String css) {
+}
@@ -0,0 +1,114 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 限制同時使用資料庫的工作數量。
+ * 啟用虛擬執行緒 (spring.threads.virtual.enabled=true) 後，Tomcat 不再有執行緒數上限，
+ * 上傳尖峰時可能有數千個請求同時等待 Hikari 連線，等待逾時後一起失敗。
+ * 這裡以公平的 Semaphore 把同時進行的資料庫工作限制在連線池大小，多出來的請求在這裡排隊，
+ * 等待超過 acquire-timeout 時回傳 503，而不是佔滿連線池等待佇列。
+ * 設定唯讀副本時，唯讀交易使用副本的連線池，上限再加上副本的並行數 (預設為副本連線池大小)。
+ * 使用平台執行緒時 Tomcat 執行緒池本身就是上限，這個限制不會啟用。
+ */
+@Component
+public class DatabaseConcurrencyLimiter {
+
+    // 目前執行緒是否已經取得許可 (巢狀呼叫不重複取得，避免自己等待自己)
+    private static final ThreadLocal<Boolean> HOLDING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final boolean enabled;
+    private final Semaphore permits;
+    private final long acquireTimeoutMillis;
+
+    // 等待逾時而回傳 503 的次數
+    private final LongAdder rejections = new LongAdder();
+
+    @Autowired
+    public DatabaseConcurrencyLimiter(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                      @Value("${profile.db.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrency,
+                                      @Value("${profile.datasource.replica.url:}") String replicaUrl,
+                                      @Value("${profile.db.replica-max-concurrency:${profile.datasource.replica.hikari.maximum-pool-size:10}}") int replicaMaxConcurrency,
+                                      @Value("${profile.db.acquire-timeout:5s}") Duration acquireTimeout,
+                                      MeterRegistry meterRegistry) {
+        this.enabled = virtualThreads;
+        this.permits = new Semaphore(replicaUrl.isBlank() ? maxConcurrency : maxConcurrency + replicaMaxConcurrency, true);
+        this.acquireTimeoutMillis = acquireTimeout.toMillis();
+        // 與 Hikari 連線池的 hikaricp.connections.* 一起觀察：可用許可長期為 0 且排隊數上升表示資料庫已飽和
+        Gauge.builder("profile.db.permits.available", permits, Semaphore::availablePermits)
+                .description("可用的資料庫並行許可數").register(meterRegistry);
+        Gauge.builder("profile.db.permits.waiting", permits, Semaphore::getQueueLength)
+                .description("等待資料庫並行許可的工作數").register(meterRegistry);
+        FunctionCounter.builder("profile.db.permits.rejected", rejections, LongAdder::sum)
+                .description("等待逾時而回傳 503 的次數").register(meterRegistry);
+    }
+
+    /**
+     * 取得一個許可後執行指定工作。
+     * @param work 會使用資料庫的工作。
+     * @return 工作的結果。
+     * @throws ResponseStatusException 503 如果在等待時間內無法取得許可。
+     */
+    public <T> T call(Supplier<T> work) {
+        if (!acquire()) {
+            return work.get();
+        }
+        try {
+            return work.get();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 取得一個許可 (供 HandlerInterceptor 在請求開始時使用)。
+     * @return 這次呼叫確實取得了許可時為 true，之後必須呼叫 {@link #release()}；
+     *         未啟用限制或目前執行緒已經持有許可時為 false。
+     * @throws ResponseStatusException 503 如果在等待時間內無法取得許可。
+     */
+    public boolean acquire() {
+        if (!enabled || HOLDING.get()) {
+            return false;
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                rejections.increment();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "資料庫忙碌中，請稍後再試");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "等待資料庫時被中斷");
+        }
+        HOLDING.set(Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * 歸還 {@link #acquire()} 取得的許可。
+     */
+    public void release() {
+        HOLDING.remove();
+        permits.release();
+    }
+
+    /**
+     * 建議用戶端重試的秒數 (503 回應的 Retry-After 標頭)。
+     * @return 秒數。
+     */
+    public String retryAfterSeconds() {
+        return String.valueOf(Math.max(1, acquireTimeoutMillis / 1000));
+    }
+}
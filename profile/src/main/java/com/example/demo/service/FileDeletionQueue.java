@@ -0,0 +1,87 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.PendingFileDeletion;
+import com.example.demo.repository.PendingFileDeletionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 被替換的舊檔案不在請求中同步刪除，而是與更新個人檔案的交易一起寫入 file_deletion_queue，
+ * 交易提交後由背景工作刪除。交易回滾時佇列紀錄也一起回滾，舊檔案不會被誤刪；
+ * 佇列存在資料庫中，服務重新啟動也不會遺失。
+ */
+@Service
+public class FileDeletionQueue {
+
+    private final PendingFileDeletionRepository pendingFileDeletionRepository;
+    private final FileStorageService fileStorageService;
+    private final TransactionTemplate transactionTemplate;
+
+    // 每次從佇列取出的筆數
+    private final int batchSize;
+
+    @Autowired
+    public FileDeletionQueue(PendingFileDeletionRepository pendingFileDeletionRepository,
+                             FileStorageService fileStorageService,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${file.deletion.batch-size:100}") int batchSize) {
+        this.pendingFileDeletionRepository = pendingFileDeletionRepository;
+        this.fileStorageService = fileStorageService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 在目前的交易中登記一個待刪除的檔案。
+     * @param fileUrl 檔案 URL；null 或空字串時不做任何事。
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(String fileUrl) {
+        if (fileUrl == null || fileUrl.isEmpty()) {
+            return;
+        }
+        pendingFileDeletionRepository.save(new PendingFileDeletion(null, fileUrl, LocalDateTime.now()));
+    }
+
+    /**
+     * 依加入順序刪除佇列中的檔案，直到佇列清空。
+     * 每個檔案在自己的交易中處理：認領紀錄與釋放內容定址檔案的引用一起提交，
+     * 多個節點同時處理時每個檔案只會被處理一次。刪除失敗時交易回滾，紀錄留在佇列中，下次再試。
+     */
+    @Scheduled(fixedDelayString = "${file.deletion.interval:10s}")
+    public void processQueue() {
+        List<PendingFileDeletion> batch;
+        do {
+            batch = pendingFileDeletionRepository.findByOrderByIdAsc(Limit.of(batchSize));
+            for (PendingFileDeletion pending : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        if (pendingFileDeletionRepository.claim(pending.getId()) > 0) {
+                            try {
+                                fileStorageService.deleteFileOrThrow(pending.getFileUrl());
+                            } catch (IOException ex) {
+                                throw new UncheckedIOException(ex);
+                            }
+                        }
+                    });
+                } catch (RuntimeException ex) {
+                    // 紀錄留在佇列中，下次再試
+                    System.err.println("無法刪除檔案: " + pending.getFileUrl() + ". 錯誤: " + ex.getMessage());
+                    return;
+                }
+            }
+        } while (batch.size() == batchSize);
+    }
+}
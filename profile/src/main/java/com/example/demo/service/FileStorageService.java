@@ -1,16 +1,46 @@
 package com.example.demo.service;
 
+import com.example.demo.entity.FileBlob;
+import com.example.demo.repository.FileBlobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
 
 @Service
 public class FileStorageService {
@@ -21,10 +51,66 @@ public class FileStorageService {
 
     private Path fileStorageLocation;
 
+    // 單一檔案允許的最大大小，在串流寫入過程中檢查
+    private final long maxFileSize;
+
+    // 串流寫入時每次讀取的緩衝區大小
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 判斷圖片類型至少需要讀取的位元組數 (WEBP 需要 12 個位元組)
+    private static final int SNIFF_LENGTH = 12;
+
+    // 內容定址檔案的名稱格式：<SHA-256>.<副檔名>
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("([0-9a-f]{64})\\.[a-z]+");
+
+    // 檔案名稱中不允許的字元 (事先編譯，String.replaceAll 每次呼叫都會重新編譯正規表示式)
+    private static final Pattern UNSAFE_FILE_NAME_CHARS = Pattern.compile("[^a-zA-Z0-9.-]");
+
+    // 是否啟用內容定址儲存：相同內容只存一份，以引用計數決定何時刪除
+    private final boolean contentAddressed;
+
+    // 是否把檔案分散到兩層的雜湊子目錄 (例如 "3f/a2/檔名")，避免單一目錄中放入數百萬個檔案
+    private final boolean sharded;
+
+    private final FileBlobRepository fileBlobRepository;
+
+    // 檔案寫好後交給儲存後端保存，讀取與刪除也都經過它 (本機目錄或物件儲存，見 StorageConfig)
+    private final StorageBackend storageBackend;
+
+    // 刪除沒有引用的內容定址檔案時使用的獨立交易 (在呼叫端的交易提交之後執行)
+    private final TransactionTemplate purgeTransaction;
+
+    // 儲存與刪除的耗時 (成功)、寫入的位元組數 (以 rate() 換算成每秒寫入量)
+    private final MeterRegistry meterRegistry;
+    private final Timer storeTimer;
+    private final Timer deleteTimer;
+    private final Counter bytesWritten;
+
     // 構造函數會在服務啟動時初始化儲存位置
-    public FileStorageService(@Value("${file.upload.dir}") String fileUploadDir) {
+    public FileStorageService(@Value("${file.upload.dir}") String fileUploadDir,
+                              @Value("${file.upload.max-size:10MB}") DataSize maxFileSize,
+                              @Value("${file.upload.content-addressed:false}") boolean contentAddressed,
+                              @Value("${file.upload.sharded:true}") boolean sharded,
+                              FileBlobRepository fileBlobRepository,
+                              StorageBackend storageBackend,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry) {
         this.fileUploadDir = fileUploadDir;
         this.fileStorageLocation = Paths.get(fileUploadDir).toAbsolutePath().normalize();
+        this.maxFileSize = maxFileSize.toBytes();
+        this.contentAddressed = contentAddressed;
+        this.sharded = sharded;
+        this.fileBlobRepository = fileBlobRepository;
+        this.storageBackend = storageBackend;
+        this.purgeTransaction = new TransactionTemplate(transactionManager);
+        this.purgeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.meterRegistry = meterRegistry;
+        this.storeTimer = Timer.builder("file.storage.store").description("上傳檔案寫入磁碟的耗時")
+                .tag("outcome", "success").publishPercentileHistogram().register(meterRegistry);
+        this.deleteTimer = Timer.builder("file.storage.delete").description("刪除檔案 (含縮圖) 的耗時")
+                .tag("outcome", "success").publishPercentileHistogram().register(meterRegistry);
+        this.bytesWritten = Counter.builder("file.storage.bytes.written").baseUnit("bytes")
+                .description("寫入上傳目錄的位元組數").register(meterRegistry);
 
         try {
             // 檢查目錄是否存在，如果不存在則建立
@@ -41,60 +127,618 @@ public class FileStorageService {
      * @throws RuntimeException 如果檔案儲存失敗。
      */
     public String storeFile(MultipartFile file) {
-        // 正規化檔案名，防止目錄遍歷攻擊
-        String fileName = UUID.randomUUID().toString() + "_" +
-                          Objects.requireNonNull(file.getOriginalFilename()).replaceAll("[^a-zA-Z0-9.-]", "_"); // 清理檔案名，替換特殊字符
+        try (InputStream in = file.getInputStream()) {
+            return storeStream(in, Objects.requireNonNull(file.getOriginalFilename())).url();
+        } catch (IOException ex) {
+            throw new RuntimeException("無法讀取上傳的檔案 " + file.getOriginalFilename() + "。請重試！", ex);
+        }
+    }
 
+    /**
+     * 以串流方式儲存檔案：透過 NIO channel 直接寫入最終位置，不經過暫存檔。
+     * 先讀取第一個區塊判斷圖片類型，不是圖片就不會建立任何檔案；
+     * 寫入過程中同步計算 SHA-256 並檢查大小，超過上限立即中止並刪除已寫入的部分。
+     * 啟用內容定址儲存時，檔案先寫入同目錄下的暫存名稱，算出雜湊後再以 rename 移到最終名稱 (不額外複製)；
+     * 如果相同內容已經存在，只增加引用計數並丟棄這份重複的內容。
+     * 每次呼叫都代表新增一個引用 (在呼叫端的交易中新增，沒有交易時立即提交)；
+     * 呼叫端後續的更新失敗時，必須以 {@link #deleteFile(String)} 釋放這個引用。
+     * 檔案一律先寫入本機上傳目錄，完成後再交給儲存後端保存 (物件儲存後端會在這時上傳)。
+     * @param in 檔案內容的輸入串流 (由呼叫端負責關閉)。
+     * @param originalFilename 原始檔案名稱。
+     * @return 儲存結果，包含 URL、大小、SHA-256 與圖片類型。
+     * @throws ResponseStatusException 415 如果內容不是支援的圖片格式，413 如果超過大小上限。
+     */
+    public StoredFile storeStream(InputStream in, String originalFilename) {
+        Timer.Sample sample = Timer.start(meterRegistry);
         try {
-            // 檢查檔案名是否包含無效字符
-            if (fileName.contains("..")) {
-                throw new RuntimeException("檔案名包含無效的路徑序列 " + fileName);
+            StoredFile stored = persist(store(in, originalFilename));
+            sample.stop(storeTimer);
+            bytesWritten.increment(stored.size());
+            return stored;
+        } catch (RuntimeException ex) {
+            recordFailure(sample, "file.storage.store", "store", ex);
+            throw ex;
+        }
+    }
+
+    private StoredFile store(InputStream in, String originalFilename) {
+        if (contentAddressed) {
+            String tempName = ".tmp-" + UUID.randomUUID();
+            StoredFile written = writeValidated(in, contentType -> tempName);
+            return commitContentAddressed(this.fileStorageLocation.resolve(tempName), written);
+        }
+
+        String fileName = newFileName(originalFilename);
+        return writeValidated(in, contentType -> storagePathOf(withExtension(fileName, contentType)));
+    }
+
+    /**
+     * 儲存已經完整寫入磁碟的檔案 (可續傳上傳組合完成的暫存檔)。
+     * 讀過一次內容以判斷圖片類型、檢查大小與計算 SHA-256，然後以 rename 移到最終位置，內容不再複製；
+     * 暫存檔必須和儲存目錄在同一個檔案系統上。其餘行為 (內容定址、引用計數) 與 {@link #storeStream} 相同。
+     * @param assembled 暫存檔，成功後就不存在了；驗證失敗時保留不動。
+     * @param originalFilename 原始檔案名稱。
+     * @return 儲存結果，包含 URL、大小、SHA-256 與圖片類型。
+     * @throws ResponseStatusException 415 如果內容不是支援的圖片格式，413 如果超過大小上限。
+     */
+    public StoredFile storeAssembled(Path assembled, String originalFilename) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            StoredFile stored = persist(moveValidated(assembled, originalFilename));
+            sample.stop(storeTimer);
+            return stored;
+        } catch (RuntimeException ex) {
+            recordFailure(sample, "file.storage.store", "store", ex);
+            throw ex;
+        }
+    }
+
+    private StoredFile moveValidated(Path assembled, String originalFilename) {
+        StoredFile written;
+        try (FileChannel source = FileChannel.open(assembled, StandardOpenOption.READ)) {
+            long size = source.size();
+            if (size > maxFileSize) {
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "檔案超過大小上限 " + maxFileSize + " bytes");
             }
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (buffer.position() < SNIFF_LENGTH && source.read(buffer) >= 0) {
+                // 繼續讀取
+            }
+            String contentType = detectImageType(buffer);
+            if (contentType == null) {
+                throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "檔案內容不是支援的圖片格式 (JPEG/PNG/GIF/WEBP)");
+            }
+            MessageDigest digest = newSha256();
+            do {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            } while (source.read(buffer) >= 0);
+            written = new StoredFile(null, size, HexFormat.of().formatHex(digest.digest()), contentType);
+        } catch (IOException ex) {
+            throw new RuntimeException("無法讀取上傳的檔案 " + originalFilename + "。請重試！", ex);
+        }
 
-            // 將檔案複製到目標位置 (覆蓋同名檔案)
+        if (contentAddressed) {
+            return commitContentAddressed(assembled, written);
+        }
+        String storagePath = storagePathOf(withExtension(newFileName(originalFilename), written.contentType()));
+        try {
+            Path targetLocation = this.fileStorageLocation.resolve(storagePath);
+            Files.createDirectories(targetLocation.getParent());
+            Files.move(assembled, targetLocation, StandardCopyOption.ATOMIC_MOVE);
+            return new StoredFile("/uploads/" + storagePath, written.size(), written.sha256(), written.contentType());
+        } catch (IOException ex) {
+            throw new RuntimeException("無法儲存檔案 " + storagePath + "。請重試！", ex);
+        }
+    }
+
+    // 把寫在本機上傳目錄的檔案交給儲存後端保存；失敗時撤銷這次儲存 (刪除檔案或釋放內容定址的引用)
+    private StoredFile persist(StoredFile stored) {
+        String key = stored.url().substring("/uploads/".length());
+        try {
+            storageBackend.save(key, this.fileStorageLocation.resolve(key), stored.contentType());
+            return stored;
+        } catch (IOException ex) {
+            deleteFile(stored.url());
+            throw new RuntimeException("無法儲存檔案 " + key + "。請重試！", ex);
+        }
+    }
+
+    // 新檔案的名稱：UUID 加上清理過的原始檔名，不會和既有檔案重複
+    private static String newFileName(String originalFilename) {
+        // 正規化檔案名，防止目錄遍歷攻擊
+        String fileName = UUID.randomUUID().toString() + "_" + sanitizeFileName(originalFilename);
+
+        // 檢查檔案名是否包含無效字符
+        if (fileName.contains("..")) {
+            throw new RuntimeException("檔案名包含無效的路徑序列 " + fileName);
+        }
+        return fileName;
+    }
+
+    // 副檔名與實際內容不符 (或沒有副檔名) 時補上正確的副檔名，/uploads 才能回傳正確的 Content-Type
+    private static String withExtension(String fileName, String contentType) {
+        return fileName.endsWith("." + extensionOf(contentType)) ? fileName : fileName + "." + extensionOf(contentType);
+    }
+
+    // 把已寫入暫存檔的內容登記為內容定址檔案，並移動到 <SHA-256>.<副檔名>
+    private StoredFile commitContentAddressed(Path tempLocation, StoredFile written) {
+        String fileName = written.sha256() + "." + extensionOf(written.contentType());
+        String storagePath = storagePathOf(fileName);
+        try {
+            fileBlobRepository.addReference(written.sha256(), fileName, written.size(), written.contentType());
+            Path targetLocation = this.fileStorageLocation.resolve(storagePath);
+            Files.createDirectories(targetLocation.getParent());
+            // 內容相同的檔案可以直接覆蓋，atomic rename 確保讀取端不會看到寫到一半的檔案
+            Files.move(tempLocation, targetLocation, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new StoredFile("/uploads/" + storagePath, written.size(), written.sha256(), written.contentType());
+        } catch (IOException | RuntimeException ex) {
+            deleteQuietly(tempLocation);
+            throw ex instanceof RuntimeException runtime ? runtime
+                    : new RuntimeException("無法儲存檔案 " + fileName + "。請重試！", ex);
+        }
+    }
+
+    // 以串流方式寫入，同時判斷圖片類型、檢查大小與計算 SHA-256；儲存路徑 (相對於儲存目錄) 在判斷出圖片類型後才決定
+    private StoredFile writeValidated(InputStream in, UnaryOperator<String> storagePathForType) {
+        ReadableByteChannel source = Channels.newChannel(in);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        MessageDigest digest = newSha256();
+        String fileName = null;
+        try {
+            // 先讀滿判斷類型所需的位元組 (或讀到結尾)，在建立檔案前就拒絕非圖片內容
+            while (buffer.position() < SNIFF_LENGTH && source.read(buffer) >= 0) {
+                // 繼續讀取
+            }
+            String contentType = detectImageType(buffer);
+            if (contentType == null) {
+                throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "檔案內容不是支援的圖片格式 (JPEG/PNG/GIF/WEBP)");
+            }
+            fileName = storagePathForType.apply(contentType);
             Path targetLocation = this.fileStorageLocation.resolve(fileName);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+            Files.createDirectories(targetLocation.getParent());
+
+            long size = 0;
+            try (FileChannel target = FileChannel.open(targetLocation, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                do {
+                    buffer.flip();
+                    size += buffer.remaining();
+                    if (size > maxFileSize) {
+                        throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "檔案超過大小上限 " + maxFileSize + " bytes");
+                    }
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    buffer.clear();
+                } while (source.read(buffer) >= 0);
+            } catch (IOException | RuntimeException ex) {
+                // 中止時刪除已寫入的部分檔案
+                Files.deleteIfExists(targetLocation);
+                throw ex;
+            }
 
             // 返回檔案的相對 URL。在生產環境中，您可能需要返回一個可公開訪問的絕對 URL
             // 例如：http://yourdomain.com/uploads/your_file_name.jpg
-            return "/uploads/" + fileName; // 這裡返回一個簡單的相對路徑，需要前端或Controller層配合處理
+            return new StoredFile("/uploads/" + fileName, size, HexFormat.of().formatHex(digest.digest()), contentType);
         } catch (IOException ex) {
             throw new RuntimeException("無法儲存檔案 " + fileName + "。請重試！", ex);
         }
     }
 
+    // 依據檔案開頭的 magic bytes 判斷圖片類型，無法辨識時回傳 null
+    private static String detectImageType(ByteBuffer buffer) {
+        byte[] head = new byte[Math.min(buffer.position(), SNIFF_LENGTH)];
+        buffer.duplicate().flip().get(head);
+        if (startsWith(head, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(head, 0, 'G', 'I', 'F', '8') && head.length >= 6 && (head[4] == '7' || head[4] == '9') && head[5] == 'a') {
+            return "image/gif";
+        }
+        if (startsWith(head, 0, 'R', 'I', 'F', 'F') && startsWith(head, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... expected) {
+        if (data.length < offset + expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if ((data[offset + i] & 0xFF) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String extensionOf(String contentType) {
+        return switch (contentType) {
+            case "image/jpeg" -> "jpg";
+            case "image/png" -> "png";
+            case "image/gif" -> "gif";
+            case "image/webp" -> "webp";
+            default -> "bin";
+        };
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            System.err.println("無法刪除暫存檔案: " + path + ". 錯誤: " + ex.getMessage());
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("JVM 不支援 SHA-256", ex);
+        }
+    }
+
+    // 新檔案的儲存路徑：啟用分層目錄時放在檔名雜湊決定的子目錄中
+    private String storagePathOf(String fileName) {
+        return sharded ? shardedPathOf(fileName) : fileName;
+    }
+
+    /**
+     * 清理使用者提供的檔案名稱：英數字、'.' 與 '-' 以外的字元都替換成 '_'。
+     * @param originalFilename 原始檔案名稱。
+     * @return 清理後的檔案名稱。
+     */
+    public static String sanitizeFileName(String originalFilename) {
+        return UNSAFE_FILE_NAME_CHARS.matcher(originalFilename).replaceAll("_");
+    }
+
+    /**
+     * 計算檔案在分層目錄中的相對路徑：取檔名 SHA-256 的前兩個位元組作為兩層子目錄，
+     * 例如 "abc.jpg" 放在 "3f/a2/abc.jpg"，每層最多 256 個目錄，檔案平均分散。
+     * @param fileName 檔案名稱 (不含目錄)。
+     * @return 相對於儲存目錄的路徑。
+     */
+    public static String shardedPathOf(String fileName) {
+        byte[] hash = newSha256().digest(fileName.getBytes(StandardCharsets.UTF_8));
+        HexFormat hex = HexFormat.of();
+        return hex.toHexDigits(hash[0]) + "/" + hex.toHexDigits(hash[1]) + "/" + fileName;
+    }
+
+    /**
+     * 將 "/uploads/..." 形式的 URL 轉換成儲存目錄中的實際路徑。
+     * 舊的單層 URL (例如 "/uploads/abc.jpg") 如果檔案已經搬到分層目錄，會自動對應到新位置。
+     * 物件儲存後端在本機沒有快取時會先下載檔案。
+     * @param fileUrl 檔案的相對 URL。
+     * @return 檔案的 Path 物件；如果不是本服務管理的 URL、路徑超出儲存目錄或檔案不存在則為 null。
+     */
+    public Path resolveUrl(String fileUrl) {
+        if (fileUrl == null || !fileUrl.startsWith("/uploads/")) {
+            return null;
+        }
+        return locate(fileUrl.substring("/uploads/".length()));
+    }
+
+    // 把相對路徑轉成可讀取的本機檔案；單層路徑在原位置找不到時改用分層目錄中的位置
+    private Path locate(String relativePath) {
+        String key = keyOf(relativePath);
+        if (key == null) {
+            return null;
+        }
+        try {
+            Path path = storageBackend.fetch(key);
+            if (path == null && key.indexOf('/') < 0) {
+                path = storageBackend.fetch(shardedPathOf(key));
+            }
+            return path;
+        } catch (IOException ex) {
+            throw new RuntimeException("無法讀取檔案 " + key, ex);
+        }
+    }
+
+    // 把相對路徑正規化成儲存後端的 key；超出儲存目錄時為 null
+    private String keyOf(String relativePath) {
+        Path path = this.fileStorageLocation.resolve(relativePath).normalize();
+        if (!path.startsWith(this.fileStorageLocation) || path.equals(this.fileStorageLocation)) {
+            return null;
+        }
+        return keyOf(path);
+    }
+
+    private String keyOf(Path location) {
+        return this.fileStorageLocation.relativize(location).toString()
+                .replace(this.fileStorageLocation.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * 把單層目錄中的檔案 (連同縮圖) 搬到分層目錄，供遷移工具使用 (只適用於本機儲存後端)。可以重複執行：
+     * 檔案已經搬過時只回傳新的 URL。
+     * @param fileUrl 舊的單層 URL，例如 "/uploads/abc.jpg"。
+     * @return 新的 URL；如果不是單層 URL 或檔案不存在則為 null。
+     */
+    public String moveToShardedLayout(String fileUrl) {
+        if (fileUrl == null || !fileUrl.startsWith("/uploads/")) {
+            return null;
+        }
+        String fileName = fileUrl.substring("/uploads/".length());
+        if (fileName.isEmpty() || fileName.indexOf('/') >= 0 || fileName.startsWith(".")) {
+            return null;
+        }
+        Path flatLocation = this.fileStorageLocation.resolve(fileName).normalize();
+        if (!flatLocation.getParent().equals(this.fileStorageLocation)) {
+            return null;
+        }
+        String shardedPath = shardedPathOf(fileName);
+        Path shardedLocation = this.fileStorageLocation.resolve(shardedPath);
+        try {
+            if (Files.isRegularFile(flatLocation)) {
+                Files.createDirectories(shardedLocation.getParent());
+                // 先搬縮圖再搬原圖：搬移期間以舊 URL 讀取時最多暫時拿不到縮圖，原圖一定讀得到
+                Path flatVariants = variantDirectory(flatLocation);
+                if (Files.isDirectory(flatVariants)) {
+                    Files.move(flatVariants, variantDirectory(shardedLocation),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                Files.move(flatLocation, shardedLocation, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else if (!Files.isRegularFile(shardedLocation)) {
+                return null;
+            }
+            return "/uploads/" + shardedPath;
+        } catch (IOException ex) {
+            throw new RuntimeException("無法搬移檔案 " + fileName + " 到分層目錄", ex);
+        }
+    }
+
+    /**
+     * 把儲存目錄最上層剩下的檔案 (沒有被個人檔案引用的，例如主題預設圖片) 搬到分層目錄。
+     * 舊 URL 仍然可以透過 {@link #resolveUrl(String)} 讀到這些檔案。
+     * @param limit 這次最多搬移的檔案數。
+     * @return 實際搬移的檔案數；為 0 表示已經沒有需要搬移的檔案。
+     */
+    public int moveFlatFilesToShardedLayout(int limit) {
+        List<String> fileNames = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.fileStorageLocation,
+                entry -> !entry.getFileName().toString().startsWith(".") && Files.isRegularFile(entry))) {
+            for (Path entry : entries) {
+                if (fileNames.size() >= limit) {
+                    break;
+                }
+                fileNames.add(entry.getFileName().toString());
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("無法列出檔案儲存目錄", ex);
+        }
+        int moved = 0;
+        for (String fileName : fileNames) {
+            if (moveToShardedLayout("/uploads/" + fileName) != null) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * 取得檔案儲存目錄的絕對路徑。
+     * @return 儲存目錄。
+     */
+    public Path getStorageLocation() {
+        return fileStorageLocation;
+    }
+
+    /**
+     * 上傳目錄本身是否就是儲存位置 (本機儲存後端)；使用物件儲存時上傳目錄只是本機快取。
+     * @return 使用本機儲存後端時為 true。
+     */
+    public boolean isLocalStorage() {
+        return storageBackend.isLocal();
+    }
+
+    /**
+     * 新檔案是否寫入分層目錄。
+     * @return 啟用分層目錄時為 true。
+     */
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    /**
+     * 取得原始檔案的縮圖目錄，例如 "abc.jpg" 的縮圖放在同目錄下的 "abc.jpg.variants/w64.jpg"。
+     * @param original 原始檔案的路徑。
+     * @return 縮圖目錄的路徑。
+     */
+    public static Path variantDirectory(Path original) {
+        return original.resolveSibling(original.getFileName() + ".variants");
+    }
+
+    /**
+     * 取得儲存目錄中某個位置的檔案 (例如縮圖)，物件儲存後端在本機沒有快取時會先下載。
+     * @param location 儲存目錄中的路徑。
+     * @return 可以讀取的本機檔案；檔案不存在或不在儲存目錄中時為 null。
+     */
+    public Path fetchStoredFile(Path location) {
+        Path normalized = location.toAbsolutePath().normalize();
+        return normalized.startsWith(this.fileStorageLocation) ? locate(keyOf(normalized)) : null;
+    }
+
+    /**
+     * 把直接寫在儲存目錄中的檔案 (例如縮圖) 交給儲存後端保存。
+     * @param location 儲存目錄中的路徑。
+     * @throws IOException 保存失敗時。
+     */
+    public void saveStoredFile(Path location) throws IOException {
+        Path normalized = location.toAbsolutePath().normalize();
+        if (!normalized.startsWith(this.fileStorageLocation)) {
+            throw new IOException("檔案不在儲存目錄中: " + location);
+        }
+        String contentType = MediaTypeFactory.getMediaType(normalized.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+        storageBackend.save(keyOf(normalized), normalized, contentType);
+    }
+
+    /**
+     * 逐一走訪儲存後端中的所有檔案 (包含縮圖與暫存檔，供清除孤兒檔案使用)。
+     * @param visitor 每個檔案呼叫一次。
+     * @throws IOException 無法列出檔案時。
+     */
+    public void forEachStoredFile(Consumer<StorageBackend.StoredObject> visitor) throws IOException {
+        storageBackend.walk(visitor);
+    }
+
     /**
      * 從儲存位置載入檔案。
      * @param fileName 檔案的名稱。
      * @return 檔案的 Path 物件。
      */
     public Path loadFileAsResource(String fileName) {
-        return this.fileStorageLocation.resolve(fileName).normalize();
+        Path path = locate(fileName);
+        if (path == null) {
+            throw new RuntimeException("檔案不存在或不在允許的目錄範圍內: " + fileName);
+        }
+        return path;
     }
 
     /**
      * 刪除指定路徑的檔案。
+     * 內容定址檔案 (名稱為 SHA-256) 只會釋放一個引用，最後一個引用消失並且交易提交後才刪除實體檔案。
      * 注意：這個方法需要謹慎使用，確保有適當的權限檢查。
      * @param filePath 檔案的相對路徑，例如 "/uploads/your_file_name.jpg"
-     * @return 如果成功刪除則為 true，否則為 false。
+     * @return 如果成功刪除 (或釋放引用) 則為 true，否則為 false。
      */
     public boolean deleteFile(String filePath) {
+        try {
+            return deleteFileOrThrow(filePath);
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("無法刪除檔案: " + filePath + ". 錯誤: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 與 {@link #deleteFile(String)} 相同，但刪除失敗時拋出例外，讓呼叫端 (刪除佇列) 保留紀錄之後重試。
+     * @param filePath 檔案的相對路徑，例如 "/uploads/your_file_name.jpg"
+     * @return 如果成功刪除 (或釋放引用) 則為 true；不是本服務管理的路徑或檔案已經不存在時為 false。
+     * @throws IOException 儲存後端無法刪除檔案時。
+     */
+    public boolean deleteFileOrThrow(String filePath) throws IOException {
         if (filePath == null || !filePath.startsWith("/uploads/")) {
             // 確保只處理我們管理的檔案路徑
             return false;
         }
         String fileName = filePath.substring("/uploads/".length());
+        Timer.Sample sample = Timer.start(meterRegistry);
         try {
-            Path targetLocation = this.fileStorageLocation.resolve(fileName).normalize();
-            // 確保要刪除的檔案確實位於預期的儲存目錄內
-            if (!targetLocation.startsWith(this.fileStorageLocation)) {
-                throw new RuntimeException("嘗試刪除的檔案不在允許的目錄範圍內！");
-            }
-            return Files.deleteIfExists(targetLocation);
+            boolean deleted = delete(fileName);
+            sample.stop(deleteTimer);
+            return deleted;
         } catch (IOException | RuntimeException ex) {
-            System.err.println("無法刪除檔案: " + fileName + ". 錯誤: " + ex.getMessage());
+            recordFailure(sample, "file.storage.delete", "delete", ex);
+            throw ex;
+        }
+    }
+
+    private boolean delete(String fileName) throws IOException {
+        // 確保要刪除的檔案確實位於預期的儲存目錄內
+        String key = keyOf(fileName);
+        if (key == null) {
+            throw new RuntimeException("嘗試刪除的檔案不在允許的目錄範圍內！");
+        }
+        String sha256 = contentAddressedId(key);
+        if (sha256 != null) {
+            return releaseContentAddressed(sha256, key.substring(key.lastIndexOf('/') + 1));
+        }
+        // 舊的單層 URL 在原位置找不到時對應到分層目錄中的位置
+        return deleteWithVariants(key) || (key.indexOf('/') < 0 && deleteWithVariants(shardedPathOf(key)));
+    }
+
+    // 刪除檔案與它的縮圖目錄
+    private boolean deleteWithVariants(String key) throws IOException {
+        storageBackend.deletePrefix(key + ".variants/");
+        return storageBackend.delete(key);
+    }
+
+    // 記錄失敗的耗時與次數；reason 為 HTTP 狀態碼 (例如 413、415) 或例外類別名稱
+    private void recordFailure(Timer.Sample sample, String timerName, String operation, Exception ex) {
+        String reason = ex instanceof ResponseStatusException status
+                ? String.valueOf(status.getStatusCode().value()) : ex.getClass().getSimpleName();
+        sample.stop(Timer.builder(timerName).tag("outcome", "failure")
+                .publishPercentileHistogram().register(meterRegistry));
+        meterRegistry.counter("file.storage.failures", "operation", operation, "reason", reason).increment();
+    }
+
+    /**
+     * 取得內容定址檔案的 SHA-256。
+     * @param key 檔案的 key (或檔名)，例如 "3f/a2/<SHA-256>.jpg"。
+     * @return 檔名中的 SHA-256；不是內容定址檔案時為 null。
+     */
+    public static String contentAddressedId(String key) {
+        var matcher = CONTENT_ADDRESSED_NAME.matcher(key.substring(key.lastIndexOf('/') + 1));
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    /**
+     * 直接刪除儲存後端中的檔案與它的縮圖，不處理引用計數 (供清除孤兒檔案使用)。
+     * @param key 檔案的 key，例如 "3f/a2/檔名.jpg"。
+     * @return 檔案確實被刪除時為 true。
+     */
+    public boolean deleteStoredFile(String key) {
+        String normalized = keyOf(key);
+        if (normalized == null) {
             return false;
         }
+        try {
+            return deleteWithVariants(normalized);
+        } catch (IOException ex) {
+            System.err.println("無法刪除檔案: " + key + ". 錯誤: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    // 釋放內容定址檔案的一個引用；交易提交後如果已經沒有引用，再刪除實體檔案
+    private boolean releaseContentAddressed(String sha256, String fileName) {
+        fileBlobRepository.releaseReference(sha256);
+        TransactionHooks.afterCommit(() -> {
+            try {
+                purgeContentAddressed(sha256, fileName);
+            } catch (RuntimeException ex) {
+                // 紀錄留著 (引用數為 0)，之後由孤兒檔案清除再試
+                System.err.println("無法刪除檔案: " + fileName + ". 錯誤: " + ex.getMessage());
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 刪除沒有引用的內容定址檔案 (連同縮圖與紀錄)。
+     * 在新的交易中先鎖住紀錄再檢查引用數，刪除檔案與紀錄後才提交：
+     * 同時上傳相同內容的 addReference 會等到這個交易結束，此時紀錄已經刪除，
+     * 它會建立新的紀錄並重新寫入檔案，不會留下指向已刪除檔案的紀錄；在鎖住之前新增的引用則會讓這次刪除取消。
+     * @param sha256 檔案內容的 SHA-256。
+     * @param fileName 檔案名稱 (&lt;SHA-256&gt;.&lt;副檔名&gt;，不含目錄)。
+     * @return 檔案被刪除時為 true；仍有引用時為 false。
+     */
+    public boolean purgeContentAddressed(String sha256, String fileName) {
+        return Boolean.TRUE.equals(purgeTransaction.execute(status -> {
+            Optional<FileBlob> blob = fileBlobRepository.lockById(sha256);
+            if (blob.isPresent() && blob.get().getRefCount() > 0) {
+                return false;
+            }
+            // 遷移到分層目錄之前，相同內容可能同時存在於單層與分層兩個位置
+            for (String key : List.of(fileName, shardedPathOf(fileName))) {
+                try {
+                    deleteWithVariants(key);
+                } catch (IOException ex) {
+                    // 紀錄刪除後，留下的檔案由孤兒檔案清除刪除
+                    System.err.println("無法刪除檔案: " + key + ". 錯誤: " + ex.getMessage());
+                }
+            }
+            blob.ifPresent(unreferenced -> fileBlobRepository.deleteIfUnreferenced(sha256));
+            return true;
+        }));
     }
 
     // 您可能還需要一個方法來獲取檔案的 URL，這取決於您的部署方式
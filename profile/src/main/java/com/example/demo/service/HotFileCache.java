@@ -0,0 +1,191 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 各節點本機的熱門檔案快取 (物件儲存後端使用)。
+ * 上傳目錄中的檔案依最近使用的順序 (LRU) 保留，總大小超過上限時刪除最久沒有使用的檔案，
+ * 之後需要時再從物件儲存下載；熱門的頭像因此都由本機提供，不必每個請求都到遠端讀取。
+ * 啟動時掃描上傳目錄重建索引 (以最後修改時間排序)，重新啟動後之前的快取仍然有效。
+ * 不在索引中的檔案 (寫入中的暫存檔、可續傳上傳的區塊) 不會被刪除；上次執行中斷留下的暫存檔在啟動時刪除。
+ */
+public class HotFileCache {
+
+    private final Path root;
+    private final long maxBytes;
+
+    // key → 檔案大小，依存取順序排列 (最久沒有使用的在最前面)
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public HotFileCache(Path root, long maxBytes, MeterRegistry meterRegistry) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.hits = Counter.builder("file.storage.cache.requests").tag("result", "hit")
+                .description("本機熱門檔案快取的查詢次數").register(meterRegistry);
+        this.misses = Counter.builder("file.storage.cache.requests").tag("result", "miss")
+                .description("本機熱門檔案快取的查詢次數").register(meterRegistry);
+        this.evictions = Counter.builder("file.storage.cache.evictions")
+                .description("超過快取上限而刪除的本機檔案數").register(meterRegistry);
+        Gauge.builder("file.storage.cache.size", this, HotFileCache::totalBytes).baseUnit("bytes")
+                .description("本機熱門檔案快取的總大小").register(meterRegistry);
+        load();
+    }
+
+    /**
+     * 查詢快取，有快取時同時更新使用順序。
+     * @param key 檔案的 key。
+     * @return 本機檔案；沒有快取時為 null。
+     */
+    public Path get(String key) {
+        Path path = root.resolve(key);
+        synchronized (this) {
+            if (entries.get(key) != null) {
+                if (Files.isRegularFile(path)) {
+                    hits.increment();
+                    return path;
+                }
+                // 檔案被外部刪除
+                totalBytes -= entries.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 登記一個已經放在上傳目錄中 key 對應位置的檔案，超過上限時刪除最久沒有使用的檔案。
+     * @param key 檔案的 key。
+     * @param size 檔案大小。
+     */
+    public void put(String key, long size) {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = entries.put(key, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                if (entry.getKey().equals(key)) {
+                    break; // 剛放入的檔案最後才會走到，之前的都已經移除
+                }
+                totalBytes -= entry.getValue();
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+        // 在鎖外刪除檔案；刪除後又被重新下載的情況由 get 檢查檔案是否存在處理
+        for (String victim : evicted) {
+            deleteQuietly(root.resolve(victim));
+            evictions.increment();
+        }
+    }
+
+    /**
+     * 移除快取並刪除本機檔案。
+     * @param key 檔案的 key。
+     */
+    public void remove(String key) {
+        synchronized (this) {
+            Long size = entries.remove(key);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+        deleteQuietly(root.resolve(key));
+    }
+
+    /**
+     * 移除 key 以 prefix 開頭的所有快取並刪除本機檔案。
+     * @param prefix key 的前綴 (以 "/" 結尾)。
+     */
+    public void removePrefix(String prefix) {
+        List<String> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    totalBytes -= entry.getValue();
+                    removed.add(entry.getKey());
+                    iterator.remove();
+                }
+            }
+        }
+        removed.forEach(key -> deleteQuietly(root.resolve(key)));
+        deleteQuietly(root.resolve(prefix));
+    }
+
+    /**
+     * @return 快取中檔案的總大小。
+     */
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    // 掃描上傳目錄重建索引，最近修改的檔案視為最近使用
+    private void load() {
+        record Found(String key, long size, Instant lastModified) {
+        }
+        List<Found> found = new ArrayList<>();
+        try {
+            Files.createDirectories(root);
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return !dir.equals(root) && dir.getFileName().toString().startsWith(".")
+                            ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String name = file.getFileName().toString();
+                    if (name.startsWith(".tmp-")) {
+                        deleteQuietly(file); // 寫入或下載到一半的暫存檔
+                    } else if (attrs.isRegularFile() && !name.startsWith(".")) {
+                        String key = root.relativize(file).toString().replace(root.getFileSystem().getSeparator(), "/");
+                        found.add(new Found(key, attrs.size(), attrs.lastModifiedTime().toInstant()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+            throw new RuntimeException("無法掃描本機快取目錄: " + root, ex);
+        }
+        found.sort(Comparator.comparing(Found::lastModified));
+        found.forEach(file -> put(file.key(), file.size()));
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            System.err.println("無法刪除快取檔案: " + path + ". 錯誤: " + ex.getMessage());
+        }
+    }
+}
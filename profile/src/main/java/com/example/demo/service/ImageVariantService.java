@@ -0,0 +1,232 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+@Service
+public class ImageVariantService {
+
+    private final FileStorageService fileStorageService;
+    private final Executor executor;
+
+    // 頭像與背景圖片各自要產生的縮圖寬度 (像素)
+    private final List<Integer> avatarWidths;
+    private final List<Integer> backgroundImageWidths;
+
+    // 以上兩者的聯集 (由小到大)，挑選縮圖時使用
+    private final List<Integer> allWidths;
+
+    // JPEG 重新壓縮的品質 (0.0 ~ 1.0)
+    private final float jpegQuality;
+
+    // 原圖的像素上限 (寬 × 高)：解碼後每個像素佔 4 bytes，檔案很小的圖片也可能宣告極大的尺寸
+    private final long maxPixels;
+
+    @Autowired
+    public ImageVariantService(FileStorageService fileStorageService,
+                               @Qualifier("imageVariantExecutor") Executor executor,
+                               @Value("${image.variants.avatar-widths:64,128,256}") List<Integer> avatarWidths,
+                               @Value("${image.variants.background-image-widths:640,1280}") List<Integer> backgroundImageWidths,
+                               @Value("${image.variants.jpeg-quality:0.82}") float jpegQuality,
+                               @Value("${image.variants.max-pixels:40000000}") long maxPixels) {
+        this.fileStorageService = fileStorageService;
+        this.executor = executor;
+        this.avatarWidths = List.copyOf(new TreeSet<>(avatarWidths));
+        this.backgroundImageWidths = List.copyOf(new TreeSet<>(backgroundImageWidths));
+        TreeSet<Integer> all = new TreeSet<>(avatarWidths);
+        all.addAll(backgroundImageWidths);
+        this.allWidths = List.copyOf(all);
+        this.jpegQuality = jpegQuality;
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * 在背景產生頭像縮圖。
+     * @param imageUrl 原始頭像的 URL。
+     * @return 完成時得到已產生的寬度 (逗號分隔)；沒有產生任何縮圖時為 null。
+     */
+    public CompletableFuture<String> generateAvatarVariants(String imageUrl) {
+        return generateAsync(imageUrl, avatarWidths);
+    }
+
+    /**
+     * 在背景產生背景圖片縮圖。
+     * @param imageUrl 原始背景圖片的 URL。
+     * @return 完成時得到已產生的寬度 (逗號分隔)；沒有產生任何縮圖時為 null。
+     */
+    public CompletableFuture<String> generateBackgroundImageVariants(String imageUrl) {
+        return generateAsync(imageUrl, backgroundImageWidths);
+    }
+
+    /**
+     * 依照需要的寬度挑選縮圖：不小於 requestedWidth 的最小縮圖。
+     * 物件儲存後端在本機沒有快取時會先下載縮圖。
+     * @param original 原始檔案的路徑。
+     * @param requestedWidth 需要的寬度 (像素)。
+     * @return 已存在的縮圖路徑；縮圖還沒產生 (或原圖本身就很小) 時為 null。
+     */
+    public Path resolveVariant(Path original, int requestedWidth) {
+        Path directory = FileStorageService.variantDirectory(original);
+        for (int width : allWidths) {
+            if (width < requestedWidth) {
+                continue;
+            }
+            // 有透明度的圖片縮圖為 PNG，其餘為 JPEG
+            for (String extension : new String[] {"jpg", "png"}) {
+                Path variant = fileStorageService.fetchStoredFile(directory.resolve("w" + width + "." + extension));
+                if (variant != null) {
+                    return variant;
+                }
+            }
+        }
+        return null;
+    }
+
+    // 在交易提交後呼叫，不能拋出例外 (否則更新已經提交，用戶端卻收到錯誤)：
+    // 取得原圖 (物件儲存後端可能需要下載) 也在背景工作中進行，任何失敗都只是略過縮圖
+    private CompletableFuture<String> generateAsync(String imageUrl, List<Integer> widths) {
+        try {
+            return CompletableFuture.supplyAsync(() -> generate(imageUrl, widths), executor);
+        } catch (TaskRejectedException ex) {
+            // 佇列已滿：不產生縮圖，前端會直接使用原圖
+            System.err.println("縮圖佇列已滿，略過: " + imageUrl);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException ex) {
+            System.err.println("無法排入縮圖工作: " + imageUrl + ". 錯誤: " + ex.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    // 讀取原圖一次，依序產生各寬度的縮圖；已經存在的縮圖 (例如內容定址的共用檔案) 不會重新產生。
+    // 縮圖寫在原圖旁邊的縮圖目錄，再交給儲存後端保存
+    private String generate(String imageUrl, List<Integer> widths) {
+        try {
+            Path original = fileStorageService.resolveUrl(imageUrl);
+            // GIF 可能是動畫，ImageIO 只會讀到第一格，因此不產生縮圖
+            if (original == null || original.getFileName().toString().endsWith(".gif")) {
+                return null;
+            }
+            BufferedImage source = read(original);
+            if (source == null) {
+                return null;
+            }
+            boolean alpha = source.getColorModel().hasAlpha();
+            String format = alpha ? "png" : "jpg";
+            Path directory = FileStorageService.variantDirectory(original);
+
+            List<Integer> produced = new ArrayList<>();
+            for (int width : widths) {
+                if (width >= source.getWidth()) {
+                    break; // 不放大圖片，原圖已經夠小
+                }
+                Path target = directory.resolve("w" + width + "." + format);
+                if (fileStorageService.fetchStoredFile(target) == null) {
+                    Files.createDirectories(directory);
+                    write(resize(source, width, alpha), format, target);
+                    fileStorageService.saveStoredFile(target);
+                }
+                produced.add(width);
+            }
+            return produced.isEmpty() ? null
+                    : produced.stream().map(String::valueOf).collect(Collectors.joining(","));
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("無法產生縮圖: " + imageUrl + ". 錯誤: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // 先只讀取圖片標頭取得尺寸，超過像素上限的圖片不解碼，避免一張圖片用盡記憶體
+    private BufferedImage read(Path original) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null; // ImageIO 不支援的格式 (例如 WEBP)
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    System.err.println("圖片尺寸過大，不產生縮圖: " + original + " (" + reader.getWidth(0) + "x" + reader.getHeight(0) + ")");
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // 先以每次縮小一半的方式逐步縮小，再縮到目標寬度，品質比一次縮放好
+    private static BufferedImage resize(BufferedImage source, int width, boolean alpha) {
+        BufferedImage current = source;
+        while (current.getWidth() / 2 >= width) {
+            current = draw(current, current.getWidth() / 2, current.getHeight() / 2, alpha);
+        }
+        int height = Math.max(1, Math.round((float) current.getHeight() * width / current.getWidth()));
+        return draw(current, width, height, alpha);
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, boolean alpha) {
+        BufferedImage target = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    // 寫入暫存檔後再 rename，避免 /uploads 讀到寫到一半的縮圖。
+    // 寫入時不帶任何 metadata，EXIF 等資訊會被移除。
+    private void write(BufferedImage image, String format, Path target) throws IOException {
+        Path temp = target.resolveSibling(".tmp-" + UUID.randomUUID());
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(output);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if ("jpg".equals(format)) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(jpegQuality);
+                    param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+                }
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
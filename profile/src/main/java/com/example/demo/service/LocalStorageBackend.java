@@ -0,0 +1,88 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Consumer;
+
+/**
+ * 本機檔案系統後端：上傳目錄本身就是儲存位置，檔案寫好後不需要再做任何事。
+ * 多個節點需要掛載同一個目錄 (例如 NFS)。
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+    private final Path root;
+
+    public LocalStorageBackend(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void save(String key, Path localFile, String contentType) {
+        // 檔案已經在最終位置
+    }
+
+    @Override
+    public Path fetch(String key) {
+        Path path = root.resolve(key);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(root.resolve(key));
+    }
+
+    @Override
+    public void deletePrefix(String prefix) throws IOException {
+        Path directory = root.resolve(prefix);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        // 縮圖目錄只有少數幾個檔案，沒有子目錄
+        try (var entries = Files.list(directory)) {
+            for (Path entry : entries.toList()) {
+                Files.deleteIfExists(entry);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Override
+    public void walk(Consumer<StoredObject> visitor) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                // 以 "." 開頭的目錄是本機的內部狀態 (例如可續傳上傳的 .sessions)，不是儲存的檔案
+                return !dir.equals(root) && dir.getFileName().toString().startsWith(".")
+                        ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    visitor.accept(new StoredObject(keyOf(file), attrs.size(), attrs.lastModifiedTime().toInstant()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                // 檔案在走訪期間被刪除等情況，略過即可
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    private String keyOf(Path file) {
+        return root.relativize(file).toString().replace(root.getFileSystem().getSeparator(), "/");
+    }
+}
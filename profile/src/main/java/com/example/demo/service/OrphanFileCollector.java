@@ -0,0 +1,153 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Theme;
+import com.example.demo.repository.FileBlobRepository;
+import com.example.demo.repository.UserProfileRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 定期清除孤兒檔案：儲存後端中沒有被任何個人檔案、主題或內容定址紀錄引用的檔案。
+ * 逐一走訪儲存後端 (本機目錄以 walkFileTree、物件儲存以分頁列出)，每累積一批檔案就用 IN 查詢檢查引用，
+ * 記憶體用量只和批次大小有關，與檔案總數無關。
+ * <p>
+ * 保留時間 (file.gc.grace-period)：修改時間在保留時間內的檔案一律略過。新上傳的檔案先寫入儲存後端，
+ * 個人檔案的 URL 在交易提交後才看得到，這段期間檔案看起來沒有被引用；保留時間必須大於寫入檔案到提交引用的最長時間
+ * (包含慢速的上傳與交易重試)。判斷依據是檔案的修改時間 (物件儲存為物件的 LastModified)，
+ * 因此搬移或複製檔案時需要保留修改時間，否則舊檔案會被當成新檔案延後清除，而不會被誤刪。
+ * <p>
+ * 預設不啟用 (file.gc.enabled=true 才會執行)：上傳目錄若還有其他系統引用的檔案，啟用前需要先確認。
+ */
+@Component
+@ConditionalOnProperty(name = "file.gc.enabled", havingValue = "true")
+public class OrphanFileCollector {
+
+    private final FileStorageService fileStorageService;
+    private final UserProfileRepository userProfileRepository;
+    private final FileBlobRepository fileBlobRepository;
+    private final ThemeService themeService;
+
+    private final Duration gracePeriod;
+    private final int batchSize;
+
+    @Autowired
+    public OrphanFileCollector(FileStorageService fileStorageService,
+                               UserProfileRepository userProfileRepository,
+                               FileBlobRepository fileBlobRepository,
+                               ThemeService themeService,
+                               @Value("${file.gc.grace-period:1h}") Duration gracePeriod,
+                               @Value("${file.gc.batch-size:500}") int batchSize) {
+        this.fileStorageService = fileStorageService;
+        this.userProfileRepository = userProfileRepository;
+        this.fileBlobRepository = fileBlobRepository;
+        this.themeService = themeService;
+        this.gracePeriod = gracePeriod;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 掃描整個儲存後端並刪除孤兒檔案。
+     * @return 刪除的檔案數。
+     */
+    @Scheduled(initialDelayString = "${file.gc.initial-delay:10m}", fixedDelayString = "${file.gc.interval:6h}")
+    public long collect() {
+        Instant cutoff = Instant.now().minus(gracePeriod);
+        // 主題預設圖片很少，直接從主題快取取得
+        Set<String> themeUrls = new HashSet<>();
+        for (Theme theme : themeService.getAllThemes()) {
+            themeUrls.add(theme.getDefaultAvatarUrl());
+            themeUrls.add(theme.getDefaultBackgroundImageUrl());
+        }
+
+        List<String> batch = new ArrayList<>(batchSize);
+        long[] counts = new long[2]; // {掃描數, 刪除數}
+        try {
+            fileStorageService.forEachStoredFile(file -> {
+                String key = file.key();
+                // 縮圖隨原圖一起處理 (可續傳上傳的暫存目錄 .sessions 不屬於儲存後端，由 ResumableUploadService 自行清除)
+                if (key.contains(".variants/") || file.lastModified().isAfter(cutoff)) {
+                    return;
+                }
+                String name = key.substring(key.lastIndexOf('/') + 1);
+                if (name.startsWith(".tmp-")) {
+                    // 寫入中斷留下的暫存檔
+                    fileStorageService.deleteStoredFile(key);
+                    return;
+                }
+                if (name.startsWith(".")) {
+                    return; // 遷移檢查點等內部檔案
+                }
+                counts[0]++;
+                batch.add(key);
+                if (batch.size() >= batchSize) {
+                    counts[1] += collectBatch(batch, themeUrls);
+                    batch.clear();
+                }
+            });
+            if (!batch.isEmpty()) {
+                counts[1] += collectBatch(batch, themeUrls);
+            }
+        } catch (IOException ex) {
+            System.err.println("無法掃描儲存的檔案. 錯誤: " + ex.getMessage());
+        }
+        if (counts[1] > 0) {
+            System.err.println("孤兒檔案清除：檢查 " + counts[0] + " 個檔案，刪除 " + counts[1] + " 個");
+        }
+        return counts[1];
+    }
+
+    // 檢查一批檔案是否仍被引用，刪除沒有被引用的檔案
+    private long collectBatch(List<String> files, Set<String> themeUrls) {
+        // 每個檔案可能以目前的 URL 或遷移前的單層 URL 被引用
+        Map<String, List<String>> urlsByFile = new LinkedHashMap<>();
+        Set<String> urls = new HashSet<>();
+        List<String> sha256s = new ArrayList<>();
+        for (String file : files) {
+            String url = "/uploads/" + file;
+            String flatUrl = "/uploads/" + file.substring(file.lastIndexOf('/') + 1);
+            List<String> candidates = url.equals(flatUrl) ? List.of(url) : List.of(url, flatUrl);
+            urlsByFile.put(file, candidates);
+            urls.addAll(candidates);
+            String sha256 = FileStorageService.contentAddressedId(file);
+            if (sha256 != null) {
+                sha256s.add(sha256);
+            }
+        }
+
+        Set<String> referenced = new HashSet<>(userProfileRepository.findReferencedAvatarUrls(urls));
+        referenced.addAll(userProfileRepository.findReferencedBackgroundImageUrls(urls));
+        Set<String> blobs = sha256s.isEmpty() ? Set.of() : new HashSet<>(fileBlobRepository.findReferencedIds(sha256s));
+
+        long deleted = 0;
+        for (Map.Entry<String, List<String>> entry : urlsByFile.entrySet()) {
+            String file = entry.getKey();
+            boolean inUse = entry.getValue().stream().anyMatch(url -> referenced.contains(url) || themeUrls.contains(url));
+            String sha256 = FileStorageService.contentAddressedId(file);
+            if (inUse || (sha256 != null && blobs.contains(sha256))) {
+                continue;
+            }
+            // 內容定址檔案鎖住紀錄後再刪除 (也會刪除提交後沒來得及刪除檔案、引用數為 0 的紀錄)，
+            // 不會和同時上傳相同內容的請求互相干擾
+            boolean removed = sha256 != null
+                    ? fileStorageService.purgeContentAddressed(sha256, file.substring(file.lastIndexOf('/') + 1))
+                    : fileStorageService.deleteStoredFile(file);
+            if (removed) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+}
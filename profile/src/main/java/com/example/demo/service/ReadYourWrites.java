@@ -0,0 +1,161 @@
+package com.example.demo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 使用唯讀副本時的 read-your-writes 保證。
+ * 副本的資料會比主資料庫晚一點 (複寫延遲)，剛更新過的個人檔案若從副本讀取，使用者會看到更新前的內容，
+ * 而且舊內容會被放回快取。因此寫入提交後記錄被修改的項目，在時間窗內讀取這些項目的查詢改由主資料庫處理。
+ * <p>
+ * 被修改的項目只記錄在處理寫入的節點上；多個節點時，同一個用戶端之後的請求可能被分配到其他節點。
+ * 因此寫入的回應另外帶有寫入時間的 cookie ({@link #COOKIE_NAME})，帶著這個 cookie 在時間窗內的請求，
+ * 不論由哪一個節點處理，都略過個人檔案快取並使用主資料庫 (讀到的最新內容會放回該節點的快取)。
+ * 時間以各節點的時鐘比較，節點之間需要校時。其他用戶端在各節點的快取過期 (profile.cache.ttl) 之前仍可能讀到舊內容，
+ * 這和沒有副本時其他節點的快取相同。
+ * <p>
+ * 未設定副本 (profile.datasource.replica.url) 時不做任何事。
+ */
+@Component
+public class ReadYourWrites {
+
+    // 主題的鍵：主題內容也包含在個人檔案的唯讀模型中，主題變動後個人檔案的讀取同樣要使用主資料庫
+    public static final String THEMES = "themes";
+
+    // 寫入時間 (epoch 毫秒) 的 cookie
+    public static final String COOKIE_NAME = "ryw";
+
+    // 請求屬性：這個請求是否來自時間窗內寫入過的用戶端 (解析 cookie 一次)
+    private static final String RECENT_WRITER = ReadYourWrites.class.getName() + ".RECENT_WRITER";
+    private static final String COOKIE_SET = ReadYourWrites.class.getName() + ".COOKIE_SET";
+
+    // 目前執行緒的查詢是否必須使用主資料庫 (由 ReplicaRoutingDataSource 讀取)
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final boolean enabled;
+    private final Duration window;
+
+    // 最近被寫入的項目，存活時間就是時間窗 (應大於副本平常的複寫延遲)
+    private final Cache<String, Boolean> recentWrites;
+
+    @Autowired
+    public ReadYourWrites(@Value("${profile.datasource.replica.url:}") String replicaUrl,
+                          @Value("${profile.datasource.read-your-writes-window:5s}") Duration window) {
+        this.enabled = !replicaUrl.isBlank();
+        this.window = window;
+        this.recentWrites = Caffeine.newBuilder().expireAfterWrite(window).build();
+    }
+
+    /**
+     * 個人檔案的鍵。
+     * @param userId 使用者 ID。
+     */
+    public static String profileKey(Long userId) {
+        return "profile:" + userId;
+    }
+
+    /**
+     * 記錄項目剛被寫入。應在交易提交後、清除快取之前呼叫。
+     * 在 HTTP 請求中呼叫時，回應會帶有寫入時間的 cookie。
+     * @param key 項目的鍵。
+     */
+    public void recordWrite(String key) {
+        if (enabled) {
+            recentWrites.put(key, Boolean.TRUE);
+            markClient();
+        }
+    }
+
+    /**
+     * 目前的請求是否來自時間窗內寫入過的用戶端；是的話讀取應該略過快取 (查詢會使用主資料庫)。
+     * 不在 HTTP 請求中 (背景工作) 時為 false。
+     */
+    public boolean isRecentWriter() {
+        if (!enabled || !(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return false;
+        }
+        HttpServletRequest request = attributes.getRequest();
+        if (request.getAttribute(RECENT_WRITER) instanceof Boolean recent) {
+            return recent;
+        }
+        boolean recent = false;
+        if (request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if (COOKIE_NAME.equals(cookie.getName())) {
+                    recent |= isWithinWindow(cookie.getValue());
+                }
+            }
+        }
+        request.setAttribute(RECENT_WRITER, recent);
+        return recent;
+    }
+
+    private boolean isWithinWindow(String writtenAt) {
+        try {
+            long elapsed = System.currentTimeMillis() - Long.parseLong(writtenAt);
+            return elapsed < window.toMillis();
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    // 回應加上寫入時間的 cookie (每個請求只加一次)；同一個請求之後的讀取由本機記錄的 recentWrites 處理
+    private void markClient() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return;
+        }
+        HttpServletRequest request = attributes.getRequest();
+        HttpServletResponse response = attributes.getResponse();
+        if (request.getAttribute(COOKIE_SET) == null && response != null && !response.isCommitted()) {
+            request.setAttribute(COOKIE_SET, Boolean.TRUE);
+            response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie.from(COOKIE_NAME, String.valueOf(System.currentTimeMillis()))
+                    .maxAge(window).path("/").httpOnly(true).sameSite("Lax").build().toString());
+        }
+    }
+
+    /**
+     * 執行讀取；keys 中任何一個項目在時間窗內被這個節點寫入過，或請求來自剛寫入的用戶端 ({@link #isRecentWriter()}) 時，
+     * 查詢改由主資料庫處理。
+     * @param keys 這次讀取涉及的項目。
+     * @param query 讀取 (會在唯讀交易中查詢資料庫)。
+     * @return 讀取的結果。
+     */
+    public <T> T read(Collection<String> keys, Supplier<T> query) {
+        if (!enabled || PRIMARY_REQUIRED.get()
+                || (keys.stream().noneMatch(key -> recentWrites.getIfPresent(key) != null) && !isRecentWriter())) {
+            return query.get();
+        }
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+        try {
+            return query.get();
+        } finally {
+            PRIMARY_REQUIRED.remove();
+        }
+    }
+
+    public <T> T read(String key, Supplier<T> query) {
+        return read(List.of(key), query);
+    }
+
+    /**
+     * 目前執行緒的查詢是否必須使用主資料庫。
+     */
+    public static boolean isPrimaryRequired() {
+        return PRIMARY_REQUIRED.get();
+    }
+}
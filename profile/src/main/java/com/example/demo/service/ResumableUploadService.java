@@ -0,0 +1,380 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.UploadSessionView;
+import com.example.demo.entity.UploadSession;
+import com.example.demo.repository.UploadSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 可續傳的分段上傳，給行動網路上傳大型背景圖片使用，連線中斷時不必從頭重傳：
+ * 1. create 建立工作階段並宣告檔案大小，同時在上傳目錄的 .sessions 子目錄建立空的暫存檔；
+ * 2. writeChunk 從指定位移寫入一個區塊，以 FileChannel 的位置寫入直接寫到暫存檔中的對應位置。
+ *    連線中斷時已經寫入的部分會保留，目前位移就是暫存檔的大小，用戶端以 status 查詢後從那裡繼續；
+ * 3. complete 在所有區塊都收到後，把暫存檔以 rename 移到最終位置 (不再複製內容)，並更新個人檔案。
+ * 區塊只能從目前位移或之前開始 (重送已寫入的部分會直接覆寫)，因此暫存檔中不會有空洞。
+ * 同一個工作階段同時只能有一個請求寫入，以檔案鎖判斷，多個節點共用上傳目錄時也有效。
+ * complete 在持有鎖時先把暫存檔改名為這次完成專用的檔名 (認領工作階段)，之後才檢查內容並移到最終位置；
+ * 區塊寫入取得鎖後確認暫存檔仍在原本的檔名，因此檢查過的內容不會再被修改。
+ * 超過 ttl 沒有收到區塊的工作階段由背景工作刪除。
+ */
+@Service
+public class ResumableUploadService {
+
+    public static final String AVATAR = "avatar";
+    public static final String BACKGROUND_IMAGE = "background-image";
+    private static final Set<String> TARGETS = Set.of(AVATAR, BACKGROUND_IMAGE);
+
+    // 每次從請求讀取的緩衝區大小
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 完成中的暫存檔名：工作階段 ID 加上這個字串與每次完成請求各自的 UUID
+    private static final String COMPLETING = ".completing-";
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UserProfileService userProfileService;
+    private final DatabaseConcurrencyLimiter databaseConcurrencyLimiter;
+
+    // 暫存檔的目錄 (在上傳目錄之下，完成時才能以 rename 移到最終位置)
+    private final Path sessionDirectory;
+
+    private final long maxFileSize;
+    private final Duration ttl;
+    private final int maxSessionsPerUser;
+    private final int batchSize;
+
+    private final Counter bytesWritten;
+    private final Counter expiredSessions;
+
+    @Autowired
+    public ResumableUploadService(UploadSessionRepository uploadSessionRepository,
+                                  FileStorageService fileStorageService,
+                                  UserProfileService userProfileService,
+                                  DatabaseConcurrencyLimiter databaseConcurrencyLimiter,
+                                  @Value("${file.upload.max-size:10MB}") DataSize maxFileSize,
+                                  @Value("${file.upload.session.ttl:24h}") Duration ttl,
+                                  @Value("${file.upload.session.max-per-user:3}") int maxSessionsPerUser,
+                                  @Value("${file.upload.session.batch-size:100}") int batchSize,
+                                  MeterRegistry meterRegistry) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.userProfileService = userProfileService;
+        this.databaseConcurrencyLimiter = databaseConcurrencyLimiter;
+        this.sessionDirectory = fileStorageService.getStorageLocation().resolve(".sessions");
+        this.maxFileSize = maxFileSize.toBytes();
+        this.ttl = ttl;
+        this.maxSessionsPerUser = maxSessionsPerUser;
+        this.batchSize = batchSize;
+        // 區塊直接寫入上傳目錄，和 FileStorageService 寫入的量一起計算
+        this.bytesWritten = Counter.builder("file.storage.bytes.written").baseUnit("bytes")
+                .description("寫入上傳目錄的位元組數").register(meterRegistry);
+        this.expiredSessions = Counter.builder("file.upload.sessions.expired")
+                .description("過期而被刪除的可續傳上傳工作階段數").register(meterRegistry);
+        try {
+            Files.createDirectories(sessionDirectory);
+        } catch (IOException ex) {
+            throw new RuntimeException("無法建立上傳暫存目錄！", ex);
+        }
+    }
+
+    /**
+     * 建立工作階段。
+     * @param userId 使用者 ID。
+     * @param target 完成後要更新的圖片："avatar" 或 "background-image"。
+     * @param fileName 原始檔案名稱，可為 null。
+     * @param size 檔案的總大小。
+     * @return 新工作階段的狀態 (位移為 0)。
+     * @throws ResponseStatusException 400 如果 target 或大小不正確，413 如果超過大小上限，
+     *         404 如果找不到個人檔案，429 如果使用者進行中的工作階段過多。
+     */
+    public UploadSessionView create(Long userId, String target, String fileName, long size) {
+        if (!TARGETS.contains(target)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "target 必須是 avatar 或 background-image");
+        }
+        if (size <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "檔案大小必須大於 0");
+        }
+        if (size > maxFileSize) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "檔案超過大小上限 " + maxFileSize + " bytes");
+        }
+        // 個人檔案有快取，不存在時不建立任何暫存檔
+        if (userProfileService.getUserProfile(userId).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "找不到個人檔案 (ID: " + userId + ")");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession session = databaseConcurrencyLimiter.call(() -> {
+            if (uploadSessionRepository.countByUserIdAndExpiresAtAfter(userId, now) >= maxSessionsPerUser) {
+                throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "進行中的上傳過多，請先完成或取消其他上傳");
+            }
+            return uploadSessionRepository.save(new UploadSession(UUID.randomUUID().toString(), userId, target,
+                    Objects.requireNonNullElse(fileName, target), size, now, now.plus(ttl)));
+        });
+        // 先有紀錄再建立暫存檔：中途失敗時只會留下紀錄，過期後一起清除
+        try {
+            Files.createFile(partialFile(session));
+        } catch (IOException ex) {
+            discard(session);
+            throw new RuntimeException("無法建立上傳暫存檔", ex);
+        }
+        return view(session, 0);
+    }
+
+    /**
+     * 查詢工作階段目前的位移。
+     * @param userId 使用者 ID。
+     * @param uploadId 工作階段 ID。
+     * @return 工作階段的狀態。
+     * @throws ResponseStatusException 404 如果工作階段不存在或已過期。
+     */
+    public UploadSessionView status(Long userId, String uploadId) {
+        UploadSession session = findActive(userId, uploadId);
+        try {
+            return view(session, Files.size(partialFile(session)));
+        } catch (IOException ex) {
+            throw missing(session);
+        }
+    }
+
+    /**
+     * 從指定位移寫入一個區塊。寫入途中連線中斷時，已收到的部分會保留。
+     * @param userId 使用者 ID。
+     * @param uploadId 工作階段 ID。
+     * @param offset 區塊在檔案中的起始位移，不能大於目前位移。
+     * @param content 區塊內容 (請求本體)。
+     * @return 寫入後的狀態。
+     * @throws ResponseStatusException 404 如果工作階段不存在或已過期，409 如果位移大於目前位移、
+     *         另一個請求正在寫入或上傳正在完成，413 如果區塊超出宣告的檔案大小。
+     */
+    public UploadSessionView writeChunk(Long userId, String uploadId, long offset, InputStream content) {
+        UploadSession session = findActive(userId, uploadId);
+        Path partial = partialFile(session);
+        long size;
+        try (FileChannel target = FileChannel.open(partial, StandardOpenOption.WRITE);
+             FileLock lock = lock(target)) {
+            // 開啟之後、取得鎖之前，complete 可能已經認領並改名 (或取消、過期時刪除) 暫存檔：
+            // 這時開啟的是已經不屬於工作階段的檔案，不能寫入
+            if (Files.notExists(partial)) {
+                throw missing(session);
+            }
+            long current = target.size();
+            if (offset < 0 || offset > current) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "位移必須介於 0 與目前位移 " + current + " 之間");
+            }
+            long position = offset;
+            try {
+                ReadableByteChannel source = Channels.newChannel(content);
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (source.read(buffer) >= 0) {
+                    buffer.flip();
+                    if (position + buffer.remaining() > session.getSize()) {
+                        throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                                "區塊超出宣告的檔案大小 " + session.getSize() + " bytes");
+                    }
+                    while (buffer.hasRemaining()) {
+                        position += target.write(buffer, position);
+                    }
+                    buffer.clear();
+                }
+            } finally {
+                bytesWritten.increment(position - offset);
+            }
+            size = target.size();
+        } catch (NoSuchFileException ex) {
+            throw missing(session);
+        } catch (IOException ex) {
+            // 用戶端中斷連線等情況；已寫入的部分保留，用戶端查詢位移後繼續
+            throw new RuntimeException("區塊寫入中斷 (上傳 " + uploadId + ")", ex);
+        }
+
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+        databaseConcurrencyLimiter.call(() -> uploadSessionRepository.extend(session.getId(), expiresAt));
+        session.setExpiresAt(expiresAt);
+        return view(session, size);
+    }
+
+    /**
+     * 完成上傳：把組合完成的暫存檔移到最終位置並更新個人檔案的頭像或背景圖片。
+     * 更新個人檔案之前失敗 (例如資料庫暫時無法使用) 時工作階段保留，可以再次呼叫。
+     * @param userId 使用者 ID。
+     * @param uploadId 工作階段 ID。
+     * @return 新圖片的 URL。
+     * @throws ResponseStatusException 404 如果工作階段不存在或已過期，409 如果還沒收到所有區塊、另一個請求正在寫入
+     *         或另一個請求正在完成，415 如果內容不是支援的圖片格式 (工作階段會被刪除)。
+     */
+    public String complete(Long userId, String uploadId) {
+        UploadSession session = findActive(userId, uploadId);
+        Path partial = partialFile(session);
+        Path assembled = sessionDirectory.resolve(session.getId() + COMPLETING + UUID.randomUUID());
+        // 確認沒有請求正在寫入、而且所有區塊都已收到，在釋放鎖之前改名認領；
+        // Java 開啟檔案時允許其他程式改名 (Windows 也是)，持有鎖時就能移動
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE);
+             FileLock lock = lock(channel)) {
+            if (channel.size() != session.getSize()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "尚未收到所有區塊 (" + channel.size() + "/" + session.getSize() + " bytes)");
+            }
+            Files.move(partial, assembled, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException ex) {
+            ResponseStatusException missing = missing(session);
+            if (missing.getStatusCode() == HttpStatus.NOT_FOUND) {
+                discard(session);
+            }
+            throw missing;
+        } catch (IOException ex) {
+            throw new RuntimeException("無法認領上傳暫存檔 (上傳 " + uploadId + ")", ex);
+        }
+
+        String url;
+        try {
+            url = AVATAR.equals(session.getTarget())
+                    ? userProfileService.updateAvatar(userId, assembled, session.getFileName())
+                    : userProfileService.updateBackgroundImage(userId, assembled, session.getFileName());
+        } catch (RuntimeException ex) {
+            if (Files.notExists(assembled)) {
+                // 暫存檔已經移走 (更新失敗後連同新檔案一起刪除)，工作階段就結束了
+                databaseConcurrencyLimiter.call(() -> uploadSessionRepository.claim(session.getId()));
+            } else if (ex instanceof ResponseStatusException status && status.getStatusCode().is4xxClientError()) {
+                // 內容不是圖片等無法重試的錯誤
+                discard(session);
+            } else {
+                // 資料庫暫時無法使用等情況：改回原本的檔名，工作階段可以再次完成
+                release(session, assembled, partial);
+            }
+            throw ex;
+        }
+        databaseConcurrencyLimiter.call(() -> uploadSessionRepository.claim(session.getId()));
+        return url;
+    }
+
+    /**
+     * 取消上傳並刪除暫存檔。
+     * @param userId 使用者 ID。
+     * @param uploadId 工作階段 ID。
+     * @throws ResponseStatusException 404 如果工作階段不存在。
+     */
+    public void abort(Long userId, String uploadId) {
+        UploadSession session = databaseConcurrencyLimiter.call(() -> uploadSessionRepository.findByIdAndUserId(uploadId, userId))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "找不到上傳 " + uploadId));
+        discard(session);
+    }
+
+    /**
+     * 刪除已過期的工作階段與暫存檔。
+     * @return 刪除的工作階段數。
+     */
+    @Scheduled(fixedDelayString = "${file.upload.session.cleanup-interval:5m}")
+    public int expireSessions() {
+        int expired = 0;
+        List<UploadSession> batch;
+        do {
+            batch = uploadSessionRepository.findByExpiresAtBeforeOrderByExpiresAtAsc(LocalDateTime.now(), Limit.of(batchSize));
+            for (UploadSession session : batch) {
+                if (discard(session)) {
+                    expired++;
+                }
+            }
+        } while (batch.size() == batchSize);
+        expiredSessions.increment(expired);
+        return expired;
+    }
+
+    private UploadSession findActive(Long userId, String uploadId) {
+        return databaseConcurrencyLimiter.call(() -> uploadSessionRepository.findByIdAndUserId(uploadId, userId))
+                .filter(session -> session.getExpiresAt().isAfter(LocalDateTime.now()))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "找不到上傳 " + uploadId + " 或已過期"));
+    }
+
+    // 認領並刪除工作階段與暫存檔 (包含完成中途失敗留下的檔案)；多個節點同時處理時只有一個會刪除
+    private boolean discard(UploadSession session) {
+        if (databaseConcurrencyLimiter.call(() -> uploadSessionRepository.claim(session.getId())) == 0) {
+            return false;
+        }
+        try {
+            Files.deleteIfExists(partialFile(session));
+            try (DirectoryStream<Path> completing = completingFiles(session)) {
+                for (Path file : completing) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println("無法刪除上傳暫存檔: " + session.getId() + ". 錯誤: " + ex.getMessage());
+        }
+        return true;
+    }
+
+    // 完成失敗但可以重試：把認領時改名的暫存檔改回原本的檔名；改不回去時結束工作階段
+    private void release(UploadSession session, Path assembled, Path partial) {
+        try {
+            Files.move(assembled, partial, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.err.println("無法還原上傳暫存檔: " + session.getId() + ". 錯誤: " + ex.getMessage());
+            discard(session);
+        }
+    }
+
+    // 暫存檔不在原本的檔名時的錯誤：另一個請求正在完成時是 409，否則 (已取消或過期) 是 404
+    private ResponseStatusException missing(UploadSession session) {
+        try (DirectoryStream<Path> completing = completingFiles(session)) {
+            if (completing.iterator().hasNext()) {
+                return new ResponseStatusException(HttpStatus.CONFLICT, "另一個請求正在完成這個上傳");
+            }
+        } catch (IOException ex) {
+            // 當作暫存檔不存在
+        }
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "上傳暫存檔已不存在，請重新上傳");
+    }
+
+    private DirectoryStream<Path> completingFiles(UploadSession session) throws IOException {
+        return Files.newDirectoryStream(sessionDirectory, session.getId() + COMPLETING + "*");
+    }
+
+    // 取得暫存檔的獨佔鎖；同一個 JVM 中的另一個請求持有時拋出 OverlappingFileLockException
+    private static FileLock lock(FileChannel channel) throws IOException {
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            lock = null;
+        }
+        if (lock == null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "另一個請求正在寫入這個上傳");
+        }
+        return lock;
+    }
+
+    private Path partialFile(UploadSession session) {
+        return sessionDirectory.resolve(session.getId());
+    }
+
+    private static UploadSessionView view(UploadSession session, long offset) {
+        return new UploadSessionView(session.getId(), session.getTarget(), session.getSize(), offset, session.getExpiresAt());
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.demo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * S3 相容物件儲存後端 (AWS S3、MinIO、Ceph 等)：物件儲存是所有節點共用的儲存位置，
+ * 本機上傳目錄則是各節點的熱門檔案快取 ({@link HotFileCache})。
+ * 寫入時先在本機完成，再上傳到物件儲存並登記到快取；讀取時優先使用快取，沒有快取才下載。
+ */
+public class S3StorageBackend implements StorageBackend {
+
+    // DeleteObjects 一次最多刪除的物件數
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String keyPrefix;
+    private final Path root;
+    private final HotFileCache cache;
+
+    // 最近確認不存在的 key：縮圖尚未產生時，同時湧入的 ?w= 請求不必每個都送到物件儲存。
+    // 另一個節點之後上傳的檔案不會清除這裡的紀錄，因此只保留很短的時間
+    private final Cache<String, Boolean> missing = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofSeconds(1))
+            .maximumSize(10_000)
+            .build();
+
+    // 正在下載的 key：同一個檔案同時被多個請求讀取時只下載一次
+    private final ConcurrentHashMap<String, Object> downloading = new ConcurrentHashMap<>();
+
+    /**
+     * @param s3 S3 用戶端。
+     * @param bucket 儲存檔案的 bucket。
+     * @param keyPrefix 物件 key 的前綴 (例如 "uploads/")，可以是空字串。
+     * @param root 本機上傳目錄 (快取位置)。
+     * @param cache 本機熱門檔案快取。
+     */
+    public S3StorageBackend(S3Client s3, String bucket, String keyPrefix, Path root, HotFileCache cache) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.keyPrefix = keyPrefix.isEmpty() || keyPrefix.endsWith("/") ? keyPrefix : keyPrefix + "/";
+        this.root = root.toAbsolutePath().normalize();
+        this.cache = cache;
+    }
+
+    @Override
+    public void save(String key, Path localFile, String contentType) throws IOException {
+        long size = Files.size(localFile);
+        try {
+            s3.putObject(request -> request.bucket(bucket).key(keyPrefix + key).contentType(contentType)
+                    .contentLength(size), RequestBody.fromFile(localFile));
+        } catch (SdkException ex) {
+            throw new IOException("無法上傳檔案到物件儲存: " + key, ex);
+        }
+        missing.invalidate(key);
+        cache.put(key, size);
+    }
+
+    @Override
+    public Path fetch(String key) throws IOException {
+        Path cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        if (missing.getIfPresent(key) != null) {
+            return null;
+        }
+        Object lock = downloading.computeIfAbsent(key, k -> new Object());
+        try {
+            synchronized (lock) {
+                // 等待期間另一個請求可能已經下載完成
+                cached = cache.get(key);
+                return cached != null ? cached : download(key);
+            }
+        } finally {
+            downloading.remove(key, lock);
+        }
+    }
+
+    // 下載到同目錄的暫存檔，再以 rename 移到 key 對應的位置，讀取端不會看到下載到一半的檔案
+    private Path download(String key) throws IOException {
+        Path target = root.resolve(key);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(".tmp-" + UUID.randomUUID());
+        try {
+            s3.getObject(request -> request.bucket(bucket).key(keyPrefix + key), ResponseTransformer.toFile(temp));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchKeyException ex) {
+            missing.put(key, Boolean.TRUE);
+            return null;
+        } catch (S3Exception ex) {
+            if (ex.statusCode() == 404) {
+                missing.put(key, Boolean.TRUE);
+                return null;
+            }
+            throw new IOException("無法從物件儲存下載檔案: " + key, ex);
+        } catch (SdkException ex) {
+            throw new IOException("無法從物件儲存下載檔案: " + key, ex);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        cache.put(key, Files.size(target));
+        return target;
+    }
+
+    /**
+     * 刪除物件與本機快取。物件儲存的刪除不會告知物件是否存在，因此先以 HEAD 確認；
+     * 不存在時回傳 false，呼叫端才能改用其他位置 (例如舊的單層 URL 對應的分層 key)。
+     */
+    @Override
+    public boolean delete(String key) throws IOException {
+        try {
+            if (!exists(key)) {
+                return false;
+            }
+            s3.deleteObject(request -> request.bucket(bucket).key(keyPrefix + key));
+        } catch (SdkException ex) {
+            throw new IOException("無法從物件儲存刪除檔案: " + key, ex);
+        } finally {
+            cache.remove(key);
+        }
+        return true;
+    }
+
+    private boolean exists(String key) {
+        try {
+            s3.headObject(request -> request.bucket(bucket).key(keyPrefix + key));
+            return true;
+        } catch (NoSuchKeyException ex) {
+            return false;
+        } catch (S3Exception ex) {
+            if (ex.statusCode() == 404) {
+                return false;
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public void deletePrefix(String prefix) throws IOException {
+        try {
+            List<ObjectIdentifier> batch = new ArrayList<>();
+            for (S3Object object : s3.listObjectsV2Paginator(request -> request.bucket(bucket).prefix(keyPrefix + prefix)).contents()) {
+                batch.add(ObjectIdentifier.builder().key(object.key()).build());
+                if (batch.size() >= DELETE_BATCH_SIZE) {
+                    deleteObjects(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                deleteObjects(batch);
+            }
+        } catch (SdkException ex) {
+            throw new IOException("無法從物件儲存刪除檔案: " + prefix, ex);
+        } finally {
+            cache.removePrefix(prefix);
+        }
+    }
+
+    // quiet 模式的回應只列出刪除失敗的物件 (例如 AccessDenied、InternalError)，有失敗時拋出例外讓呼叫端之後重試
+    private void deleteObjects(List<ObjectIdentifier> objects) throws IOException {
+        DeleteObjectsResponse response = s3.deleteObjects(request -> request.bucket(bucket)
+                .delete(Delete.builder().objects(objects).quiet(true).build()));
+        if (!response.errors().isEmpty()) {
+            throw new IOException("無法從物件儲存刪除檔案: " + response.errors().stream()
+                    .map(error -> error.key() + " (" + error.code() + ")")
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    @Override
+    public void walk(Consumer<StoredObject> visitor) throws IOException {
+        try {
+            // 分頁列出 (每頁最多 1000 個物件)，不會一次載入全部的清單
+            for (S3Object object : s3.listObjectsV2Paginator(request -> request.bucket(bucket).prefix(keyPrefix)).contents()) {
+                visitor.accept(new StoredObject(object.key().substring(keyPrefix.length()), object.size(), object.lastModified()));
+            }
+        } catch (SdkException ex) {
+            throw new IOException("無法列出物件儲存中的檔案", ex);
+        }
+    }
+
+    @Override
+    public boolean isLocal() {
+        return false;
+    }
+}
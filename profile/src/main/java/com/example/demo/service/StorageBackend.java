@@ -0,0 +1,63 @@
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * 上傳檔案的儲存後端。以相對於儲存根目錄的 key 存取，例如 "3f/a2/檔名.jpg"、"檔名.jpg.variants/w64.jpg"。
+ * 檔案一律先寫在本機上傳目錄 (file.upload.dir) 中 key 對應的位置 (驗證、計算雜湊、產生縮圖都在本機完成)，
+ * 再交給後端保存；讀取時後端提供一個本機檔案，/uploads 可以直接以 sendfile 傳送。
+ * 本機後端的上傳目錄就是儲存位置；物件儲存後端的上傳目錄則是各節點的熱門檔案快取。
+ */
+public interface StorageBackend {
+
+    /**
+     * 保存已經寫在本機上傳目錄中的檔案。
+     * @param key 檔案的 key。
+     * @param localFile 本機檔案 (位於上傳目錄中 key 對應的位置)。
+     * @param contentType 檔案的 Content-Type。
+     */
+    void save(String key, Path localFile, String contentType) throws IOException;
+
+    /**
+     * 取得可以讀取的本機檔案，必要時從遠端下載到本機快取。
+     * @param key 檔案的 key。
+     * @return 本機檔案；檔案不存在時為 null。
+     */
+    Path fetch(String key) throws IOException;
+
+    /**
+     * 刪除檔案 (連同本機快取中的副本)。
+     * @param key 檔案的 key。
+     * @return 檔案確實存在並被刪除時為 true。
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * 刪除 key 以 prefix 開頭的所有檔案，prefix 以 "/" 結尾 (相當於刪除一個目錄，例如縮圖目錄)。
+     * @param prefix key 的前綴。
+     */
+    void deletePrefix(String prefix) throws IOException;
+
+    /**
+     * 逐一走訪所有檔案 (孤兒檔案清除使用)，不會一次載入全部的清單。
+     * @param visitor 每個檔案呼叫一次。
+     */
+    void walk(Consumer<StoredObject> visitor) throws IOException;
+
+    /**
+     * @return 上傳目錄本身就是儲存位置 (所有節點共用同一個目錄) 時為 true。
+     */
+    boolean isLocal();
+
+    /**
+     * 後端中的一個檔案。
+     * @param key 檔案的 key。
+     * @param size 檔案大小。
+     * @param lastModified 最後修改時間。
+     */
+    record StoredObject(String key, long size, Instant lastModified) {
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.demo.service;
+
+/**
+ * 檔案儲存完成後的結果。
+ * @param url 檔案的相對 URL，例如 "/uploads/xxx.jpg"。
+ * @param size 檔案大小 (位元組)。
+ * @param sha256 寫入過程中同步計算的 SHA-256 (十六進位字串)。
+ * @param contentType 由檔案開頭的 magic bytes 判斷出的圖片類型。
+ */
+public record StoredFile(String url, long size, String sha256, String contentType) {
+}
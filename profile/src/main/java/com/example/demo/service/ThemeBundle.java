@@ -0,0 +1,10 @@
+package com.example.demo.service;
+
+/**
+ * 預先產生的主題資源包：主題的所有預設值與樣式表 (JSON)，以及事先壓縮好的 gzip 版本。
+ * @param json 未壓縮的內容 (UTF-8 JSON)。
+ * @param gzip 以最高壓縮等級事先壓縮的內容。
+ * @param etag 內容的雜湊 (不含引號)，gzip 版本的 ETag 另外加上 "-gz"。
+ */
+public record ThemeBundle(byte[] json, byte[] gzip, String etag) {
+}
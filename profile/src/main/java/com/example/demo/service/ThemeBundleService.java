@@ -0,0 +1,134 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Theme;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 產生並保存主題資源包。前端原本要分別取得主題的各個預設值並自行套用按鈕樣式，
+ * 現在一次取得一個已經壓縮好的資源包。
+ * 資源包產生一次 (包含壓縮) 後直接從記憶體提供，不會在每次請求時壓縮。
+ * 資源包記錄產生時的主題版本，只在和目前主題的版本相同時使用，因此不會提供比主題快取舊的內容；
+ * 主題變動時 (ThemeChangedEvent) 立即重新產生，不必等到下一次請求。
+ */
+@Service
+public class ThemeBundleService {
+
+    // 顏色只接受顏色名稱、#hex 與 rgb()/hsl() 等寫法，避免主題設定中的字串跳出 CSS 宣告
+    private static final Pattern COLOR = Pattern.compile("[#\\w(),.%\\s-]+");
+
+    private final ThemeService themeService;
+    private final ButtonStyleCompiler buttonStyleCompiler;
+    private final ObjectMapper objectMapper;
+
+    // 主題 ID -> 資源包與產生時的主題版本。主題數量很少，不需要容量上限
+    private final Map<Long, VersionedBundle> bundles = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ThemeBundleService(ThemeService themeService, ButtonStyleCompiler buttonStyleCompiler, ObjectMapper objectMapper) {
+        this.themeService = themeService;
+        this.buttonStyleCompiler = buttonStyleCompiler;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 取得主題的資源包，沒有目前版本的資源包時產生。
+     * @param themeId 主題 ID。
+     * @return 資源包；主題不存在時為 Optional.empty()。
+     */
+    public Optional<ThemeBundle> getBundle(Long themeId) {
+        return themeService.getThemeById(themeId).map(this::bundleOf);
+    }
+
+    // 主題被修改時立即產生新版本的資源包，刪除時丟棄
+    @EventListener
+    public void onThemeChanged(ThemeChangedEvent event) {
+        try {
+            themeService.getThemeById(event.themeId())
+                    .ifPresentOrElse(this::bundleOf, () -> bundles.remove(event.themeId()));
+        } catch (RuntimeException ex) {
+            // 交給下一次請求重新產生，不影響已經提交的主題修改
+            bundles.remove(event.themeId());
+            System.err.println("無法產生主題資源包: " + event.themeId() + ". 錯誤: " + ex.getMessage());
+        }
+    }
+
+    // 同時讀到舊版本主題的請求 (例如在快取清除之前讀取) 不會以舊內容覆蓋較新的資源包
+    private ThemeBundle bundleOf(Theme theme) {
+        return bundles.compute(theme.getId(), (id, existing) ->
+                existing != null && existing.version() >= theme.getVersion() ? existing
+                        : new VersionedBundle(theme.getVersion(), build(theme))).bundle();
+    }
+
+    private ThemeBundle build(Theme theme) {
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("id", theme.getId());
+        content.put("themeName", theme.getThemeName());
+        content.put("description", theme.getDescription());
+        content.put("defaultBackgroundImageUrl", theme.getDefaultBackgroundImageUrl());
+        content.put("defaultAvatarUrl", theme.getDefaultAvatarUrl());
+        content.put("defaultButtonStyleConfig", theme.getDefaultButtonStyleConfig());
+        content.put("defaultTextColor", theme.getDefaultTextColor());
+        content.put("defaultBackgroundColor", theme.getDefaultBackgroundColor());
+        content.put("css", css(theme));
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(content);
+            return new ThemeBundle(json, gzip(json), ButtonStyleCompiler.hashOf(new String(json, StandardCharsets.UTF_8)));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("無法產生主題資源包: " + theme.getId(), ex);
+        }
+    }
+
+    // 主題的樣式表：以 CSS 變數提供顏色與背景圖片，再加上編譯好的預設按鈕樣式
+    private String css(Theme theme) {
+        StringBuilder css = new StringBuilder(":root {\n");
+        appendColor(css, "--theme-text-color", theme.getDefaultTextColor());
+        appendColor(css, "--theme-background-color", theme.getDefaultBackgroundColor());
+        if (theme.getDefaultBackgroundImageUrl() != null && !theme.getDefaultBackgroundImageUrl().isBlank()) {
+            css.append("  --theme-background-image: url(\"")
+                    .append(theme.getDefaultBackgroundImageUrl().replaceAll("[\"\\\\\\r\\n]", ""))
+                    .append("\");\n");
+        }
+        css.append("}\n");
+        return css.append(buttonStyleCompiler.compile(theme.getDefaultButtonStyleConfig()).css()).toString();
+    }
+
+    private static void appendColor(StringBuilder css, String variable, String color) {
+        if (color != null && COLOR.matcher(color).matches()) {
+            css.append("  ").append(variable).append(": ").append(color.trim()).append(";\n");
+        }
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+        // 只在主題變動後壓縮一次，因此使用最高壓縮等級
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    private record VersionedBundle(long version, ThemeBundle bundle) {
+    }
+}
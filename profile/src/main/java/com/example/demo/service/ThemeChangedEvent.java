@@ -0,0 +1,9 @@
+package com.example.demo.service;
+
+/**
+ * 主題被新增、修改或刪除並且交易已提交時發布的事件。
+ * 快取了主題內容的元件 (例如個人檔案快取) 可以藉此清除過期資料。
+ * @param themeId 變動的主題 ID。
+ */
+public record ThemeChangedEvent(Long themeId) {
+}
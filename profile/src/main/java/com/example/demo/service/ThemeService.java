@@ -2,50 +2,164 @@ package com.example.demo.service;
 
 import com.example.demo.entity.Theme;
 import com.example.demo.repository.ThemeRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
+// 每個公開方法的耗時 (theme.service，以 class、method、exception 標籤區分)
+@Timed(value = "theme.service", histogram = true)
 @Service
 public class ThemeService {
 
+    // 主題清單在快取中使用的固定鍵
+    private static final String ALL_THEMES_KEY = "ALL";
+
     private final ThemeRepository themeRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ReadYourWrites readYourWrites;
+
+    // 主題幾乎不會變動，卻在每次載入頁面時被讀取，因此放在記憶體快取中。
+    // 查不到的結果也以 Optional.empty() 快取，避免重複查詢不存在的主題。
+    // 寫入時只清除本節點的快取，其他節點的修改或直接在資料庫中的修改要等 ttl 到期後才會讀到。
+    // Theme 是可修改的 entity，快取中的物件不直接交給呼叫端，每次讀取都回傳複本，
+    // 呼叫端修改 (例如準備呼叫 updateTheme) 不會影響其他讀取者看到的快取內容。
+    private final Cache<Long, Optional<Theme>> themesById;
+    private final Cache<String, Optional<Theme>> themesByName;
+    private final Cache<String, List<Theme>> themeList;
 
     @Autowired
-    public ThemeService(ThemeRepository themeRepository) {
+    public ThemeService(ThemeRepository themeRepository,
+                        ApplicationEventPublisher eventPublisher,
+                        ReadYourWrites readYourWrites,
+                        MeterRegistry meterRegistry,
+                        @Value("${theme.cache.max-size:200}") long maxSize,
+                        @Value("${theme.cache.ttl:10m}") Duration ttl) {
         this.themeRepository = themeRepository;
+        this.eventPublisher = eventPublisher;
+        this.readYourWrites = readYourWrites;
+        this.themesById = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).recordStats().build();
+        this.themesByName = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).recordStats().build();
+        this.themeList = Caffeine.newBuilder().maximumSize(1).expireAfterWrite(ttl).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, themesById, "themes.byId");
+        CaffeineCacheMetrics.monitor(meterRegistry, themesByName, "themes.byName");
+        CaffeineCacheMetrics.monitor(meterRegistry, themeList, "themes.list");
     }
 
     /**
      * 獲取所有可用的主題。
-     * @return 所有 Theme 物件的列表。
+     * @return 所有 Theme 物件的列表 (唯讀，元素是快取內容的複本)。
      */
     public List<Theme> getAllThemes() {
-        return themeRepository.findAll();
+        return themeList.get(ALL_THEMES_KEY, key -> readYourWrites.read(ReadYourWrites.THEMES,
+                () -> List.copyOf(themeRepository.findAll()))).stream().map(ThemeService::copyOf).toList();
     }
 
     /**
      * 根據主題 ID 獲取特定主題。
      * @param themeId 主題的唯一標識符。
-     * @return 包含 Theme 物件的 Optional，如果找不到則為 Optional.empty()。
+     * @return 包含 Theme 物件 (快取內容的複本) 的 Optional，如果找不到則為 Optional.empty()。
      */
     public Optional<Theme> getThemeById(Long themeId) {
-        return themeRepository.findById(themeId);
+        return themesById.get(themeId, id -> readYourWrites.read(ReadYourWrites.THEMES, () -> themeRepository.findById(id)))
+                .map(ThemeService::copyOf);
     }
 
     /**
      * 根據主題名稱獲取特定主題。
      * @param themeName 主題的名稱。
-     * @return 包含 Theme 物件的 Optional，如果找不到則為 Optional.empty()。
+     * @return 包含 Theme 物件 (快取內容的複本) 的 Optional，如果找不到則為 Optional.empty()。
      */
     public Optional<Theme> getThemeByName(String themeName) {
-        return themeRepository.findByThemeName(themeName);
+        return themesByName.get(themeName, name -> readYourWrites.read(ReadYourWrites.THEMES,
+                () -> themeRepository.findByThemeName(name))).map(ThemeService::copyOf);
+    }
+
+    // 快取內容的複本 (主題只有少數幾個字串欄位，複製的成本可以忽略)
+    private static Theme copyOf(Theme theme) {
+        return new Theme(theme.getId(), theme.getThemeName(), theme.getDescription(),
+                theme.getDefaultBackgroundImageUrl(), theme.getDefaultAvatarUrl(), theme.getDefaultButtonStyleConfig(),
+                theme.getDefaultTextColor(), theme.getDefaultBackgroundColor(), theme.getVersion());
+    }
+
+    /**
+     * 新增主題，交易提交後清除主題快取。
+     * @param theme 要新增的主題 (預設按鈕樣式會先經過驗證)。
+     * @return 儲存後的 Theme 物件。
+     */
+    @Transactional
+    public Theme createTheme(Theme theme) {
+        normalizeButtonStyle(theme);
+        Theme saved = themeRepository.save(theme);
+        TransactionHooks.afterCommit(() -> onThemeChanged(saved.getId()));
+        return saved;
     }
 
-    // 您可以根據需要添加其他方法，例如：
-    // public Theme createTheme(Theme theme) { return themeRepository.save(theme); }
-    // public Theme updateTheme(Theme theme) { return themeRepository.save(theme); }
-    // public void deleteTheme(Long themeId) { themeRepository.deleteById(themeId); }
-}
\ No newline at end of file
+    /**
+     * 更新主題，交易提交後清除主題快取。
+     * @param theme 要更新的主題 (必須帶有 ID)。
+     * @return 更新後的 Theme 物件。
+     */
+    @Transactional
+    public Theme updateTheme(Theme theme) {
+        if (theme.getId() == null || !themeRepository.existsById(theme.getId())) {
+            throw new RuntimeException("Theme with ID " + theme.getId() + " not found.");
+        }
+        normalizeButtonStyle(theme);
+        Theme saved = themeRepository.save(theme);
+        TransactionHooks.afterCommit(() -> onThemeChanged(saved.getId()));
+        return saved;
+    }
+
+    /**
+     * 刪除主題，交易提交後清除主題快取。
+     * @param themeId 要刪除的主題 ID。
+     */
+    @Transactional
+    public void deleteTheme(Long themeId) {
+        themeRepository.deleteById(themeId);
+        TransactionHooks.afterCommit(() -> onThemeChanged(themeId));
+    }
+
+    // 主題的預設按鈕樣式與個人檔案的自訂樣式使用相同的驗證規則
+    private static void normalizeButtonStyle(Theme theme) {
+        if (theme.getDefaultButtonStyleConfig() != null) {
+            theme.setDefaultButtonStyleConfig(ButtonStyleCompiler.normalize(theme.getDefaultButtonStyleConfig()));
+        }
+    }
+
+    // 清除本身的快取，並通知其他快取了主題內容的元件
+    private void onThemeChanged(Long themeId) {
+        readYourWrites.recordWrite(ReadYourWrites.THEMES);
+        invalidateCache();
+        eventPublisher.publishEvent(new ThemeChangedEvent(themeId));
+    }
+
+    /**
+     * 清除所有主題快取。主題名稱可能被修改，因此整批清除而不是只清除單一鍵。
+     */
+    public void invalidateCache() {
+        themesById.invalidateAll();
+        themesByName.invalidateAll();
+        themeList.invalidateAll();
+    }
+
+    /**
+     * 取得主題快取的命中/未命中統計 (三個快取的總和)。
+     * @return 合併後的 CacheStats。
+     */
+    public CacheStats getCacheStats() {
+        return themesById.stats().plus(themesByName.stats()).plus(themeList.stats());
+    }
+}
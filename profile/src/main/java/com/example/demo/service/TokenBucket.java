@@ -0,0 +1,63 @@
+package com.example.demo.service;
+
+/**
+ * 以位元組計量的權杖桶 (token bucket)。
+ * 權杖以固定速率補充，最多累積 capacity 個；只要桶內還有權杖就允許取用，並一次扣除整個請求的大小，
+ * 因此單一請求可以大於桶的容量，扣成負數的部分由之後的請求等待補回。
+ * 長期平均速率不超過設定值，短時間內最多超出 capacity 加上一個請求的大小。
+ */
+final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param bytesPerSecond 每秒補充的權杖數 (位元組)。
+     * @param capacity 最多累積的權杖數，也是閒置後允許的突發量。
+     */
+    TokenBucket(long bytesPerSecond, long capacity) {
+        this.capacity = capacity;
+        this.tokensPerNano = bytesPerSecond / 1_000_000_000.0;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 嘗試取用權杖。
+     * @param amount 要扣除的權杖數。
+     * @return 成功時為 0；桶已用完時為需要等待的奈秒數 (之後才會再有權杖)。
+     */
+    synchronized long tryTake(long amount) {
+        refill();
+        if (tokens <= 0) {
+            return (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+        tokens -= amount;
+        return 0;
+    }
+
+    /**
+     * 歸還先前取用的權杖 (例如另一個權杖桶拒絕了同一個請求)。
+     * @param amount 要歸還的權杖數。
+     */
+    synchronized void refund(long amount) {
+        tokens = Math.min(capacity, tokens + amount);
+    }
+
+    /**
+     * @return 目前的權杖數，負數表示尚在償還的量。
+     */
+    synchronized double available() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+}
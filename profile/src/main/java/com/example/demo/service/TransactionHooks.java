@@ -0,0 +1,31 @@
+package com.example.demo.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 交易相關的小工具。
+ * 快取失效等副作用必須在交易提交之後才執行，否則其他執行緒可能在提交前就把舊資料重新載入快取。
+ */
+public final class TransactionHooks {
+
+    private TransactionHooks() {
+    }
+
+    /**
+     * 在目前交易成功提交後執行指定動作；若目前沒有進行中的交易，則立即執行。
+     * @param action 要執行的動作。
+     */
+    public static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
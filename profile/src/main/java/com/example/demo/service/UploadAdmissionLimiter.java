@@ -0,0 +1,224 @@
+package com.example.demo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 上傳端點的准入控制。
+ * 少數用戶端大量同時上傳會佔滿磁碟 I/O 與請求執行緒，影響其他使用者，
+ * 因此在接收請求本體之前依序檢查：每位使用者與全域的同時上傳數、每位使用者與全域的每秒位元組數 (權杖桶)。
+ * 超過任何一項限制時立即回傳 429 並附上 Retry-After，不在伺服器端排隊等待。
+ * 各項限制設為 0 表示不限制。
+ */
+@Component
+public class UploadAdmissionLimiter {
+
+    // 超過這段時間沒有上傳的使用者狀態會被移除 (屆時權杖桶早已補滿，移除不影響限制)；
+    // 上傳進行中的使用者狀態另外保存在 pinned，不會因為上傳很久或使用者很多而被移除
+    private static final Duration USER_IDLE = Duration.ofMinutes(10);
+    private static final long MAX_TRACKED_USERS = 100_000;
+
+    private final int maxConcurrent;
+    private final int maxConcurrentPerUser;
+    private final long bytesPerSecondPerUser;
+    private final long unknownLengthBytes;
+    private final long retryAfterSeconds;
+    private final MeterRegistry meterRegistry;
+
+    // 全域的權杖桶，不限制速率時為 null
+    private final TokenBucket globalBucket;
+
+    // 進行中的上傳數 (全域)，上傳不排隊，這就是目前的等待深度
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Cache<Long, UserState> users;
+
+    // 有進行中請求的使用者狀態：快取移除了也繼續使用同一份狀態，最後一個請求結束時再放回快取
+    private final ConcurrentHashMap<Long, UserState> pinned = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UploadAdmissionLimiter(@Value("${profile.upload.max-concurrent:32}") int maxConcurrent,
+                                  @Value("${profile.upload.max-concurrent-per-user:2}") int maxConcurrentPerUser,
+                                  @Value("${profile.upload.bytes-per-second:50MB}") DataSize bytesPerSecond,
+                                  @Value("${profile.upload.bytes-per-second-per-user:5MB}") DataSize bytesPerSecondPerUser,
+                                  @Value("${profile.upload.retry-after:1s}") Duration retryAfter,
+                                  @Value("${file.upload.max-size:10MB}") DataSize maxFileSize,
+                                  MeterRegistry meterRegistry) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxConcurrentPerUser = maxConcurrentPerUser;
+        this.bytesPerSecondPerUser = bytesPerSecondPerUser.toBytes();
+        this.unknownLengthBytes = maxFileSize.toBytes();
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+        this.meterRegistry = meterRegistry;
+        // 權杖桶的容量是一秒的量：閒置後允許一秒的突發
+        this.globalBucket = bytesPerSecond.toBytes() > 0
+                ? new TokenBucket(bytesPerSecond.toBytes(), bytesPerSecond.toBytes()) : null;
+        this.users = Caffeine.newBuilder()
+                .expireAfterAccess(USER_IDLE)
+                .maximumSize(MAX_TRACKED_USERS)
+                .build();
+
+        Gauge.builder("profile.upload.in-flight", inFlight, AtomicInteger::get)
+                .description("進行中的上傳數").register(meterRegistry);
+        if (globalBucket != null) {
+            Gauge.builder("profile.upload.bandwidth.available", globalBucket, TokenBucket::available)
+                    .baseUnit("bytes").description("全域權杖桶中剩餘的位元組數，負數表示尚在償還")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 在接收上傳內容之前取得准入許可。
+     * @param userId 上傳的使用者。
+     * @param contentLength 請求本體的大小；未知 (chunked) 時為 -1，以單一檔案的大小上限計算。
+     * @return 許可，上傳結束後 (不論成功與否) 必須呼叫 {@link Permit#release()}。
+     * @throws UploadRejectedException 429 如果超過任何一項限制。
+     */
+    public Permit admit(long userId, long contentLength) {
+        long bytes = contentLength >= 0 ? contentLength : unknownLengthBytes;
+        UserState user = pin(userId);
+
+        if (!tryIncrement(user.inFlight, maxConcurrentPerUser)) {
+            unpin(userId);
+            throw reject("user", "concurrency", retryAfterSeconds, "同時上傳的檔案過多，請稍後再試");
+        }
+        if (!tryIncrement(inFlight, maxConcurrent)) {
+            user.inFlight.decrementAndGet();
+            unpin(userId);
+            throw reject("global", "concurrency", retryAfterSeconds, "伺服器上傳忙碌中，請稍後再試");
+        }
+
+        // 先扣使用者的權杖桶，再扣全域的；全域拒絕時把使用者的權杖還回去
+        String scope = "user";
+        long waitNanos = user.bucket != null ? user.bucket.tryTake(bytes) : 0;
+        if (waitNanos == 0 && globalBucket != null) {
+            scope = "global";
+            waitNanos = globalBucket.tryTake(bytes);
+            if (waitNanos > 0 && user.bucket != null) {
+                user.bucket.refund(bytes);
+            }
+        }
+        if (waitNanos > 0) {
+            user.inFlight.decrementAndGet();
+            inFlight.decrementAndGet();
+            unpin(userId);
+            long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999));
+            throw reject(scope, "rate", seconds, "上傳速度超過限制，請稍後再試");
+        }
+        return new Permit(userId, user);
+    }
+
+    // 取得使用者狀態並標記使用中；pins 只在 pinned 的 compute 中 (同一個鍵互斥) 修改
+    private UserState pin(long userId) {
+        return pinned.compute(userId, (id, state) -> {
+            UserState user = state != null ? state : users.get(id, key -> new UserState(bytesPerSecondPerUser));
+            user.pins++;
+            return user;
+        });
+    }
+
+    // 最後一個請求結束時放回快取 (如果已經被移除) 並重新開始計算閒置時間
+    private void unpin(long userId) {
+        pinned.computeIfPresent(userId, (id, user) -> {
+            if (--user.pins > 0) {
+                return user;
+            }
+            users.put(id, user);
+            return null;
+        });
+    }
+
+    // 計數未達上限時加一；limit <= 0 表示不限制
+    private static boolean tryIncrement(AtomicInteger counter, int limit) {
+        int current;
+        do {
+            current = counter.get();
+            if (limit > 0 && current >= limit) {
+                return false;
+            }
+        } while (!counter.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private UploadRejectedException reject(String scope, String reason, long retryAfter, String message) {
+        meterRegistry.counter("profile.upload.rejected", "scope", scope, "reason", reason).increment();
+        return new UploadRejectedException(message, retryAfter);
+    }
+
+    /**
+     * 一次上傳的准入許可。
+     */
+    public final class Permit {
+        private final long userId;
+        private final UserState user;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long userId, UserState user) {
+            this.userId = userId;
+            this.user = user;
+        }
+
+        /**
+         * 歸還同時上傳數。重複呼叫不會重複歸還。
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                user.inFlight.decrementAndGet();
+                inFlight.decrementAndGet();
+                unpin(userId);
+            }
+        }
+    }
+
+    // 每位使用者的同時上傳數與權杖桶 (不限制速率時為 null)
+    private static final class UserState {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final TokenBucket bucket;
+
+        // 進行中 (包含正在檢查) 的請求數，見 pin/unpin
+        private int pins;
+
+        private UserState(long bytesPerSecond) {
+            this.bucket = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond) : null;
+        }
+    }
+
+    /**
+     * 超過上傳限制 (429)，附帶建議的 Retry-After 秒數。
+     */
+    public static class UploadRejectedException extends ResponseStatusException {
+
+        private final long retryAfterSeconds;
+
+        public UploadRejectedException(String reason, long retryAfterSeconds) {
+            super(HttpStatus.TOO_MANY_REQUESTS, reason);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            return headers;
+        }
+    }
+}
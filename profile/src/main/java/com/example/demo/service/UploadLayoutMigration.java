@@ -0,0 +1,169 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ProfileImageUrls;
+import com.example.demo.repository.UserProfileRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 把舊的單層上傳目錄遷移到分層目錄 (以 file.upload.migrate-layout=true 啟動)。
+ * 遷移在服務正常運作時進行：檔案先搬移，再更新個人檔案中的 URL，
+ * 搬移期間舊 URL 仍可透過 {@link FileStorageService#resolveUrl(String)} 讀到檔案。
+ * 每處理完一批就把最後的 userId 寫入儲存目錄中的檢查點檔案，中斷後重新啟動會從檢查點繼續。
+ * 服務啟動完成 (ready) 後才在背景執行緒開始遷移，不會延遲啟動；遷移失敗只記錄錯誤，服務照常運作。
+ */
+@Component
+@ConditionalOnProperty(name = "file.upload.migrate-layout", havingValue = "true")
+public class UploadLayoutMigration {
+
+    private static final String CHECKPOINT_FILE = ".layout-migration";
+    private static final String DONE = "done";
+
+    private final FileStorageService fileStorageService;
+    private final UserProfileRepository userProfileRepository;
+    private final UserProfileService userProfileService;
+
+    // 每批處理的個人檔案數 (也是每批搬移的剩餘檔案數)
+    private final int batchSize;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("upload-layout-migration").daemon().factory());
+
+    @Autowired
+    public UploadLayoutMigration(FileStorageService fileStorageService,
+                                 UserProfileRepository userProfileRepository,
+                                 UserProfileService userProfileService,
+                                 @Value("${file.upload.migration.batch-size:500}") int batchSize) {
+        this.fileStorageService = fileStorageService;
+        this.userProfileRepository = userProfileRepository;
+        this.userProfileService = userProfileService;
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(() -> {
+            try {
+                migrate();
+            } catch (RuntimeException ex) {
+                System.err.println("上傳目錄遷移失敗，重新啟動後會從檢查點繼續. 錯誤: " + ex.getMessage());
+            }
+        });
+    }
+
+    // 關閉時中斷遷移：目前這一批處理完就停止，檢查點保留已完成的進度
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 執行遷移。可以重複呼叫：已經完成時直接返回，中斷過則從檢查點繼續。
+     */
+    public void migrate() {
+        if (!fileStorageService.isSharded()) {
+            System.err.println("file.upload.sharded=false，略過上傳目錄遷移");
+            return;
+        }
+        if (!fileStorageService.isLocalStorage()) {
+            // 物件儲存沒有目錄可以搬移，單層的 key 照常可以讀取
+            System.err.println("file.storage.backend 不是 local，略過上傳目錄遷移");
+            return;
+        }
+        Path checkpoint = fileStorageService.getStorageLocation().resolve(CHECKPOINT_FILE);
+        String saved = readCheckpoint(checkpoint);
+        if (DONE.equals(saved)) {
+            return;
+        }
+
+        // 第一階段：依 userId 順序搬移個人檔案引用的圖片並更新 URL
+        long afterUserId = saved == null ? Long.MIN_VALUE : Long.parseLong(saved);
+        long profiles = 0;
+        long failures = 0;
+        List<ProfileImageUrls> batch;
+        while (!Thread.currentThread().isInterrupted()
+                && !(batch = userProfileRepository.findImageUrlsAfter(afterUserId, Limit.of(batchSize))).isEmpty()) {
+            for (ProfileImageUrls row : batch) {
+                try {
+                    migrateProfile(row);
+                } catch (RuntimeException ex) {
+                    // 搬移失敗的檔案留在原位，舊 URL 仍然有效，之後重新執行即可
+                    failures++;
+                    System.err.println("無法遷移使用者 " + row.userId() + " 的圖片. 錯誤: " + ex.getMessage());
+                }
+            }
+            profiles += batch.size();
+            afterUserId = batch.get(batch.size() - 1).userId();
+            writeCheckpoint(checkpoint, String.valueOf(afterUserId));
+        }
+
+        // 第二階段：搬移沒有被個人檔案引用的剩餘檔案 (主題預設圖片等)
+        long files = 0;
+        int moved;
+        while (!Thread.currentThread().isInterrupted()
+                && (moved = fileStorageService.moveFlatFilesToShardedLayout(batchSize)) > 0) {
+            files += moved;
+        }
+
+        if (Thread.currentThread().isInterrupted()) {
+            System.err.println("上傳目錄遷移已中斷 (userId <= " + afterUserId + ")，重新啟動後會從檢查點繼續");
+        } else if (failures == 0) {
+            writeCheckpoint(checkpoint, DONE);
+            System.err.println("上傳目錄遷移完成：" + profiles + " 筆個人檔案，" + files + " 個剩餘檔案");
+        } else {
+            // 把檢查點重設到開頭，重新執行時再檢查一次所有個人檔案 (已經搬移的會直接略過)
+            writeCheckpoint(checkpoint, String.valueOf(Long.MIN_VALUE));
+            System.err.println("上傳目錄遷移結束，但有 " + failures + " 筆失敗，請重新執行");
+        }
+    }
+
+    // 先搬檔案再更新 URL；如果使用者在這期間換了圖片，條件式更新不會覆蓋新圖片
+    private void migrateProfile(ProfileImageUrls row) {
+        boolean changed = false;
+        String avatarUrl = fileStorageService.moveToShardedLayout(row.avatarUrl());
+        if (avatarUrl != null) {
+            changed |= userProfileRepository.replaceAvatarUrl(row.userId(), row.avatarUrl(), avatarUrl) > 0;
+        }
+        String backgroundImageUrl = fileStorageService.moveToShardedLayout(row.backgroundImageUrl());
+        if (backgroundImageUrl != null) {
+            changed |= userProfileRepository.replaceBackgroundImageUrl(row.userId(), row.backgroundImageUrl(), backgroundImageUrl) > 0;
+        }
+        if (changed) {
+            userProfileService.evictCachedProfile(row.userId());
+        }
+    }
+
+    private static String readCheckpoint(Path checkpoint) {
+        try {
+            return Files.exists(checkpoint) ? Files.readString(checkpoint, StandardCharsets.UTF_8).trim() : null;
+        } catch (IOException ex) {
+            throw new RuntimeException("無法讀取遷移檢查點 " + checkpoint, ex);
+        }
+    }
+
+    // 先寫入暫存檔再 rename，中斷時不會留下寫到一半的檢查點
+    private static void writeCheckpoint(Path checkpoint, String value) {
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try {
+            Files.writeString(temp, value, StandardCharsets.UTF_8);
+            Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new RuntimeException("無法寫入遷移檢查點 " + checkpoint, ex);
+        }
+    }
+}
@@ -1,118 +1,392 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.ProfileImageUrls;
+import com.example.demo.dto.UserProfilePatch;
+import com.example.demo.dto.UserProfileView;
 import com.example.demo.entity.User; // 如果需要
-import com.example.demo.entity.UserProfile;
 import com.example.demo.entity.Theme;
 import com.example.demo.repository.UserProfileRepository;
-import com.example.demo.repository.ThemeRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile; // 引入 MultipartFile
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+// 每個公開方法的耗時 (profile.service，以 class、method、exception 標籤區分)
+@Timed(value = "profile.service", histogram = true)
 @Service
 public class UserProfileService {
 
     private final UserProfileRepository userProfileRepository;
-    private final ThemeRepository themeRepository;
     private final FileStorageService fileStorageService; // 引入 FileStorageService
+    private final ThemeService themeService;
+    private final ImageVariantService imageVariantService;
+    private final FileDeletionQueue fileDeletionQueue;
+    private final DatabaseConcurrencyLimiter databaseConcurrencyLimiter;
+    private final ReadYourWrites readYourWrites;
+    private final TransactionTemplate transactionTemplate;
+
+    // 頭像與背景圖片欄位的查詢與更新方法
+    private final ImageField avatarField;
+    private final ImageField backgroundImageField;
+
+    // 個人檔案讀取遠多於寫入，因此在資料庫前面放一層有容量上限與存活時間的快取。
+    // 寫入方法會在交易提交後清除對應的項目。
+    // 快取的是不可變的唯讀模型，不是 JPA 實體，因此可以安全地在執行緒之間共用。
+    private final Cache<Long, UserProfileView> profileCache;
+
+    // 快取失效的版本號：清除單一個人檔案時遞增它所屬分段的版本號，整批清除時遞增全域版本號。
+    // 讀取端在查詢前記下版本號，放入快取後再比對一次，期間有清除就移除剛放入的項目，
+    // 避免提交前讀到的舊資料在清除之後才被放回快取，一直留到存活時間結束 (stale set)。
+    private static final int GENERATION_STRIPES = 1024;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLong globalGeneration = new AtomicLong();
 
     @Autowired
     public UserProfileService(UserProfileRepository userProfileRepository,
-                              ThemeRepository themeRepository,
-                              FileStorageService fileStorageService) { // 注入 FileStorageService
+                              FileStorageService fileStorageService, // 注入 FileStorageService
+                              ThemeService themeService,
+                              ImageVariantService imageVariantService,
+                              FileDeletionQueue fileDeletionQueue,
+                              DatabaseConcurrencyLimiter databaseConcurrencyLimiter,
+                              ReadYourWrites readYourWrites,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${profile.cache.max-size:10000}") long cacheMaxSize,
+                              @Value("${profile.cache.ttl:10m}") Duration cacheTtl) {
         this.userProfileRepository = userProfileRepository;
-        this.themeRepository = themeRepository;
         this.fileStorageService = fileStorageService;
+        this.themeService = themeService;
+        this.imageVariantService = imageVariantService;
+        this.fileDeletionQueue = fileDeletionQueue;
+        this.databaseConcurrencyLimiter = databaseConcurrencyLimiter;
+        this.readYourWrites = readYourWrites;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.avatarField = new ImageField(ProfileImageUrls::avatarUrl, userProfileRepository::updateAvatarUrl,
+                imageVariantService::generateAvatarVariants, userProfileRepository::updateAvatarVariants);
+        this.backgroundImageField = new ImageField(ProfileImageUrls::backgroundImageUrl, userProfileRepository::updateBackgroundImageUrl,
+                imageVariantService::generateBackgroundImageVariants, userProfileRepository::updateBackgroundImageVariants);
+        this.profileCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+        // 快取的命中率等統計 (cache.gets、cache.evictions 等，cache=profiles)
+        CaffeineCacheMetrics.monitor(meterRegistry, profileCache, "profiles");
     }
 
     // 假設使用者 ID 會透過認證機制傳遞過來
-    public Optional<UserProfile> getUserProfile(Long userId) {
-        return userProfileRepository.findById(userId);
+    public Optional<UserProfileView> getUserProfile(Long userId) {
+        // 剛寫入過的用戶端 (可能是在其他節點寫入) 略過快取，一定讀到自己的修改
+        UserProfileView cached = readYourWrites.isRecentWriter() ? null : profileCache.getIfPresent(userId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        // 找不到的個人檔案不放入快取，讓稍後建立的檔案可以立即被讀到
+        long generation = generationOf(userId);
+        Optional<UserProfileView> loaded = readYourWrites.read(readKeys(List.of(userId)),
+                () -> userProfileRepository.findViewByUserId(userId));
+        loaded.ifPresent(profile -> cacheIfCurrent(profile, generation));
+        return loaded;
+    }
+
+    /**
+     * 一次取得多位使用者的個人檔案。快取中已有的直接使用，其餘以單一 IN 查詢載入並放入快取。
+     * @param userIds 使用者 ID (重複的 ID 只查詢一次)。
+     * @return 以使用者 ID 為鍵、依請求順序排列的個人檔案；找不到的 ID 不會出現在結果中。
+     */
+    public Map<Long, UserProfileView> getUserProfiles(Collection<Long> userIds) {
+        Set<Long> requested = new LinkedHashSet<>(userIds);
+        Map<Long, UserProfileView> found = readYourWrites.isRecentWriter() ? new HashMap<>()
+                : new HashMap<>(profileCache.getAllPresent(requested));
+        List<Long> misses = requested.stream().filter(id -> !found.containsKey(id)).toList();
+        if (!misses.isEmpty()) {
+            Map<Long, Long> generationsBefore = new HashMap<>();
+            misses.forEach(userId -> generationsBefore.put(userId, generationOf(userId)));
+            for (UserProfileView loaded : readYourWrites.read(readKeys(misses), () -> userProfileRepository.findViewsByUserIds(misses))) {
+                found.put(loaded.userId(), loaded);
+                cacheIfCurrent(loaded, generationsBefore.get(loaded.userId()));
+            }
+        }
+        Map<Long, UserProfileView> ordered = new LinkedHashMap<>();
+        for (Long userId : requested) {
+            UserProfileView profile = found.get(userId);
+            if (profile != null) {
+                ordered.put(userId, profile);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * 取得個人檔案快取的統計資料 (命中率、淘汰次數等)。
+     * @return 個人檔案快取的 CacheStats。
+     */
+    public CacheStats getCacheStats() {
+        return profileCache.stats();
+    }
+
+    /**
+     * 取得個人檔案快取目前的估計筆數。
+     * @return 快取中的項目數量。
+     */
+    public long getCacheSize() {
+        return profileCache.estimatedSize();
+    }
+
+    // 快取中的個人檔案包含主題內容，主題變動時整批清除 (主題極少變動)
+    @EventListener
+    public void onThemeChanged(ThemeChangedEvent event) {
+        globalGeneration.incrementAndGet();
+        profileCache.invalidateAll();
+    }
+
+    // 目前的版本號 (兩個只會遞增的計數器相加，任一個改變時總和就會改變)
+    private long generationOf(Long userId) {
+        return globalGeneration.get() + generations.get(stripeOf(userId));
+    }
+
+    private static int stripeOf(Long userId) {
+        return Long.hashCode(userId) & (GENERATION_STRIPES - 1);
+    }
+
+    // 先放入快取再比對版本號：清除如果在比對之後才遞增版本號，它的 invalidate 也一定在放入之後，會移除這個項目
+    private void cacheIfCurrent(UserProfileView profile, long generation) {
+        profileCache.put(profile.userId(), profile);
+        if (generationOf(profile.userId()) != generation) {
+            profileCache.invalidate(profile.userId());
+        }
+    }
+
+    // 清除單一個人檔案的快取 (先遞增版本號，讓正在載入的讀取不會把舊資料放回快取)
+    private void invalidateCachedProfile(Long userId) {
+        generations.incrementAndGet(stripeOf(userId));
+        profileCache.invalidate(userId);
+    }
+
+    /**
+     * 清除單一個人檔案的快取，供直接以 SQL 更新個人檔案的工作 (例如檔案遷移) 使用。
+     * @param userId 使用者 ID。
+     */
+    public void evictCachedProfile(Long userId) {
+        evictAfterCommit(userId);
+    }
+
+    // 交易提交後才清除快取，避免其他請求在提交前把舊資料重新放回快取；
+    // 同時記錄剛寫入，接下來一小段時間內的讀取使用主資料庫，不會從副本把舊資料放回快取
+    private void evictAfterCommit(Long userId) {
+        TransactionHooks.afterCommit(() -> {
+            readYourWrites.recordWrite(ReadYourWrites.profileKey(userId));
+            invalidateCachedProfile(userId);
+        });
+    }
+
+    // 讀取個人檔案時涉及的項目：個人檔案本身，以及包含在唯讀模型中的主題
+    private static List<String> readKeys(Collection<Long> userIds) {
+        List<String> keys = new ArrayList<>(userIds.size() + 1);
+        keys.add(ReadYourWrites.THEMES);
+        userIds.forEach(userId -> keys.add(ReadYourWrites.profileKey(userId)));
+        return keys;
     }
 
     // 範例：為新註冊的使用者建立預設個人檔案 (如果您的登入專案會調用此專案的 API 來完成)
     @Transactional
-    public UserProfile createDefaultUserProfile(Long userId) {
-        UserProfile userProfile = new UserProfile();
-        userProfile.setUserId(userId);
-        // 如果這個專案不管理 User 實體，那麼 userProfile.setUser(user); 就不需要了
-        // 或者您需要從另一個服務獲取 User 實體並設定
-        // userProfile.setUser(userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found")));
-
-        Optional<Theme> defaultTheme = themeRepository.findByThemeName("Default");
-        defaultTheme.ifPresent(userProfile::setCurrentTheme);
+    public UserProfileView createDefaultUserProfile(Long userId) {
+        // 預設主題從主題快取取得，不必每建立一位使用者就查詢一次資料庫
+        Long defaultThemeId = themeService.getThemeByName("Default").map(Theme::getId).orElse(null);
 
-        return userProfileRepository.save(userProfile);
+        // 以 INSERT 直接建立 (已經有個人檔案時保留原本的內容)，不需要先載入 User 實體；
+        // 使用者不存在時不會建立任何資料，下面重新讀取時會找不到
+        userProfileRepository.insertDefaultProfile(userId, defaultThemeId);
+        evictAfterCommit(userId);
+        return reloadView(userId);
     }
 
     // 更新使用者的背景圖片
-    @Transactional
     public String updateBackgroundImage(Long userId, MultipartFile file) {
-        // 先儲存新檔案
-        String imageUrl = fileStorageService.storeFile(file);
-
-        return userProfileRepository.findById(userId)
-                .map(profile -> {
-                    // 如果有舊的背景圖片，考慮刪除它以節省空間
-                    if (profile.getBackgroundImageUrl() != null && !profile.getBackgroundImageUrl().isEmpty()) {
-                        fileStorageService.deleteFile(profile.getBackgroundImageUrl());
-                    }
-                    profile.setBackgroundImageUrl(imageUrl);
-                    userProfileRepository.save(profile); // 保存更新
-                    return imageUrl; // 返回新的圖片URL
-                })
-                .orElseThrow(() -> new RuntimeException("User profile not found for ID: " + userId));
+        return updateImage(userId, () -> fileStorageService.storeFile(file), backgroundImageField);
+    }
+
+    // 以串流方式更新使用者的背景圖片 (請求本體即為圖片內容，不經過 multipart 暫存檔)
+    public String updateBackgroundImage(Long userId, InputStream content, String fileName) {
+        return updateImage(userId, () -> fileStorageService.storeStream(content, fileName).url(), backgroundImageField);
+    }
+
+    // 以可續傳上傳組合完成的暫存檔更新背景圖片 (暫存檔直接移到最終位置，不再複製內容)
+    public String updateBackgroundImage(Long userId, Path assembled, String fileName) {
+        return updateImage(userId, () -> fileStorageService.storeAssembled(assembled, fileName).url(), backgroundImageField);
     }
 
     // 更新使用者的頭像
-    @Transactional
     public String updateAvatar(Long userId, MultipartFile file) {
-        String imageUrl = fileStorageService.storeFile(file);
-
-        return userProfileRepository.findById(userId)
-                .map(profile -> {
-                    if (profile.getAvatarUrl() != null && !profile.getAvatarUrl().isEmpty()) {
-                        fileStorageService.deleteFile(profile.getAvatarUrl());
-                    }
-                    profile.setAvatarUrl(imageUrl);
-                    userProfileRepository.save(profile);
-                    return imageUrl;
-                })
+        return updateImage(userId, () -> fileStorageService.storeFile(file), avatarField);
+    }
+
+    // 以串流方式更新使用者的頭像
+    public String updateAvatar(Long userId, InputStream content, String fileName) {
+        return updateImage(userId, () -> fileStorageService.storeStream(content, fileName).url(), avatarField);
+    }
+
+    // 以可續傳上傳組合完成的暫存檔更新頭像
+    public String updateAvatar(Long userId, Path assembled, String fileName) {
+        return updateImage(userId, () -> fileStorageService.storeAssembled(assembled, fileName).url(), avatarField);
+    }
+
+    // 上傳圖片的共同流程：
+    // 1. 先確認個人檔案存在 (同時取得目前的圖片 URL)，找不到時不會留下孤兒檔案；
+    // 2. 在交易之外寫入檔案，用戶端上傳緩慢時不會一直佔用資料庫連線；
+    // 3. 在短暫的交易中以條件式 UPDATE 換上新圖片，舊圖片登記到刪除佇列，交易沒有提交時撤銷剛寫入的檔案
+    //    (內容定址檔案只釋放這次新增的引用)。提交後的步驟 (快取清除、縮圖) 失敗時新圖片已被引用，不能刪除。
+    private String updateImage(Long userId, Supplier<String> store, ImageField field) {
+        String currentUrl = databaseConcurrencyLimiter.call(() -> findCurrentUrl(userId, field));
+        String imageUrl = store.get();
+        AtomicBoolean committed = new AtomicBoolean();
+        try {
+            databaseConcurrencyLimiter.call(() -> transactionTemplate.execute(status -> {
+                // 最先登記，在其他提交後的動作之前執行
+                TransactionHooks.afterCommit(() -> committed.set(true));
+                replaceImage(userId, currentUrl, imageUrl, field);
+                return null;
+            }));
+        } catch (RuntimeException ex) {
+            if (!committed.get()) {
+                fileStorageService.deleteFile(imageUrl);
+            }
+            throw ex;
+        }
+        return imageUrl;
+    }
+
+    // 只在圖片仍是讀到的舊 URL 時更新；同時有其他請求更換了圖片時重新讀取後再試
+    private void replaceImage(Long userId, String expectedUrl, String imageUrl, ImageField field) {
+        String oldUrl = expectedUrl;
+        for (int attempt = 0; field.update().update(userId, Objects.requireNonNullElse(oldUrl, ""), imageUrl) == 0; attempt++) {
+            if (attempt >= 2) {
+                throw new RuntimeException("個人檔案同時被其他請求修改，請重試 (ID: " + userId + ")");
+            }
+            oldUrl = findCurrentUrl(userId, field);
+        }
+        // 舊圖片在交易提交後由背景工作刪除；交易回滾時佇列紀錄一起回滾，舊圖片保留
+        fileDeletionQueue.enqueue(oldUrl);
+        evictAfterCommit(userId);
+        // 新圖片的縮圖在背景產生
+        TransactionHooks.afterCommit(() -> recordVariants(userId, imageUrl,
+                field.generateVariants().apply(imageUrl), field.recordVariants()));
+    }
+
+    private String findCurrentUrl(Long userId, ImageField field) {
+        return userProfileRepository.findImageUrlsByUserId(userId)
+                .map(urls -> Objects.requireNonNullElse(field.currentUrl().apply(urls), ""))
                 .orElseThrow(() -> new RuntimeException("User profile not found for ID: " + userId));
     }
 
+    // 頭像與背景圖片各自的欄位操作
+    private record ImageField(Function<ProfileImageUrls, String> currentUrl,
+                              UrlUpdater update,
+                              Function<String, CompletableFuture<String>> generateVariants,
+                              VariantRecorder recordVariants) {
+    }
+
+    @FunctionalInterface
+    private interface UrlUpdater {
+        int update(Long userId, String expectedUrl, String newUrl);
+    }
+
+    // 縮圖產生完成後記錄在個人檔案上 (圖片已被替換時不會更新)，並清除快取讓前端拿到縮圖資訊
+    private void recordVariants(Long userId, String imageUrl, CompletableFuture<String> variants,
+                                VariantRecorder recorder) {
+        variants.thenAccept(widths -> {
+            if (widths != null && recorder.record(userId, imageUrl, widths) > 0) {
+                readYourWrites.recordWrite(ReadYourWrites.profileKey(userId));
+                invalidateCachedProfile(userId);
+            }
+        }).exceptionally(ex -> {
+            System.err.println("無法記錄縮圖: " + imageUrl + ". 錯誤: " + ex.getMessage());
+            return null;
+        });
+    }
+
+    @FunctionalInterface
+    private interface VariantRecorder {
+        int record(Long userId, String imageUrl, String widths);
+    }
+
+    /**
+     * 部分更新個人檔案：以單一 UPDATE 敘述只寫入 patch 中提供的欄位，不先載入實體。
+     * 主題透過主題快取驗證，不額外查詢資料庫；個人檔案是否存在由受影響的列數判斷。
+     * @param userId 使用者 ID。
+     * @param patch 要更新的欄位。
+     * @throws ResponseStatusException 400 如果沒有要更新的欄位、按鈕樣式不合法或主題不存在，404 如果找不到個人檔案。
+     */
+    @Transactional
+    public void patchUserProfile(Long userId, UserProfilePatch patch) {
+        if (patch.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "沒有要更新的欄位");
+        }
+        if (patch.buttonStyleConfig() != null) {
+            // 寫入前先驗證並整理成固定格式，相同的樣式在樣式表快取中只有一份
+            patch = new UserProfilePatch(ButtonStyleCompiler.normalize(patch.buttonStyleConfig()), patch.themeId());
+        }
+        if (patch.themeId() != null && themeService.getThemeById(patch.themeId()).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Theme with ID " + patch.themeId() + " not found.");
+        }
+        if (userProfileRepository.applyPatch(userId, patch) == 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User profile not found for ID: " + userId);
+        }
+        evictAfterCommit(userId);
+    }
+
     // 更新使用者的按鈕樣式配置
     @Transactional
-    public UserProfile updateButtonStyle(Long userId, String buttonStyleConfig) {
-        return userProfileRepository.findById(userId)
-                .map(profile -> {
-                    profile.setButtonStyleConfig(buttonStyleConfig);
-                    return userProfileRepository.save(profile);
-                })
-                .orElseThrow(() -> new RuntimeException("User profile not found for ID: " + userId));
+    public UserProfileView updateButtonStyle(Long userId, String buttonStyleConfig) {
+        patchUserProfile(userId, new UserProfilePatch(buttonStyleConfig, null));
+        return reloadView(userId);
     }
 
     // 更新使用者當前選中的主題
     @Transactional
-    public UserProfile updateUserTheme(Long userId, Long themeId) {
-        Optional<Theme> themeOptional = themeRepository.findById(themeId);
-        if (themeOptional.isEmpty()) {
-            throw new RuntimeException("Theme with ID " + themeId + " not found.");
-        }
-        Theme selectedTheme = themeOptional.get();
+    public UserProfileView updateUserTheme(Long userId, Long themeId) {
+        patchUserProfile(userId, new UserProfilePatch(null, themeId));
+        return reloadView(userId);
+    }
 
-        return userProfileRepository.findById(userId)
-                .map(profile -> {
-                    profile.setCurrentTheme(selectedTheme);
-                    return userProfileRepository.save(profile);
-                })
+    // 在同一個交易中重新投影更新後的個人檔案 (快取要等交易提交後才會清除，因此不經過快取)
+    private UserProfileView reloadView(Long userId) {
+        return userProfileRepository.findViewByUserId(userId)
                 .orElseThrow(() -> new RuntimeException("User profile not found for ID: " + userId));
     }
 
     // 其他可能的更新方法 (例如文字顏色等)
     // ...
-}
\ No newline at end of file
+}
\ No newline at end of file
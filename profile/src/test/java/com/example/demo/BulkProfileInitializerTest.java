@@ -0,0 +1,140 @@
+package com.example.demo;
+
+import com.example.demo.dto.BulkInitializationResult;
+import com.example.demo.dto.BulkInitializationResult.ChunkProgress;
+import com.example.demo.service.BulkProfileInitializer;
+import com.example.demo.service.ThemeService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 批次建立預設個人檔案：略過已經有個人檔案的使用者、每個批次的建立與略過筆數、
+ * profile.bulk-init.max-size 的上限，以及驅動程式回報 SUCCESS_NO_INFO 時改以查詢計算建立筆數。
+ * 每批 2 位使用者；每個測試使用不同的使用者。
+ */
+@SpringBootTest(properties = {
+        "test.database=bulk-profile-initializer",
+        "file.upload.dir=${java.io.tmpdir}/bulk-profile-initializer-uploads/",
+        "profile.bulk-init.chunk-size=2",
+        "profile.bulk-init.max-size=5"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class BulkProfileInitializerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BulkProfileInitializer bulkProfileInitializer;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private ThemeService themeService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void seed() {
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default')");
+        for (long id = 1; id <= 12; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+        }
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) VALUES (1, 1, 0), (2, 1, 0), (5, 1, 0), (8, 1, 0)");
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "bulk-profile-initializer-uploads"));
+    }
+
+    @Test
+    void skipsExistingProfilesAndReportsEachChunk() {
+        BulkInitializationResult result = bulkProfileInitializer.initializeDefaultProfiles(List.of(1L, 2L, 3L, 4L, 5L, 6L, 99L, 3L));
+
+        assertThat(result.requested()).isEqualTo(7);
+        assertThat(result.created()).isEqualTo(3);
+        assertThat(result.alreadyInitialized()).isEqualTo(3);
+        assertThat(result.unknownUserIds()).containsExactly(99L);
+        assertThat(result.chunks()).extracting(ChunkProgress::chunk, ChunkProgress::size, ChunkProgress::created, ChunkProgress::alreadyInitialized)
+                .containsExactly(
+                        tuple(1, 2, 0, 2),
+                        tuple(2, 2, 2, 0),
+                        tuple(3, 2, 1, 1),
+                        tuple(4, 1, 0, 0));
+        assertThat(jdbc.queryForList("SELECT user_id FROM user_profiles WHERE user_id IN (3, 4, 6) AND current_theme_id = 1", Long.class))
+                .containsExactlyInAnyOrder(3L, 4L, 6L);
+
+        // 重新執行時全部略過
+        BulkInitializationResult rerun = bulkProfileInitializer.initializeDefaultProfiles(List.of(3L, 4L, 6L));
+        assertThat(rerun.created()).isZero();
+        assertThat(rerun.alreadyInitialized()).isEqualTo(3);
+    }
+
+    @Test
+    void countsCreatedProfilesWhenTheDriverReportsNoInfo() {
+        // 模擬 rewriteBatchedStatements=true 的 MySQL 驅動程式：每列都回報 SUCCESS_NO_INFO
+        NamedParameterJdbcTemplate noInfo = new NamedParameterJdbcTemplate(namedParameterJdbcTemplate.getJdbcTemplate()) {
+            @Override
+            public int[] batchUpdate(String sql, SqlParameterSource[] batchArgs) {
+                int[] results = super.batchUpdate(sql, batchArgs);
+                Arrays.fill(results, Statement.SUCCESS_NO_INFO);
+                return results;
+            }
+        };
+        BulkProfileInitializer initializer = new BulkProfileInitializer(noInfo, themeService, transactionManager, 2);
+
+        BulkInitializationResult result = initializer.initializeDefaultProfiles(List.of(7L, 8L, 9L));
+
+        assertThat(result.created()).isEqualTo(2);
+        assertThat(result.alreadyInitialized()).isEqualTo(1);
+        assertThat(result.chunks()).extracting(ChunkProgress::created).containsExactly(1, 1);
+    }
+
+    @Test
+    void rejectsMoreUsersThanTheMaxSize() throws Exception {
+        mockMvc.perform(post("/api/profile/initialize-profiles")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userIds\": [10, 11, 12, 97, 98, 99]}"))
+                .andExpect(status().isBadRequest());
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM user_profiles WHERE user_id >= 10", Integer.class)).isZero();
+
+        mockMvc.perform(post("/api/profile/initialize-profiles")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userIds\": [10, 11, 97, 98, 99]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(2))
+                .andExpect(jsonPath("$.unknownUserIds.length()").value(3));
+    }
+}
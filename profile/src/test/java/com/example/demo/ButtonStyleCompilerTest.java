@@ -0,0 +1,56 @@
+package com.example.demo;
+
+import com.example.demo.service.ButtonStyleCompiler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 按鈕樣式配置的驗證：只接受允許的屬性與安全的值，不能跳出宣告、註解掉規則或載入外部資源。
+ */
+class ButtonStyleCompilerTest {
+
+    @Test
+    void normalizesAllowedDeclarations() {
+        assertThat(ButtonStyleCompiler.normalize("  Background-Color : #fff ;border-radius:10px  /  5px;;"))
+                .isEqualTo("background-color: #fff; border-radius: 10px / 5px;");
+        assertThat(ButtonStyleCompiler.normalize("background: linear-gradient(to right, rgb(0, 0, 0), #fff)"))
+                .isEqualTo("background: linear-gradient(to right, rgb(0, 0, 0), #fff);");
+        assertThat(ButtonStyleCompiler.normalize(" ")).isEmpty();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "position: fixed",
+            "margin: 0",
+            "color: red /* } body { display: none */",
+            "color: red */",
+            "font-family: \"x\"; color: red",
+            "font-family: 'x'",
+            "color: \\72 ed",
+            "background: url(https://example.com/a.png)",
+            "background: image-set(a 1x)",
+            "width: expression(alert(1))",
+            "color: red } body { color: red",
+            "color: rgb(0, 0, 0",
+            "color: red) ",
+            "color: <b>",
+            "color:",
+            "color red"})
+    void rejectsUnsafeDeclarations(String config) {
+        assertThatThrownBy(() -> ButtonStyleCompiler.normalize(config))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    void compileSkipsInvalidDeclarationsStoredBeforeValidation() {
+        ButtonStyleCompiler compiler = new ButtonStyleCompiler(10, new SimpleMeterRegistry());
+        String css = compiler.compile("color: red; content: \"x\"; padding: 4px; background: rgb(1, 2").css();
+        assertThat(css).isEqualTo("." + ButtonStyleCompiler.BUTTON_CLASS + " {\n  color: red;\n  padding: 4px;\n}\n");
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.demo;
+
+import com.example.demo.repository.FileBlobRepository;
+import com.example.demo.service.FileDeletionQueue;
+import com.example.demo.service.FileStorageService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 內容定址儲存：相同內容只存一份，最後一個引用釋放後才刪除檔案；
+ * 刪除時鎖住紀錄，同時新增的引用會讓刪除取消，不會留下指向已刪除檔案的紀錄。
+ */
+@SpringBootTest(properties = {
+        "test.database=content-addressed",
+        "file.upload.dir=${java.io.tmpdir}/content-addressed-uploads/",
+        "file.upload.content-addressed=true"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ContentAddressedStorageTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private FileDeletionQueue fileDeletionQueue;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void seed() {
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default')");
+        for (long id = 1; id <= 2; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+        }
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) SELECT id, 1, 0 FROM users");
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "content-addressed-uploads"));
+    }
+
+    @Test
+    void sharedContentIsDeletedWithTheLastReference() throws Exception {
+        byte[] shared = EmbeddedProfileApplication.sampleJpeg(40, 30);
+        String url = uploadAvatar(1, shared);
+        assertThat(uploadAvatar(2, shared)).isEqualTo(url);
+
+        uploadAvatar(1, EmbeddedProfileApplication.sampleJpeg(41, 30));
+        fileDeletionQueue.processQueue();
+        assertThat(fileStorageService.resolveUrl(url)).isNotNull();
+
+        uploadAvatar(2, EmbeddedProfileApplication.sampleJpeg(42, 30));
+        fileDeletionQueue.processQueue();
+        assertThat(fileStorageService.resolveUrl(url)).isNull();
+        assertThat(fileBlobRepository.existsById(sha256Of(url))).isFalse();
+    }
+
+    @Test
+    void purgeWaitsForConcurrentReferenceAndKeepsTheFile() throws Exception {
+        String url = fileStorageService.storeFile(new org.springframework.mock.web.MockMultipartFile(
+                "file", "photo.jpg", MediaType.IMAGE_JPEG_VALUE, EmbeddedProfileApplication.sampleJpeg(43, 30)));
+        String sha256 = sha256Of(url);
+        String fileName = url.substring(url.lastIndexOf('/') + 1);
+        jdbc.update("UPDATE file_blobs SET ref_count = 0 WHERE sha256 = ?", sha256);
+
+        // 另一個請求正在上傳相同內容：已經新增引用，交易尚未提交
+        CountDownLatch referenced = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        CompletableFuture<Void> upload = CompletableFuture.runAsync(() -> new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> {
+                    fileBlobRepository.addReference(sha256, fileName, 0, MediaType.IMAGE_JPEG_VALUE);
+                    referenced.countDown();
+                    await(commit);
+                }));
+        assertThat(referenced.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Boolean> purge = CompletableFuture.supplyAsync(() -> fileStorageService.purgeContentAddressed(sha256, fileName));
+        Thread.sleep(300);
+        assertThat(purge).isNotDone(); // 等待紀錄的鎖
+        commit.countDown();
+        upload.get(5, TimeUnit.SECONDS);
+
+        assertThat(purge.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(fileStorageService.resolveUrl(url)).isNotNull();
+        assertThat(fileBlobRepository.existsById(sha256)).isTrue();
+    }
+
+    private String uploadAvatar(long userId, byte[] image) throws Exception {
+        return mockMvc.perform(put("/api/profile/" + userId + "/avatar")
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .content(image))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    private static String sha256Of(String url) {
+        return FileStorageService.contentAddressedId(url.substring("/uploads/".length()));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.demo;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在測試中啟動完整的應用程式 (隨機埠號)，不需要外部服務：
+ * 資料庫使用 MySQL 相容模式的 H2 記憶體資料庫，上傳目錄使用暫存目錄，結束時一併刪除。
+ * 效能測試與負載測試共用。
+ */
+final class EmbeddedProfileApplication implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+    private final Path uploadDirectory;
+
+    private EmbeddedProfileApplication(ConfigurableApplicationContext context, Path uploadDirectory) {
+        this.context = context;
+        this.uploadDirectory = uploadDirectory;
+    }
+
+    /**
+     * 啟動應用程式。
+     * @param name 資料庫名稱，同一個 JVM 中同時啟動多個應用程式時必須不同。
+     * @param extraArgs 其他設定 ("--key=value")，會覆蓋預設值。
+     */
+    static EmbeddedProfileApplication start(String name, String... extraArgs) throws IOException {
+        Path uploads = Files.createTempDirectory(name + "-uploads");
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--test.database=" + name,
+                "--file.upload.dir=" + uploads.toAbsolutePath() + "/"));
+        args.addAll(List.of(extraArgs));
+        // H2 資料庫的設定在 test profile (application-test.properties)
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ProfileApplication.class)
+                .profiles("test")
+                .run(args.toArray(String[]::new));
+        return new EmbeddedProfileApplication(context, uploads);
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    JdbcTemplate jdbc() {
+        return context.getBean(JdbcTemplate.class);
+    }
+
+    /**
+     * 產生測試用的 JPEG 圖片 (內容為漸層，壓縮後大小接近一般照片)。
+     */
+    static byte[] sampleJpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, (x * 31 + y * 17) & 0xFFFFFF);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(uploadDirectory);
+    }
+}
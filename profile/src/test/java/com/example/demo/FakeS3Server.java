@@ -0,0 +1,232 @@
+package com.example.demo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 測試用的 S3 替身：單一 bucket、path-style 位址，只實作儲存後端用到的 API
+ * (PutObject、GetObject、HeadObject、DeleteObject、DeleteObjects、ListObjectsV2，不分頁)，不驗證簽章。
+ */
+final class FakeS3Server implements AutoCloseable {
+
+    private static final Pattern DELETE_KEY = Pattern.compile("<Key>(.*?)</Key>");
+
+    private final HttpServer server;
+    private final String bucket;
+    private final ConcurrentSkipListMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    // DeleteObjects 回報 AccessDenied、不會刪除的 key
+    private final Set<String> deleteDenied = ConcurrentHashMap.newKeySet();
+
+    private record StoredObject(byte[] content, String contentType, Instant lastModified) {
+    }
+
+    FakeS3Server(String bucket) throws IOException {
+        this.bucket = bucket;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return 物件內容；不存在時為 null。
+     */
+    byte[] get(String key) {
+        StoredObject object = objects.get(key);
+        return object == null ? null : object.content();
+    }
+
+    /**
+     * 之後的 DeleteObjects 請求不刪除這個 key，並在回應中列為失敗 (AccessDenied)。
+     */
+    void denyDelete(String key) {
+        deleteDenied.add(key);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (!path.startsWith("/" + bucket)) {
+                send(exchange, 404, error("NoSuchBucket"));
+                return;
+            }
+            String key = path.length() > bucket.length() + 2 ? path.substring(bucket.length() + 2) : "";
+            String method = exchange.getRequestMethod();
+            if (key.isEmpty()) {
+                if ("GET".equals(method) && "2".equals(query.get("list-type"))) {
+                    send(exchange, 200, list(query));
+                } else if ("POST".equals(method) && query.containsKey("delete")) {
+                    Matcher matcher = DELETE_KEY.matcher(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                    StringBuilder xml = new StringBuilder("<DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">");
+                    while (matcher.find()) {
+                        if (deleteDenied.contains(matcher.group(1))) {
+                            xml.append("<Error><Key>").append(matcher.group(1))
+                                    .append("</Key><Code>AccessDenied</Code><Message>Access Denied</Message></Error>");
+                        } else {
+                            objects.remove(matcher.group(1));
+                        }
+                    }
+                    send(exchange, 200, xml.append("</DeleteResult>").toString());
+                } else {
+                    send(exchange, 400, error("InvalidRequest"));
+                }
+                return;
+            }
+            switch (method) {
+                case "PUT" -> {
+                    byte[] content = readBody(exchange);
+                    objects.put(key, new StoredObject(content, exchange.getRequestHeaders().getFirst("Content-Type"), Instant.now()));
+                    exchange.getResponseHeaders().add("ETag", etag(content));
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                case "GET", "HEAD" -> {
+                    StoredObject object = objects.get(key);
+                    if (object == null) {
+                        if ("HEAD".equals(method)) {
+                            exchange.sendResponseHeaders(404, -1);
+                        } else {
+                            send(exchange, 404, error("NoSuchKey"));
+                        }
+                        return;
+                    }
+                    exchange.getResponseHeaders().add("ETag", etag(object.content()));
+                    exchange.getResponseHeaders().add("Last-Modified",
+                            DateTimeFormatter.RFC_1123_DATE_TIME.format(object.lastModified().atZone(ZoneOffset.UTC)));
+                    if (object.contentType() != null) {
+                        exchange.getResponseHeaders().add("Content-Type", object.contentType());
+                    }
+                    if ("HEAD".equals(method)) {
+                        exchange.getResponseHeaders().add("Content-Length", String.valueOf(object.content().length));
+                        exchange.sendResponseHeaders(200, -1);
+                    } else {
+                        exchange.sendResponseHeaders(200, object.content().length == 0 ? -1 : object.content().length);
+                        exchange.getResponseBody().write(object.content());
+                    }
+                }
+                case "DELETE" -> {
+                    objects.remove(key);
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> send(exchange, 405, error("MethodNotAllowed"));
+            }
+        }
+    }
+
+    private String list(Map<String, String> query) {
+        String prefix = query.getOrDefault("prefix", "");
+        boolean urlEncoded = "url".equals(query.get("encoding-type"));
+        StringBuilder xml = new StringBuilder("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>").append(bucket).append("</Name>")
+                .append("<Prefix>").append(prefix).append("</Prefix>")
+                .append("<IsTruncated>false</IsTruncated>");
+        if (urlEncoded) {
+            xml.append("<EncodingType>url</EncodingType>");
+        }
+        int count = 0;
+        for (Map.Entry<String, StoredObject> entry : objects.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            count++;
+            String key = urlEncoded ? URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8) : entry.getKey();
+            xml.append("<Contents><Key>").append(key).append("</Key>")
+                    .append("<LastModified>").append(DateTimeFormatter.ISO_INSTANT.format(entry.getValue().lastModified())).append("</LastModified>")
+                    .append("<ETag>").append(etag(entry.getValue().content())).append("</ETag>")
+                    .append("<Size>").append(entry.getValue().content().length).append("</Size>")
+                    .append("<StorageClass>STANDARD</StorageClass></Contents>");
+        }
+        return xml.append("<KeyCount>").append(count).append("</KeyCount></ListBucketResult>").toString();
+    }
+
+    // 以 aws-chunked 編碼 (串流簽章或附加檢查碼) 上傳時，取出各區塊的內容
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        String contentSha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        boolean chunked = (contentSha256 != null && contentSha256.startsWith("STREAMING-"))
+                || (contentEncoding != null && contentEncoding.contains("aws-chunked"));
+        if (!chunked) {
+            return in.readAllBytes();
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        while (true) {
+            String header = readLine(in);
+            int size = Integer.parseInt(header.split(";", 2)[0].trim(), 16);
+            if (size == 0) {
+                return content.toByteArray(); // 之後是檢查碼等 trailer，忽略
+            }
+            content.write(in.readNBytes(size));
+            readLine(in);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            query.put(name, equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static String etag(byte[] content) {
+        return "\"" + Integer.toHexString(Arrays.hashCode(content)) + "\"";
+    }
+
+    private static String error(String code) {
+        return "<Error><Code>" + code + "</Code><Message>" + code + "</Message></Error>";
+    }
+
+    private static void send(HttpExchange exchange, int status, String xml) throws IOException {
+        byte[] body = xml.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
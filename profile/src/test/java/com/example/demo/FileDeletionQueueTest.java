@@ -0,0 +1,117 @@
+package com.example.demo;
+
+import com.example.demo.service.FileDeletionQueue;
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.OrphanFileCollector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 檔案刪除佇列：登記的檔案在交易提交後才刪除 (回滾時不刪除)，刪除失敗的紀錄留在佇列中之後重試。
+ * 使用預設設定，孤兒檔案清除不會啟用。
+ */
+@SpringBootTest(properties = {
+        "test.database=file-deletion-queue",
+        "file.upload.dir=${java.io.tmpdir}/file-deletion-queue-uploads/"})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class FileDeletionQueueTest {
+
+    @Autowired
+    private FileDeletionQueue fileDeletionQueue;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "file-deletion-queue-uploads"));
+    }
+
+    @Test
+    void queuedFileIsDeletedOnlyAfterCommit() throws Exception {
+        String url = store();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            fileDeletionQueue.enqueue(url);
+            // 另一個執行緒 (排程工作) 看不到尚未提交的紀錄
+            CompletableFuture.runAsync(fileDeletionQueue::processQueue).orTimeout(5, TimeUnit.SECONDS).join();
+            assertThat(fileStorageService.resolveUrl(url)).isNotNull();
+        });
+
+        fileDeletionQueue.processQueue();
+        assertThat(fileStorageService.resolveUrl(url)).isNull();
+        assertThat(queued()).isZero();
+    }
+
+    @Test
+    void rolledBackEnqueueKeepsTheFile() throws Exception {
+        String url = store();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            fileDeletionQueue.enqueue(url);
+            status.setRollbackOnly();
+        });
+
+        fileDeletionQueue.processQueue();
+        assertThat(fileStorageService.resolveUrl(url)).isNotNull();
+        assertThat(queued()).isZero();
+    }
+
+    @Test
+    void failedDeleteStaysQueuedAndIsRetried() throws Exception {
+        // 儲存目錄中同名的位置是非空目錄，儲存後端無法刪除
+        Path blocked = fileStorageService.getStorageLocation().resolve("blocked.jpg");
+        Files.createDirectories(blocked);
+        Files.write(blocked.resolve("content"), new byte[] {1});
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> fileDeletionQueue.enqueue("/uploads/blocked.jpg"));
+
+        fileDeletionQueue.processQueue();
+        assertThat(queued()).isEqualTo(1);
+
+        Files.delete(blocked.resolve("content"));
+        fileDeletionQueue.processQueue();
+        assertThat(queued()).isZero();
+        assertThat(blocked).doesNotExist();
+    }
+
+    @Test
+    void orphanCollectorIsDisabledByDefault() {
+        assertThat(applicationContext.getBeanProvider(OrphanFileCollector.class).getIfAvailable()).isNull();
+    }
+
+    private int queued() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM file_deletion_queue", Integer.class);
+    }
+
+    private String store() throws IOException {
+        return fileStorageService.storeFile(new MockMultipartFile("file", "photo.jpg", MediaType.IMAGE_JPEG_VALUE,
+                EmbeddedProfileApplication.sampleJpeg(20, 20)));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.demo;
+
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.ImageVariantService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 縮圖產生：依設定的寬度產生縮圖 (不放大)、超過像素上限的原圖不解碼、佇列已滿時略過。
+ */
+@SpringBootTest(properties = {
+        "test.database=image-variants",
+        "file.upload.dir=${java.io.tmpdir}/image-variants-uploads/",
+        "image.variants.avatar-widths=64,128,256"})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ImageVariantServiceTest {
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    @Qualifier("imageVariantExecutor")
+    private Executor executor;
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "image-variants-uploads"));
+    }
+
+    @Test
+    void generatesEachConfiguredWidthSmallerThanTheOriginal() throws Exception {
+        String url = store(200, 150);
+
+        assertThat(imageVariantService.generateAvatarVariants(url).get(10, TimeUnit.SECONDS)).isEqualTo("64,128");
+        Path original = fileStorageService.resolveUrl(url);
+        Path variants = FileStorageService.variantDirectory(original);
+        assertThat(variants.resolve("w64.jpg")).exists();
+        assertThat(variants.resolve("w128.jpg")).exists();
+        assertThat(variants.resolve("w256.jpg")).doesNotExist(); // 不放大
+
+        assertThat(imageVariantService.resolveVariant(original, 100)).isEqualTo(variants.resolve("w128.jpg"));
+        assertThat(imageVariantService.resolveVariant(original, 200)).isNull(); // 使用原圖
+    }
+
+    @Test
+    void skipsOriginalsOverThePixelLimit() throws Exception {
+        String url = store(200, 150);
+        ImageVariantService limited = new ImageVariantService(fileStorageService, executor,
+                List.of(64), List.of(640), 0.82f, 100 * 100);
+
+        assertThat(limited.generateAvatarVariants(url).get(10, TimeUnit.SECONDS)).isNull();
+        assertThat(FileStorageService.variantDirectory(fileStorageService.resolveUrl(url))).doesNotExist();
+    }
+
+    @Test
+    void skipsVariantsWhenTheQueueIsFull() throws Exception {
+        String url = store(200, 150);
+        ThreadPoolTaskExecutor full = new ThreadPoolTaskExecutor();
+        full.setCorePoolSize(1);
+        full.setMaxPoolSize(1);
+        full.setQueueCapacity(0);
+        full.initialize();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // 唯一的執行緒正在處理其他圖片，佇列沒有空間
+            full.execute(() -> {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            ImageVariantService service = new ImageVariantService(fileStorageService, full,
+                    List.of(64), List.of(640), 0.82f, 40_000_000);
+
+            assertThat(service.generateAvatarVariants(url).get(10, TimeUnit.SECONDS)).isNull();
+            assertThat(FileStorageService.variantDirectory(fileStorageService.resolveUrl(url))).doesNotExist();
+        } finally {
+            release.countDown();
+            full.shutdown();
+        }
+    }
+
+    private String store(int width, int height) throws IOException {
+        return fileStorageService.storeFile(new MockMultipartFile("file", "photo.jpg", MediaType.IMAGE_JPEG_VALUE,
+                EmbeddedProfileApplication.sampleJpeg(width, height)));
+    }
+}
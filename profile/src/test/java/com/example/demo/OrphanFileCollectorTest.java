@@ -0,0 +1,112 @@
+package com.example.demo;
+
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.OrphanFileCollector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 孤兒檔案清除 (file.gc.enabled=true)：只刪除超過保留時間、沒有被個人檔案或主題引用的檔案 (連同縮圖)。
+ * 排程的第一次執行延後到測試結束之後，測試中直接呼叫 collect()。
+ */
+@SpringBootTest(properties = {
+        "test.database=orphan-file-collector",
+        "file.upload.dir=${java.io.tmpdir}/orphan-file-collector-uploads/",
+        "file.gc.enabled=true",
+        "file.gc.initial-delay=1h",
+        "file.gc.grace-period=1h"})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class OrphanFileCollectorTest {
+
+    private static final String THEME_AVATAR = "/uploads/theme-avatar.jpg";
+
+    @Autowired
+    private OrphanFileCollector orphanFileCollector;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void seed() {
+        jdbc.update("INSERT INTO themes (id, theme_name, default_avatar_url, version) VALUES (1, 'Default', ?, 0)", THEME_AVATAR);
+        for (long id = 1; id <= 2; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+        }
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) SELECT id, 1, 0 FROM users");
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "orphan-file-collector-uploads"));
+    }
+
+    @Test
+    void deletesOnlyOldUnreferencedFiles() throws Exception {
+        String avatar = store();
+        String background = store();
+        String orphan = store();
+        String recentOrphan = store();
+        jdbc.update("UPDATE user_profiles SET avatar_url = ? WHERE user_id = 1", avatar);
+        jdbc.update("UPDATE user_profiles SET background_image_url = ? WHERE user_id = 2", background);
+        Path themeAvatar = fileStorageService.getStorageLocation().resolve("theme-avatar.jpg");
+        Files.write(themeAvatar, EmbeddedProfileApplication.sampleJpeg(20, 20));
+        Path orphanVariant = FileStorageService.variantDirectory(fileStorageService.resolveUrl(orphan)).resolve("w64.jpg");
+        Files.createDirectories(orphanVariant.getParent());
+        Files.write(orphanVariant, new byte[] {1});
+
+        for (String url : new String[] {avatar, background, orphan, THEME_AVATAR}) {
+            age(fileStorageService.resolveUrl(url), Duration.ofHours(2));
+        }
+        age(fileStorageService.resolveUrl(recentOrphan), Duration.ofMinutes(30)); // 仍在保留時間內
+
+        assertThat(orphanFileCollector.collect()).isEqualTo(1);
+        assertThat(fileStorageService.resolveUrl(orphan)).isNull();
+        assertThat(orphanVariant.getParent()).doesNotExist();
+        assertThat(fileStorageService.resolveUrl(avatar)).isNotNull();
+        assertThat(fileStorageService.resolveUrl(background)).isNotNull();
+        assertThat(fileStorageService.resolveUrl(THEME_AVATAR)).isNotNull();
+        assertThat(fileStorageService.resolveUrl(recentOrphan)).isNotNull();
+    }
+
+    @Test
+    void keepsShardedFilesReferencedByTheirLegacyFlatUrl() throws Exception {
+        String url = store();
+        String flatUrl = "/uploads/" + url.substring(url.lastIndexOf('/') + 1);
+        jdbc.update("UPDATE user_profiles SET avatar_url = ? WHERE user_id = 2", flatUrl);
+        age(fileStorageService.resolveUrl(url), Duration.ofHours(2));
+
+        orphanFileCollector.collect();
+        assertThat(fileStorageService.resolveUrl(flatUrl)).isNotNull();
+    }
+
+    private String store() throws IOException {
+        return fileStorageService.storeFile(new MockMultipartFile("file", "photo.jpg", MediaType.IMAGE_JPEG_VALUE,
+                EmbeddedProfileApplication.sampleJpeg(20, 20)));
+    }
+
+    private static void age(Path file, Duration age) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(age)));
+    }
+}
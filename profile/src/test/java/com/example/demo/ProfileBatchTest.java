@@ -0,0 +1,100 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * GET/POST /api/profile/batch：找不到的使用者另外列出、重複的 ID 只回傳一次、超過 profile.batch.max-size 時回傳 400。
+ */
+@SpringBootTest(properties = {
+        "test.database=profile-batch",
+        "file.upload.dir=${java.io.tmpdir}/profile-batch-uploads/",
+        "profile.batch.max-size=3"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ProfileBatchTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void seed() {
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default')");
+        for (long id = 1; id <= 3; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+        }
+        // 使用者 3 沒有個人檔案
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) VALUES (1, 1, 0), (2, 1, 0)");
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "profile-batch-uploads"));
+    }
+
+    @Test
+    void reportsMissingUsersSeparately() throws Exception {
+        mockMvc.perform(get("/api/profile/batch").param("ids", "2,99,1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.profiles[*].userId", contains(2, 1)))
+                .andExpect(jsonPath("$.missingUserIds", contains(99)));
+
+        mockMvc.perform(post("/api/profile/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userIds\": [3, 1]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.profiles[*].userId", contains(1)))
+                .andExpect(jsonPath("$.missingUserIds", contains(3)));
+    }
+
+    @Test
+    void collapsesDuplicateIds() throws Exception {
+        // 去除重複後沒有超過上限
+        mockMvc.perform(get("/api/profile/batch").param("ids", "1,1,2,1,2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.profiles[*].userId", contains(1, 2)))
+                .andExpect(jsonPath("$.missingUserIds", empty()));
+
+        mockMvc.perform(post("/api/profile/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userIds\": [99, 2, 99, 2]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.profiles[*].userId", contains(2)))
+                .andExpect(jsonPath("$.missingUserIds", contains(99)));
+    }
+
+    @Test
+    void rejectsMoreIdsThanTheMaxSize() throws Exception {
+        mockMvc.perform(get("/api/profile/batch").param("ids", "1,2,3,4"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/api/profile/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userIds\": [1, 2, 3, 4]}"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.demo;
+
+import com.example.demo.entity.Theme;
+import com.example.demo.service.ThemeService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 個人檔案、主題清單與單一主題的 ETag：If-None-Match 符合時回傳 304，內容更新後 ETag 隨之改變。
+ * 每個測試使用不同的使用者與主題。
+ */
+@SpringBootTest(properties = {
+        "test.database=profile-etag",
+        "file.upload.dir=${java.io.tmpdir}/profile-etag-uploads/"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ProfileEtagTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ThemeService themeService;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void seed() {
+        jdbc.update("INSERT INTO themes (id, theme_name, version) VALUES (1, 'Default', 0), (2, 'Dark', 0), (3, 'Light', 0)");
+        for (long id = 1; id <= 3; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+        }
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) VALUES (1, 1, 0), (2, 1, 0), (3, 3, 0)");
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "profile-etag-uploads"));
+    }
+
+    @Test
+    void matchingIfNoneMatchReturns304() throws Exception {
+        for (String url : new String[] {"/api/profile/1", "/api/profile/themes", "/api/profile/themes/1"}) {
+            String etag = etagOf(url);
+            mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                    .andExpect(status().isNotModified())
+                    .andExpect(header().string(HttpHeaders.ETAG, etag));
+        }
+    }
+
+    @Test
+    void profileEtagChangesAfterAnUpdate() throws Exception {
+        String before = etagOf("/api/profile/2");
+
+        mockMvc.perform(patch("/api/profile/2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"themeId\": 2}"))
+                .andExpect(status().isNoContent());
+
+        String after = etagOf("/api/profile/2");
+        assertThat(after).isNotEqualTo(before);
+        mockMvc.perform(get("/api/profile/2").header(HttpHeaders.IF_NONE_MATCH, before))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void themeEtagsChangeAfterAThemeUpdate() throws Exception {
+        String list = etagOf("/api/profile/themes");
+        String single = etagOf("/api/profile/themes/3");
+        String profile = etagOf("/api/profile/3");
+
+        Theme theme = themeService.getThemeById(3L).orElseThrow();
+        theme.setDescription("Brighter");
+        themeService.updateTheme(theme);
+
+        assertThat(etagOf("/api/profile/themes")).isNotEqualTo(list);
+        assertThat(etagOf("/api/profile/themes/3")).isNotEqualTo(single);
+        // 個人檔案的唯讀模型包含主題內容，ETag 也要改變
+        assertThat(etagOf("/api/profile/3")).isNotEqualTo(profile);
+    }
+
+    private String etagOf(String url) throws Exception {
+        String etag = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotNull();
+        return etag;
+    }
+}
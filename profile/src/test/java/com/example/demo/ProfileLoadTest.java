@@ -0,0 +1,361 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 端對端負載測試：啟動完整的應用程式 (H2 MySQL 相容模式、暫存上傳目錄，不需要外部服務)，
+ * 以可設定的比例同時呼叫 UserProfileController 的每個端點 (讀取、切換主題、multipart 與串流上傳等)，
+ * 輸出每個端點的吞吐量與 p50/p95/p99 延遲，超過延遲預算或錯誤率過高時測試失敗。
+ *
+ * 預設不執行，使用 mvn test -Pload-test 執行。可用系統屬性調整：
+ * loadtest.clients (同時的用戶端數)、loadtest.seconds (量測秒數)、loadtest.warmup-seconds (暖機秒數)、
+ * loadtest.mix (端點比例，例如 "get-profile=50,upload-avatar=5"，未列出的端點維持預設比例)、
+ * loadtest.budget.p95.端點 / loadtest.budget.p99.端點 (延遲預算，毫秒)、loadtest.max-error-rate (允許的錯誤率)。
+ * 結果寫入 target/loadtest/report.txt 與 report.json。
+ */
+@Tag("loadtest")
+class ProfileLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 16);
+    private static final int SECONDS = Integer.getInteger("loadtest.seconds", 30);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmup-seconds", 5);
+    private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.01"));
+
+    // 已有個人檔案的使用者，以及留給 initialize-profile 使用、還沒有個人檔案的使用者
+    private static final int PROFILES = 2000;
+    private static final int UNINITIALIZED_USERS = 20000;
+    private static final int THEMES = 5;
+
+    // 預設的延遲預算 (毫秒)：讀取、寫入與上傳各一組，個別端點可以用系統屬性覆蓋
+    private static final Budget READ_BUDGET = new Budget(100, 250);
+    private static final Budget WRITE_BUDGET = new Budget(250, 500);
+    private static final Budget UPLOAD_BUDGET = new Budget(750, 1500);
+
+    private static final String API = "/api/profile";
+
+    private final AtomicLong nextUninitializedUser = new AtomicLong(PROFILES + 1);
+
+    // 啟動後的伺服器位址
+    private String baseUrl;
+
+    @Test
+    void endpointsStayWithinLatencyBudgets() throws Exception {
+        byte[] image = EmbeddedProfileApplication.sampleJpeg(400, 300);
+        List<Endpoint> endpoints = endpoints(image);
+        Map<String, Integer> mix = mix(endpoints);
+
+        Map<String, Stats> results;
+        try (EmbeddedProfileApplication application = EmbeddedProfileApplication.start("loadtest")) {
+            seed(application.jdbc());
+            baseUrl = application.baseUrl();
+            results = load(endpoints, mix);
+        }
+
+        List<String> violations = new ArrayList<>();
+        StringBuilder report = new StringBuilder(String.format("%-20s %8s %9s %9s %9s %9s %9s %7s%n",
+                "endpoint", "req/s", "p50 ms", "p95 ms", "p99 ms", "p95 max", "p99 max", "errors"));
+        for (Endpoint endpoint : endpoints) {
+            Stats stats = results.get(endpoint.name());
+            if (stats == null) {
+                continue;
+            }
+            Budget budget = endpoint.budget();
+            report.append(String.format("%-20s %8.1f %9.1f %9.1f %9.1f %9d %9d %7d%n", endpoint.name(),
+                    stats.count() / (double) SECONDS, stats.percentile(50), stats.percentile(95), stats.percentile(99),
+                    budget.p95(), budget.p99(), stats.errors()));
+            violations.addAll(stats.violations(endpoint.name(), budget));
+        }
+        System.out.println(report);
+        Path output = Path.of("target", "loadtest");
+        Files.createDirectories(output);
+        Files.writeString(output.resolve("report.txt"), report);
+        Files.writeString(output.resolve("report.json"), json(endpoints, results));
+
+        assertThat(violations).as("超過延遲預算或錯誤率的端點").isEmpty();
+    }
+
+    /**
+     * 測試的端點：名稱、預設比例、延遲預算與產生請求的方法。
+     */
+    private List<Endpoint> endpoints(byte[] image) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        endpoints.add(new Endpoint("get-profile", 40, READ_BUDGET,
+                random -> get(API + "/" + profileId(random))));
+        endpoints.add(new Endpoint("batch-get", 5, READ_BUDGET,
+                random -> get(API + "/batch?ids=" + randomProfileIds(random, 20).stream()
+                        .map(String::valueOf).collect(Collectors.joining(",")))));
+        endpoints.add(new Endpoint("batch-post", 3, READ_BUDGET,
+                random -> json("POST", API + "/batch", "{\"userIds\":" + randomProfileIds(random, 50) + "}")));
+        endpoints.add(new Endpoint("themes", 5, READ_BUDGET, random -> get(API + "/themes")));
+        endpoints.add(new Endpoint("theme", 3, READ_BUDGET, random -> get(API + "/themes/" + themeId(random))));
+        endpoints.add(new Endpoint("theme-bundle", 5, READ_BUDGET,
+                random -> HttpRequest.newBuilder(uri(API + "/themes/" + themeId(random) + "/bundle"))
+                        .header("Accept-Encoding", "gzip").GET()));
+        endpoints.add(new Endpoint("button-style-css", 8, READ_BUDGET,
+                random -> get(API + "/" + profileId(random) + "/button-style.css")));
+        endpoints.add(new Endpoint("patch-profile", 5, WRITE_BUDGET,
+                random -> json("PATCH", API + "/" + profileId(random), "{\"buttonStyleConfig\":\"" + buttonStyle(random) + "\"}")));
+        endpoints.add(new Endpoint("button-style", 3, WRITE_BUDGET,
+                random -> json("PUT", API + "/" + profileId(random) + "/button-style",
+                        "{\"buttonStyleConfig\":\"" + buttonStyle(random) + "\"}")));
+        endpoints.add(new Endpoint("switch-theme", 8, WRITE_BUDGET,
+                random -> json("PUT", API + "/" + profileId(random) + "/theme", "{\"themeId\":" + themeId(random) + "}")));
+        endpoints.add(new Endpoint("initialize-profile", 2, WRITE_BUDGET,
+                random -> HttpRequest.newBuilder(uri(API + "/" + nextUninitializedUser() + "/initialize-profile"))
+                        .POST(HttpRequest.BodyPublishers.noBody())));
+        endpoints.add(new Endpoint("initialize-profiles", 1, WRITE_BUDGET,
+                random -> json("POST", API + "/initialize-profiles", "{\"userIds\":"
+                        + LongStream.range(0, 50).map(i -> nextUninitializedUser()).boxed().toList() + "}")));
+        endpoints.add(new Endpoint("upload-avatar", 3, UPLOAD_BUDGET,
+                random -> multipart(API + "/" + profileId(random) + "/avatar", image)));
+        endpoints.add(new Endpoint("upload-background", 2, UPLOAD_BUDGET,
+                random -> multipart(API + "/" + profileId(random) + "/background-image", image)));
+        endpoints.add(new Endpoint("stream-avatar", 3, UPLOAD_BUDGET,
+                random -> stream(API + "/" + profileId(random) + "/avatar", image)));
+        endpoints.add(new Endpoint("stream-background", 2, UPLOAD_BUDGET,
+                random -> stream(API + "/" + profileId(random) + "/background-image", image)));
+        return endpoints;
+    }
+
+    // 預設比例，再以 loadtest.mix 覆蓋 (比例為 0 的端點不會被呼叫)
+    private static Map<String, Integer> mix(List<Endpoint> endpoints) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        endpoints.forEach(endpoint -> mix.put(endpoint.name(), endpoint.defaultWeight()));
+        String override = System.getProperty("loadtest.mix", "");
+        for (String entry : override.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.split("=");
+            if (parts.length != 2 || !mix.containsKey(parts[0].trim())) {
+                throw new IllegalArgumentException("無效的 loadtest.mix 項目: " + entry);
+            }
+            mix.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+        return mix;
+    }
+
+    private static void seed(JdbcTemplate jdbc) {
+        for (int id = 1; id <= THEMES; id++) {
+            jdbc.update("INSERT INTO themes (id, theme_name, default_button_style_config, default_text_color, default_background_color, version) "
+                    + "VALUES (?, ?, 'color: white; background-color: #3366ff;', '#222222', '#fafafa', 0)",
+                    id, id == 1 ? "Default" : "Theme " + id);
+        }
+        List<Object[]> users = new ArrayList<>();
+        for (long id = 1; id <= PROFILES + UNINITIALIZED_USERS; id++) {
+            users.add(new Object[] {id, "user" + id});
+        }
+        jdbc.batchUpdate("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", users);
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) SELECT id, 1, 0 FROM users WHERE id <= ?", PROFILES);
+    }
+
+    private Map<String, Stats> load(List<Endpoint> endpoints, Map<String, Integer> mix) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        List<Endpoint> weighted = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            for (int i = 0; i < mix.get(endpoint.name()); i++) {
+                weighted.add(endpoint);
+            }
+        }
+        Map<String, Stats> results = new ConcurrentHashMap<>();
+
+        long warmupEnd = System.nanoTime() + Duration.ofSeconds(WARMUP_SECONDS).toNanos();
+        long end = warmupEnd + Duration.ofSeconds(SECONDS).toNanos();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CLIENTS; i++) {
+                clients.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < end) {
+                        Endpoint endpoint = weighted.get(random.nextInt(weighted.size()));
+                        long start = System.nanoTime();
+                        boolean success;
+                        try {
+                            HttpRequest request = endpoint.request().apply(random).timeout(Duration.ofSeconds(30)).build();
+                            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                            success = status >= 200 && status < 300;
+                        } catch (IOException | RuntimeException ex) {
+                            // 任何失敗都計入錯誤；沒有捕捉的例外會讓這個客戶端靜靜地停止，負載與錯誤數都會被低估
+                            success = false;
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        if (start > warmupEnd) {
+                            results.computeIfAbsent(endpoint.name(), name -> new Stats())
+                                    .record(System.nanoTime() - start, success);
+                        }
+                    }
+                });
+            }
+        }
+        return results;
+    }
+
+    private long profileId(ThreadLocalRandom random) {
+        return random.nextLong(1, PROFILES + 1);
+    }
+
+    private List<Long> randomProfileIds(ThreadLocalRandom random, int count) {
+        return LongStream.range(0, count).map(i -> profileId(random)).boxed().toList();
+    }
+
+    private static long themeId(ThreadLocalRandom random) {
+        return random.nextLong(1, THEMES + 1);
+    }
+
+    // 使用有限的幾種樣式，讓樣式表快取可以在使用者之間共用
+    private static String buttonStyle(ThreadLocalRandom random) {
+        return "color: white; background-color: #" + "3366ff,ff6633,33cc66,9933ff".split(",")[random.nextInt(4)] + ";";
+    }
+
+    private long nextUninitializedUser() {
+        long id = nextUninitializedUser.getAndIncrement();
+        // 用完之後重複使用，此時 initialize-profiles 只會略過已經建立的個人檔案
+        return id <= PROFILES + UNINITIALIZED_USERS ? id : PROFILES + 1 + (id % UNINITIALIZED_USERS);
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET();
+    }
+
+    private HttpRequest.Builder json(String method, String path, String body) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private HttpRequest.Builder stream(String path, byte[] image) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "image/jpeg")
+                .header("X-File-Name", "photo.jpg")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(image));
+    }
+
+    private HttpRequest.Builder multipart(String path, byte[] image) {
+        String boundary = "----loadtest" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(image.length + 256);
+        body.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"photo.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(image);
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()));
+    }
+
+    private static String json(List<Endpoint> endpoints, Map<String, Stats> results) {
+        return endpoints.stream()
+                .filter(endpoint -> results.containsKey(endpoint.name()))
+                .map(endpoint -> {
+                    Stats stats = results.get(endpoint.name());
+                    return String.format("  \"%s\": {\"requests\": %d, \"errors\": %d, \"throughput\": %.2f, "
+                                    + "\"p50\": %.2f, \"p95\": %.2f, \"p99\": %.2f, \"budgetP95\": %d, \"budgetP99\": %d}",
+                            endpoint.name(), stats.count(), stats.errors(), stats.count() / (double) SECONDS,
+                            stats.percentile(50), stats.percentile(95), stats.percentile(99),
+                            endpoint.budget().p95(), endpoint.budget().p99());
+                })
+                .collect(Collectors.joining(",\n", "{\n", "\n}\n"));
+    }
+
+    /**
+     * 一個端點：名稱、預設比例、延遲預算，以及產生請求的方法。
+     */
+    private record Endpoint(String name, int defaultWeight, Budget defaultBudget,
+                            Function<ThreadLocalRandom, HttpRequest.Builder> request) {
+
+        Budget budget() {
+            return new Budget(Long.getLong("loadtest.budget.p95." + name, defaultBudget.p95()),
+                    Long.getLong("loadtest.budget.p99." + name, defaultBudget.p99()));
+        }
+    }
+
+    private record Budget(long p95, long p99) {
+    }
+
+    /**
+     * 單一端點的量測結果 (延遲以奈秒記錄)。
+     */
+    private static final class Stats {
+        private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicLong errors = new AtomicLong();
+
+        void record(long nanos, boolean success) {
+            latencies.add(nanos);
+            if (!success) {
+                errors.incrementAndGet();
+            }
+        }
+
+        long count() {
+            return latencies.size();
+        }
+
+        long errors() {
+            return errors.get();
+        }
+
+        double percentile(int percentile) {
+            List<Long> sorted;
+            synchronized (latencies) {
+                sorted = new ArrayList<>(latencies);
+            }
+            if (sorted.isEmpty()) {
+                return Double.NaN;
+            }
+            Collections.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+            return sorted.get(Math.max(0, index)) / 1_000_000.0;
+        }
+
+        List<String> violations(String endpoint, Budget budget) {
+            List<String> violations = new ArrayList<>();
+            if (percentile(95) > budget.p95()) {
+                violations.add(String.format("%s p95 %.1f ms > %d ms", endpoint, percentile(95), budget.p95()));
+            }
+            if (percentile(99) > budget.p99()) {
+                violations.add(String.format("%s p99 %.1f ms > %d ms", endpoint, percentile(99), budget.p99()));
+            }
+            if (errors() > count() * MAX_ERROR_RATE) {
+                violations.add(String.format("%s 錯誤 %d / %d", endpoint, errors(), count()));
+            }
+            return violations;
+        }
+    }
+}
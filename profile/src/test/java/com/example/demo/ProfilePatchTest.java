@@ -0,0 +1,126 @@
+package com.example.demo;
+
+import com.example.demo.service.ThemeService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * PATCH /api/profile/{userId}：只寫入請求中提供的欄位 (單一 UPDATE)，主題不存在時回傳 400，找不到個人檔案時回傳 404。
+ * 另外確認 PUT /{userId}/theme 找不到個人檔案時同樣回傳 404。
+ */
+@SpringBootTest(properties = {
+        "test.database=profile-patch",
+        "file.upload.dir=${java.io.tmpdir}/profile-patch-uploads/"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ProfilePatchTest {
+
+    @TestConfiguration
+    static class QueryCounterConfiguration {
+
+        @Bean
+        HibernatePropertiesCustomizer queryCounter() {
+            return properties -> properties.put("hibernate.session_factory.statement_inspector", new QueryCounter());
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ThemeService themeService;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void seed() {
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default'), (2, 'Dark')");
+        for (long id = 1; id <= 3; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+        }
+        // 使用者 3 沒有個人檔案
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, button_style_config, version) "
+                + "VALUES (1, 2, 'color: blue', 0), (2, 1, NULL, 0)");
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "profile-patch-uploads"));
+    }
+
+    @Test
+    void updatesOnlyTheProvidedFieldsInOneUpdate() throws Exception {
+        themeService.getThemeById(1L); // 主題查詢有自己的快取，這裡只計算更新本身
+
+        List<String> statements = QueryCounter.record(() -> mockMvc.perform(patch("/api/profile/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"buttonStyleConfig\": \"color: red\"}"))
+                .andExpect(status().isNoContent()));
+        assertThat(statements).hasSize(1);
+        assertThat(statements.get(0)).startsWithIgnoringCase("update");
+        assertThat(profile(1)).containsEntry("current_theme_id", 2L);
+        assertThat((String) profile(1).get("button_style_config")).contains("red");
+
+        statements = QueryCounter.record(() -> mockMvc.perform(patch("/api/profile/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"themeId\": 1}"))
+                .andExpect(status().isNoContent()));
+        assertThat(statements).hasSize(1);
+        assertThat(profile(1)).containsEntry("current_theme_id", 1L);
+        assertThat((String) profile(1).get("button_style_config")).contains("red");
+    }
+
+    @Test
+    void unknownThemeReturns400() throws Exception {
+        mockMvc.perform(patch("/api/profile/2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"themeId\": 99}"))
+                .andExpect(status().isBadRequest());
+        assertThat(profile(2)).containsEntry("current_theme_id", 1L);
+    }
+
+    @Test
+    void missingProfileReturns404() throws Exception {
+        mockMvc.perform(patch("/api/profile/3")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"themeId\": 1}"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void updateThemeOfMissingProfileReturns404() throws Exception {
+        mockMvc.perform(put("/api/profile/3/theme")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"themeId\": 1}"))
+                .andExpect(status().isNotFound());
+    }
+
+    private Map<String, Object> profile(long userId) {
+        return jdbc.queryForMap("SELECT current_theme_id, button_style_config FROM user_profiles WHERE user_id = ?", userId);
+    }
+}
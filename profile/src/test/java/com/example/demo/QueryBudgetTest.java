@@ -0,0 +1,156 @@
+package com.example.demo;
+
+import com.example.demo.service.ThemeService;
+import com.example.demo.service.UserProfileService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.example.demo.QueryCounter.assertAtMost;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 每個請求與服務方法的 SQL 查詢數上限。新增的程式碼造成額外查詢 (例如 N+1) 時這裡會失敗，建置也隨之失敗。
+ * 真的需要更多查詢時，請連同原因一起調整上限。
+ * 使用 MySQL 相容模式的 H2 記憶體資料庫，每個測試使用不同的使用者，避免彼此的快取互相影響。
+ */
+@SpringBootTest(properties = {
+        "test.database=query-budget",
+        "file.upload.dir=${java.io.tmpdir}/query-budget-uploads/"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryBudgetTest {
+
+    private static final int USERS = 20;
+
+    @TestConfiguration
+    static class QueryCounterConfiguration {
+
+        @Bean
+        HibernatePropertiesCustomizer queryCounter() {
+            return properties -> properties.put("hibernate.session_factory.statement_inspector", new QueryCounter());
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserProfileService userProfileService;
+
+    @Autowired
+    private ThemeService themeService;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void seed() {
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default'), (2, 'Dark')");
+        for (long id = 1; id <= USERS + 1; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+        }
+        // 最後一位使用者沒有個人檔案，給建立預設檔案的測試使用
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) SELECT id, 1, 0 FROM users WHERE id <= ?", USERS);
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "query-budget-uploads"));
+    }
+
+    @Test
+    void getUserProfile() throws Exception {
+        assertAtMost(1, "getUserProfile (未快取)", () -> userProfileService.getUserProfile(1L));
+        assertAtMost(0, "getUserProfile (已快取)", () -> userProfileService.getUserProfile(1L));
+        assertAtMost(1, "getUserProfile (不存在)", () -> userProfileService.getUserProfile(999L));
+    }
+
+    @Test
+    void getUserProfilesUsesSingleQuery() throws Exception {
+        assertAtMost(1, "getUserProfiles (10 位使用者)",
+                () -> userProfileService.getUserProfiles(List.of(2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L)));
+    }
+
+    @Test
+    void updateUserTheme() throws Exception {
+        themeService.getThemeById(2L); // 主題查詢有自己的快取，這裡只計算更新本身
+        assertAtMost(2, "updateUserTheme", () -> userProfileService.updateUserTheme(12L, 2L));
+    }
+
+    @Test
+    void updateButtonStyle() throws Exception {
+        assertAtMost(2, "updateButtonStyle", () -> userProfileService.updateButtonStyle(13L, "color: red"));
+    }
+
+    @Test
+    void createDefaultUserProfile() throws Exception {
+        themeService.getThemeByName("Default");
+        assertAtMost(2, "createDefaultUserProfile", () -> userProfileService.createDefaultUserProfile(USERS + 1L));
+    }
+
+    @Test
+    void getUserProfileEndpoint() throws Exception {
+        assertAtMost(1, "GET /api/profile/{userId}",
+                () -> mockMvc.perform(get("/api/profile/14")).andExpect(status().isOk()));
+    }
+
+    @Test
+    void getUserProfilesEndpoint() throws Exception {
+        assertAtMost(1, "GET /api/profile/batch",
+                () -> mockMvc.perform(get("/api/profile/batch").param("ids", "15,16,17")).andExpect(status().isOk()));
+    }
+
+    @Test
+    void getThemesEndpoint() throws Exception {
+        assertAtMost(1, "GET /api/profile/themes",
+                () -> mockMvc.perform(get("/api/profile/themes")).andExpect(status().isOk()));
+    }
+
+    @Test
+    void updateUserThemeEndpoint() throws Exception {
+        themeService.getThemeById(2L);
+        assertAtMost(2, "PUT /api/profile/{userId}/theme",
+                () -> mockMvc.perform(put("/api/profile/18/theme")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"themeId\": 2}")).andExpect(status().isOk()));
+    }
+
+    @Test
+    void uploadAvatarEndpoint() throws Exception {
+        byte[] image = EmbeddedProfileApplication.sampleJpeg(40, 30);
+        assertAtMost(2, "PUT /api/profile/{userId}/avatar (第一次)",
+                () -> mockMvc.perform(put("/api/profile/19/avatar")
+                        .contentType(MediaType.IMAGE_JPEG).content(image)).andExpect(status().isOk()));
+        // 替換時多一筆待刪除的舊檔案
+        assertAtMost(3, "PUT /api/profile/{userId}/avatar (替換)",
+                () -> mockMvc.perform(put("/api/profile/19/avatar")
+                        .contentType(MediaType.IMAGE_JPEG).content(image)).andExpect(status().isOk()));
+    }
+
+    @Test
+    void initializeProfileEndpoint() throws Exception {
+        themeService.getThemeByName("Default");
+        assertAtMost(2, "POST /api/profile/{userId}/initialize-profile (已存在)",
+                () -> mockMvc.perform(post("/api/profile/20/initialize-profile")).andExpect(status().isCreated()));
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.demo;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 記錄目前執行緒經由 Hibernate 送出的 SQL，用來在測試中限制每個請求或服務方法的查詢數，
+ * 避免 @OneToOne User、currentTheme 等關聯不知不覺造成 N+1 查詢。
+ * 以 hibernate.session_factory.statement_inspector 註冊 (見 {@link QueryBudgetTest})。
+ * 使用 StatementInspector，而不是 Hibernate statistics (整個 SessionFactory 共用的計數，無法分辨執行緒，也看不到 SQL 內容)
+ * 或包裝 DataSource 的代理 (需要額外的相依套件)。
+ *
+ * 只計算呼叫 {@link #record} 的執行緒，背景排程工作與縮圖產生的查詢不會混進來，
+ * 因此 HTTP 請求要以 MockMvc (在測試執行緒上執行) 量測。JdbcTemplate 直接送出的 SQL 不經過 Hibernate，不會被計算。
+ */
+final class QueryCounter implements StatementInspector {
+
+    private static final ThreadLocal<List<String>> STATEMENTS = new ThreadLocal<>();
+
+    @FunctionalInterface
+    interface Action {
+        void run() throws Exception;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        List<String> statements = STATEMENTS.get();
+        if (statements != null) {
+            statements.add(sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 執行指定動作並回傳期間送出的 SQL。
+     */
+    static List<String> record(Action action) throws Exception {
+        List<String> statements = new ArrayList<>();
+        STATEMENTS.set(statements);
+        try {
+            action.run();
+        } finally {
+            STATEMENTS.remove();
+        }
+        return statements;
+    }
+
+    /**
+     * 斷言指定動作送出的 SQL 不超過 budget 個；超過時列出所有 SQL。
+     * @param description 動作的說明 (出現在失敗訊息中)。
+     */
+    static void assertAtMost(int budget, String description, Action action) throws Exception {
+        List<String> statements = record(action);
+        assertThat(statements)
+                .as("%s 的查詢數上限為 %d，實際送出 %d 個:%n%s", description, budget, statements.size(),
+                        String.join(System.lineSeparator(), statements))
+                .hasSizeLessThanOrEqualTo(budget);
+    }
+}
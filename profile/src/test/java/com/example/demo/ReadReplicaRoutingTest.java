@@ -0,0 +1,187 @@
+package com.example.demo;
+
+import com.example.demo.entity.Theme;
+import com.example.demo.service.ReadYourWrites;
+import com.example.demo.service.ThemeChangedEvent;
+import com.example.demo.service.ThemeService;
+import com.example.demo.service.UserProfileService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestMethodOrder;
+import jakarta.servlet.http.Cookie;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 以兩個 H2 記憶體資料庫代替主資料庫與唯讀副本，驗證讀寫路由與 read-your-writes。
+ * 測試中沒有複寫：兩邊放入不同的按鈕樣式與主題說明，由讀到的內容判斷查詢是由哪一個資料庫處理，
+ * 副本上的資料就相當於複寫延遲中的舊資料。
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReadReplicaRoutingTest.PRIMARY_URL,
+        "profile.datasource.replica.url=" + ReadReplicaRoutingTest.REPLICA_URL,
+        "profile.datasource.read-your-writes-window=500ms",
+        "profile.db.max-concurrency=4",
+        "profile.db.replica-max-concurrency=3",
+        "file.upload.dir=${java.io.tmpdir}/read-replica-uploads/"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class) // 主題變更會讓所有個人檔案的讀取暫時改用主資料庫，放在最後
+class ReadReplicaRoutingTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private final JdbcTemplate primary = new JdbcTemplate(new DriverManagerDataSource(PRIMARY_URL, "sa", ""));
+    private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    @Autowired
+    private UserProfileService userProfileService;
+
+    @Autowired
+    private ThemeService themeService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeAll
+    void seed() {
+        // Hibernate 只在主資料庫建立資料表，副本複製同樣的結構
+        for (String statement : primary.queryForList("SCRIPT NODATA NOPASSWORDS NOSETTINGS", String.class)) {
+            if (statement.startsWith("CREATE ") && !statement.startsWith("CREATE USER")) {
+                replica.execute(statement);
+            }
+        }
+        seed(primary, "primary");
+        seed(replica, "replica");
+    }
+
+    private static void seed(JdbcTemplate jdbc, String source) {
+        jdbc.update("INSERT INTO themes (id, theme_name, description, version) VALUES (1, 'Default', ?, 0), (2, 'Dark', ?, 0)",
+                source, source);
+        for (long id = 1; id <= 5; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+            jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, button_style_config, version) VALUES (?, 1, ?, 0)",
+                    id, "font-family: " + source);
+        }
+    }
+
+    @Test
+    @Order(1)
+    void concurrencyLimitIncludesReplicaPool() {
+        // 唯讀交易使用副本的連線，資料庫並行許可數是兩個連線池的總和
+        assertThat(meterRegistry.get("profile.db.permits.available").gauge().value()).isEqualTo(7);
+    }
+
+    @Test
+    @Order(1)
+    void readsAreServedByReplica() {
+        double before = routed("replica", "read-only");
+
+        assertThat(userProfileService.getUserProfile(1L)).get()
+                .satisfies(profile -> assertThat(profile.buttonStyleConfig()).isEqualTo("font-family: replica"));
+        assertThat(userProfileService.getUserProfiles(List.of(2L, 3L)).values())
+                .allSatisfy(profile -> assertThat(profile.buttonStyleConfig()).isEqualTo("font-family: replica"));
+        assertThat(themeService.getThemeByName("Dark")).get()
+                .satisfies(theme -> assertThat(theme.getDescription()).isEqualTo("replica"));
+
+        assertThat(routed("replica", "read-only")).isGreaterThan(before);
+    }
+
+    @Test
+    @Order(2)
+    void ownWritesAreReadFromPrimaryUntilWindowExpires() throws InterruptedException {
+        double before = routed("primary", "read-your-writes");
+
+        userProfileService.updateButtonStyle(4L, "color: red");
+        assertThat(primary.queryForObject("SELECT button_style_config FROM user_profiles WHERE user_id = 4", String.class))
+                .isEqualTo("color: red;");
+        assertThat(replica.queryForObject("SELECT button_style_config FROM user_profiles WHERE user_id = 4", String.class))
+                .isEqualTo("font-family: replica");
+
+        // 剛更新的個人檔案由主資料庫讀取，不會讀到 (並快取) 副本上的舊資料
+        assertThat(userProfileService.getUserProfile(4L)).get()
+                .satisfies(profile -> assertThat(profile.buttonStyleConfig()).isEqualTo("color: red;"));
+        assertThat(routed("primary", "read-your-writes")).isGreaterThan(before);
+
+        // 時間窗過後 (而且快取被清除時) 恢復由副本讀取。evictCachedProfile 本身會記錄寫入，這裡改以整批清除快取
+        Thread.sleep(1000);
+        userProfileService.onThemeChanged(new ThemeChangedEvent(1L));
+        assertThat(userProfileService.getUserProfile(4L)).get()
+                .satisfies(profile -> assertThat(profile.buttonStyleConfig()).isEqualTo("font-family: replica"));
+    }
+
+    @Test
+    @Order(3)
+    void themeChangesAreReadFromPrimary() {
+        Theme theme = themeService.getThemeById(1L).orElseThrow();
+        theme.setDescription("updated");
+        // 修改取得的物件不會影響快取中的主題
+        assertThat(themeService.getThemeById(1L)).get()
+                .satisfies(cached -> assertThat(cached.getDescription()).isNotEqualTo("updated"));
+        themeService.updateTheme(theme);
+
+        assertThat(primary.queryForObject("SELECT description FROM themes WHERE id = 1", String.class)).isEqualTo("updated");
+        assertThat(themeService.getThemeById(1L)).get()
+                .satisfies(reloaded -> assertThat(reloaded.getDescription()).isEqualTo("updated"));
+        // 個人檔案的唯讀模型也包含主題內容
+        assertThat(userProfileService.getUserProfile(5L)).get()
+                .satisfies(profile -> assertThat(profile.buttonStyleConfig()).isEqualTo("font-family: primary"));
+    }
+
+    @Test
+    @Order(4)
+    void writerCookieCarriesReadYourWritesToOtherNodes() throws Exception {
+        Thread.sleep(1000); // 等待上一個測試的主題變更時間窗過去
+        mockMvc.perform(put("/api/profile/2/button-style")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"buttonStyleConfig\": \"color: blue\"}"))
+                .andExpect(status().isOk())
+                .andExpect(cookie().value(ReadYourWrites.COOKIE_NAME, startsWith("1")));
+
+        // 在「其他節點」寫入：主資料庫已更新，這個節點沒有記錄寫入，快取中仍是副本上的舊資料
+        userProfileService.getUserProfile(3L);
+        primary.update("UPDATE user_profiles SET button_style_config = 'color: green;' WHERE user_id = 3");
+        mockMvc.perform(get("/api/profile/3"))
+                .andExpect(jsonPath("$.buttonStyleConfig").value("font-family: replica"));
+
+        // 帶著寫入時的 cookie：略過快取並由主資料庫讀取
+        Cookie written = new Cookie(ReadYourWrites.COOKIE_NAME, String.valueOf(System.currentTimeMillis()));
+        mockMvc.perform(get("/api/profile/3").cookie(written))
+                .andExpect(jsonPath("$.buttonStyleConfig").value("color: green;"));
+
+        // 過期的 cookie 不影響；上一個請求讀到的最新內容已經放回快取
+        primary.update("UPDATE user_profiles SET button_style_config = 'color: gray;' WHERE user_id = 3");
+        Cookie expired = new Cookie(ReadYourWrites.COOKIE_NAME, String.valueOf(System.currentTimeMillis() - 60_000));
+        mockMvc.perform(get("/api/profile/3").cookie(expired))
+                .andExpect(jsonPath("$.buttonStyleConfig").value("color: green;"));
+    }
+
+    private double routed(String target, String reason) {
+        return meterRegistry.get("profile.datasource.routing").tag("target", target).tag("reason", reason).counter().count();
+    }
+}
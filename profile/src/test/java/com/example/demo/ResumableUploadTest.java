@@ -0,0 +1,220 @@
+package com.example.demo;
+
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.ResumableUploadService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 可續傳的分段上傳：建立工作階段、依位移上傳區塊 (包含中斷後續傳與重送)、完成後更新個人檔案，以及過期清除。
+ * 每個測試使用不同的使用者。
+ */
+@SpringBootTest(properties = {
+        "test.database=resumable-upload",
+        "file.upload.dir=${java.io.tmpdir}/resumable-upload-uploads/"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ResumableUploadTest {
+
+    private static final int USERS = 10;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ResumableUploadService resumableUploadService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private byte[] image;
+
+    @BeforeAll
+    void seed() throws IOException {
+        image = EmbeddedProfileApplication.sampleJpeg(200, 150);
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default')");
+        for (long id = 1; id <= USERS; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+        }
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) SELECT id, 1, 0 FROM users");
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "resumable-upload-uploads"));
+    }
+
+    @Test
+    void uploadsInChunksAndAttachesOnlyOnComplete() throws Exception {
+        String uploadId = createSession(1, "background-image", image.length);
+        int half = image.length / 2;
+
+        mockMvc.perform(chunk(1, uploadId, 0, Arrays.copyOfRange(image, 0, half)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Upload-Offset", String.valueOf(half)));
+        // 跳過尚未收到的部分
+        mockMvc.perform(chunk(1, uploadId, half + 1, Arrays.copyOfRange(image, half + 1, image.length)))
+                .andExpect(status().isConflict());
+        mockMvc.perform(post("/api/profile/1/uploads/" + uploadId + "/complete"))
+                .andExpect(status().isConflict());
+        // 重送已經收到的部分 (例如沒收到回應) 會直接覆寫
+        mockMvc.perform(chunk(1, uploadId, half - 100, Arrays.copyOfRange(image, half - 100, image.length)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Upload-Offset", String.valueOf(image.length)));
+        assertThat(backgroundImageUrl(1)).isNull();
+
+        String url = mockMvc.perform(post("/api/profile/1/uploads/" + uploadId + "/complete"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(backgroundImageUrl(1)).isEqualTo(url);
+        assertThat(Files.readAllBytes(fileStorageService.resolveUrl(url))).isEqualTo(image);
+        mockMvc.perform(get("/api/profile/1/uploads/" + uploadId)).andExpect(status().isNotFound());
+        assertThat(partialFile(uploadId)).doesNotExist();
+    }
+
+    @Test
+    void resumesFromBytesReceivedBeforeDisconnect() throws Exception {
+        String uploadId = createSession(2, "avatar", image.length);
+        // 傳到一半連線中斷
+        InputStream dropped = new ByteArrayInputStream(image, 0, 1000) {
+            @Override
+            public synchronized int read(byte[] buffer, int offset, int length) {
+                int read = super.read(buffer, offset, length);
+                return read >= 0 ? read : failed();
+            }
+
+            private int failed() {
+                throw new IllegalStateException("connection reset");
+            }
+        };
+        assertThatThrownBy(() -> resumableUploadService.writeChunk(2L, uploadId, 0, dropped))
+                .isInstanceOf(IllegalStateException.class);
+
+        long offset = resumableUploadService.status(2L, uploadId).offset();
+        assertThat(offset).isEqualTo(1000);
+        mockMvc.perform(chunk(2, uploadId, offset, Arrays.copyOfRange(image, (int) offset, image.length)))
+                .andExpect(status().isOk());
+        String url = mockMvc.perform(post("/api/profile/2/uploads/" + uploadId + "/complete"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(Files.readAllBytes(fileStorageService.resolveUrl(url))).isEqualTo(image);
+    }
+
+    @Test
+    void rejectsChunksBeyondDeclaredSizeAndNonImages() throws Exception {
+        byte[] text = "not an image".getBytes();
+        String uploadId = createSession(3, "avatar", text.length);
+        mockMvc.perform(chunk(3, uploadId, 0, image)).andExpect(status().isPayloadTooLarge());
+        mockMvc.perform(chunk(3, uploadId, 0, text)).andExpect(status().isOk());
+
+        mockMvc.perform(post("/api/profile/3/uploads/" + uploadId + "/complete"))
+                .andExpect(status().isUnsupportedMediaType());
+        // 無法重試的錯誤會結束工作階段
+        mockMvc.perform(get("/api/profile/3/uploads/" + uploadId)).andExpect(status().isNotFound());
+        assertThat(partialFile(uploadId)).doesNotExist();
+    }
+
+    @Test
+    void chunksAreRejectedWhileAnotherRequestCompletes() throws Exception {
+        String uploadId = createSession(7, "avatar", image.length);
+        mockMvc.perform(chunk(7, uploadId, 0, image)).andExpect(status().isOk());
+
+        // complete 認領時把暫存檔改名；完成之前的區塊寫入與另一個完成請求都被拒絕，工作階段不會被刪除
+        Path completing = partialFile(uploadId).resolveSibling(uploadId + ".completing-test");
+        Files.move(partialFile(uploadId), completing);
+        mockMvc.perform(chunk(7, uploadId, 0, image)).andExpect(status().isConflict());
+        mockMvc.perform(post("/api/profile/7/uploads/" + uploadId + "/complete")).andExpect(status().isConflict());
+        assertThat(completing).exists();
+
+        // 完成失敗而改回原本的檔名後可以再次完成
+        Files.move(completing, partialFile(uploadId));
+        String url = mockMvc.perform(post("/api/profile/7/uploads/" + uploadId + "/complete"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(Files.readAllBytes(fileStorageService.resolveUrl(url))).isEqualTo(image);
+        try (var leftovers = Files.list(partialFile(uploadId).getParent())) {
+            assertThat(leftovers.map(Path::getFileName).map(Path::toString)).noneMatch(name -> name.startsWith(uploadId));
+        }
+    }
+
+    @Test
+    void sessionsOfOtherUsersAreNotVisible() throws Exception {
+        String uploadId = createSession(4, "avatar", image.length);
+        mockMvc.perform(get("/api/profile/5/uploads/" + uploadId)).andExpect(status().isNotFound());
+        mockMvc.perform(chunk(5, uploadId, 0, image)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void expiredSessionsAreDeleted() throws Exception {
+        String uploadId = createSession(6, "background-image", image.length);
+        mockMvc.perform(chunk(6, uploadId, 0, Arrays.copyOfRange(image, 0, 100))).andExpect(status().isOk());
+        assertThat(partialFile(uploadId)).exists();
+
+        jdbc.update("UPDATE upload_sessions SET expires_at = DATEADD('MINUTE', -1, CURRENT_TIMESTAMP) WHERE id = ?", uploadId);
+        mockMvc.perform(get("/api/profile/6/uploads/" + uploadId)).andExpect(status().isNotFound());
+        assertThat(resumableUploadService.expireSessions()).isEqualTo(1);
+        assertThat(partialFile(uploadId)).doesNotExist();
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM upload_sessions WHERE id = ?", Long.class, uploadId)).isZero();
+    }
+
+    private String createSession(long userId, String target, long size) throws Exception {
+        String body = mockMvc.perform(post("/api/profile/" + userId + "/uploads")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"target\":\"" + target + "\",\"fileName\":\"photo.jpg\",\"size\":" + size + "}"))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Upload-Offset", "0"))
+                .andReturn().getResponse().getContentAsString();
+        JsonNode session = objectMapper.readTree(body);
+        return session.get("uploadId").asText();
+    }
+
+    private RequestBuilder chunk(long userId, String uploadId, long offset, byte[] content) {
+        return put("/api/profile/" + userId + "/uploads/" + uploadId)
+                .header("Upload-Offset", offset)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .content(content);
+    }
+
+    private String backgroundImageUrl(long userId) {
+        return jdbc.queryForObject("SELECT background_image_url FROM user_profiles WHERE user_id = ?", String.class, userId);
+    }
+
+    private Path partialFile(String uploadId) {
+        return fileStorageService.getStorageLocation().resolve(".sessions").resolve(uploadId);
+    }
+}
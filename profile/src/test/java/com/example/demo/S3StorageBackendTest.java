@@ -0,0 +1,194 @@
+package com.example.demo;
+
+import com.example.demo.service.FileDeletionQueue;
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.HotFileCache;
+import com.example.demo.service.StorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 物件儲存後端 (file.storage.backend=s3)：以 {@link FakeS3Server} 代替 S3，
+ * 驗證上傳的檔案會存到物件儲存、本機快取沒有檔案時 /uploads 會重新下載、被替換的檔案會從物件儲存刪除
+ * (部分物件刪除失敗時回報錯誤)，以及本機熱門檔案快取的 LRU 淘汰。
+ */
+@SpringBootTest(properties = {
+        "test.database=s3-storage",
+        "file.upload.dir=${java.io.tmpdir}/s3-storage-cache/",
+        "file.storage.backend=s3",
+        "file.storage.s3.bucket=profile-test",
+        "file.storage.s3.prefix=uploads",
+        "file.storage.s3.path-style-access=true",
+        "file.storage.s3.access-key=test",
+        "file.storage.s3.secret-key=test"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class S3StorageBackendTest {
+
+    private static final FakeS3Server S3 = startS3();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private FileDeletionQueue fileDeletionQueue;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private byte[] image;
+
+    @DynamicPropertySource
+    static void s3Endpoint(DynamicPropertyRegistry registry) {
+        registry.add("file.storage.s3.endpoint", S3::endpoint);
+    }
+
+    private static FakeS3Server startS3() {
+        try {
+            return new FakeS3Server("profile-test");
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @BeforeAll
+    void seed() throws IOException {
+        image = EmbeddedProfileApplication.sampleJpeg(48, 48);
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default')");
+        for (long id = 1; id <= 2; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+        }
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) SELECT id, 1, 0 FROM users");
+    }
+
+    @AfterAll
+    void cleanUp() throws IOException {
+        S3.close();
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "s3-storage-cache"));
+    }
+
+    @Test
+    void uploadsAreStoredInObjectStorageAndDownloadedOnCacheMiss() throws Exception {
+        String url = uploadAvatar(1);
+        String key = url.substring("/uploads/".length());
+        assertThat(S3.get("uploads/" + key)).isEqualTo(image);
+
+        // 本機快取沒有這個檔案 (例如另一個節點上傳的)
+        Path cached = fileStorageService.getStorageLocation().resolve(key);
+        Files.delete(cached);
+        mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(image));
+        assertThat(cached).exists();
+    }
+
+    @Test
+    void replacedFilesAreDeletedFromObjectStorage() throws Exception {
+        String oldKey = uploadAvatar(2).substring("/uploads/".length());
+        String newKey = uploadAvatar(2).substring("/uploads/".length());
+
+        fileDeletionQueue.processQueue();
+        assertThat(S3.get("uploads/" + oldKey)).isNull();
+        assertThat(fileStorageService.getStorageLocation().resolve(oldKey)).doesNotExist();
+        assertThat(S3.get("uploads/" + newKey)).isEqualTo(image);
+        mockMvc.perform(get("/uploads/" + oldKey)).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void legacyFlatUrlsDeleteTheShardedObject() {
+        String key = fileStorageService.storeFile(new MockMultipartFile("file", "photo.jpg", MediaType.IMAGE_JPEG_VALUE, image))
+                .substring("/uploads/".length());
+        String fileName = key.substring(key.lastIndexOf('/') + 1);
+        assertThat(key).isEqualTo(FileStorageService.shardedPathOf(fileName));
+
+        // 物件儲存中沒有單層的 key，刪除時要改用分層的 key
+        assertThat(fileStorageService.deleteFile("/uploads/" + fileName)).isTrue();
+        assertThat(S3.get("uploads/" + key)).isNull();
+        assertThat(fileStorageService.deleteFile("/uploads/" + fileName)).isFalse();
+    }
+
+    @Test
+    void deletePrefixReportsObjectsThatWereNotDeleted() throws IOException {
+        for (String key : new String[] {"denied/w64.jpg", "denied/w128.jpg"}) {
+            Path file = fileStorageService.getStorageLocation().resolve(key);
+            Files.createDirectories(file.getParent());
+            Files.write(file, image);
+            storageBackend.save(key, file, MediaType.IMAGE_JPEG_VALUE);
+        }
+        S3.denyDelete("uploads/denied/w128.jpg");
+
+        // 物件儲存回報部分物件刪除失敗時，呼叫端要知道 (之後重試)，不能當作已經刪除
+        assertThatThrownBy(() -> storageBackend.deletePrefix("denied/"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("denied/w128.jpg");
+        assertThat(S3.get("uploads/denied/w64.jpg")).isNull();
+        assertThat(S3.get("uploads/denied/w128.jpg")).isEqualTo(image);
+    }
+
+    @Test
+    void hotFileCacheEvictsLeastRecentlyUsedFiles() throws IOException {
+        Path root = Files.createTempDirectory("hot-file-cache");
+        try {
+            HotFileCache cache = new HotFileCache(root, 1000, new SimpleMeterRegistry());
+            for (String key : new String[] {"a/1.jpg", "a/2.jpg", "b/3.jpg"}) {
+                Path file = root.resolve(key);
+                Files.createDirectories(file.getParent());
+                Files.write(file, new byte[400]);
+                if (key.equals("b/3.jpg")) {
+                    assertThat(cache.get("a/1.jpg")).isNotNull(); // 最近讀取過，不會被淘汰
+                }
+                cache.put(key, 400);
+            }
+            assertThat(root.resolve("a/2.jpg")).doesNotExist();
+            assertThat(cache.get("a/2.jpg")).isNull();
+            assertThat(cache.get("a/1.jpg")).isNotNull();
+            assertThat(cache.get("b/3.jpg")).isNotNull();
+            assertThat(cache.totalBytes()).isEqualTo(800);
+
+            // 重新啟動後從目錄重建索引
+            assertThat(new HotFileCache(root, 1000, new SimpleMeterRegistry()).totalBytes()).isEqualTo(800);
+        } finally {
+            FileSystemUtils.deleteRecursively(root);
+        }
+    }
+
+    private String uploadAvatar(long userId) throws Exception {
+        return mockMvc.perform(put("/api/profile/" + userId + "/avatar")
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .content(image))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 比較各種啟動方式從啟動 JVM 到第一個請求成功回應所需的時間 (time-to-first-request)。
+ * 由 mvn -Pfast-start verify 在 package 之後執行，使用 fast-start profile 產生的可執行 jar、解開的 jar 與 CDS 檔案：
+ * jar (目前的啟動方式：java -jar 可執行 jar)、extracted (解開的 jar)、
+ * aot (解開的 jar + Spring AOT)、aot-cds (解開的 jar + Spring AOT + CDS)。
+ *
+ * 應用程式不需要資料庫也能啟動 (Hibernate 不讀取 JDBC metadata)，第一個請求是不查詢資料庫的首頁 (/index.html)，
+ * 量測的是應用程式本身的啟動時間 (包含 DispatcherServlet 在第一個請求時的初始化)。結果輸出到 target/startup/report.txt。
+ * 可用系統屬性調整：startup.runs (每種方式的啟動次數，取中位數)、startup.timeout-seconds。
+ */
+class StartupTimeIT {
+
+    private static final int RUNS = Integer.getInteger("startup.runs", 5);
+    private static final Duration TIMEOUT = Duration.ofSeconds(Integer.getInteger("startup.timeout-seconds", 120));
+    private static final String FIRST_REQUEST = "/index.html";
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+    @Test
+    void compareTimeToFirstRequest() throws Exception {
+        Path jar = Path.of(System.getProperty("startup.jar"));
+        Path fastStart = Path.of(System.getProperty("startup.fast-start-directory"));
+        Path extracted = fastStart.resolve("profile.jar");
+        Path archive = fastStart.resolve("application.jsa");
+        assertThat(jar).exists();
+        assertThat(extracted).exists();
+        assertThat(archive).exists();
+
+        List<Mode> modes = List.of(
+                new Mode("jar", List.of("-jar", jar.toString())),
+                new Mode("extracted", List.of("-jar", extracted.toString())),
+                new Mode("aot", List.of("-Dspring.aot.enabled=true", "-jar", extracted.toString())),
+                new Mode("aot-cds", List.of("-XX:SharedArchiveFile=" + archive, "-Dspring.aot.enabled=true",
+                        "-jar", extracted.toString())));
+
+        StringBuilder report = new StringBuilder(String.format("%-10s %12s %12s %12s%n",
+                "mode", "median ms", "min ms", "max ms"));
+        Path uploads = Files.createTempDirectory("startup-uploads");
+        try {
+            for (Mode mode : modes) {
+                List<Long> samples = new ArrayList<>();
+                for (int run = 0; run < RUNS; run++) {
+                    samples.add(timeToFirstRequest(mode, uploads));
+                }
+                Collections.sort(samples);
+                report.append(String.format("%-10s %12d %12d %12d%n", mode.name(),
+                        samples.get(samples.size() / 2), samples.getFirst(), samples.getLast()));
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(uploads);
+        }
+
+        System.out.println(report);
+        Path output = Path.of("target", "startup", "report.txt");
+        Files.createDirectories(output.getParent());
+        Files.writeString(output, report);
+    }
+
+    // 啟動應用程式，每 10ms 送出一次請求，直到第一次成功回應為止 (毫秒)
+    private long timeToFirstRequest(Mode mode, Path uploads) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(mode.jvmArguments());
+        command.addAll(List.of(
+                "--server.port=" + port,
+                "--spring.jpa.properties.hibernate.boot.allow_jdbc_metadata_access=false",
+                "--spring.jpa.database-platform=org.hibernate.dialect.MySQLDialect",
+                "--file.upload.dir=" + uploads.toAbsolutePath() + "/"));
+        Path log = Files.createTempFile("startup-" + mode.name(), ".log");
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + FIRST_REQUEST)).GET().build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        try {
+            while (System.nanoTime() - start < TIMEOUT.toNanos()) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(mode.name() + " 啟動失敗:\n" + Files.readString(log));
+                }
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return Duration.ofNanos(System.nanoTime() - start).toMillis();
+                    }
+                } catch (ConnectException ex) {
+                    // 還沒開始接受連線
+                }
+                Thread.sleep(10);
+            }
+            throw new IllegalStateException(mode.name() + " 在 " + TIMEOUT + " 內沒有回應:\n" + Files.readString(log));
+        } finally {
+            process.destroy();
+            process.waitFor();
+            Files.deleteIfExists(log);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private record Mode(String name, List<String> jvmArguments) {
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.demo;
+
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.StoredFile;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 串流上傳的驗證：依內容的 magic number 判斷圖片類型 (副檔名以內容為準)，
+ * 非圖片與空內容在建立檔案前就拒絕，超過大小上限時在讀取途中中止並刪除已寫入的部分。
+ */
+@SpringBootTest(properties = {
+        "test.database=streaming-upload",
+        "file.upload.dir=${java.io.tmpdir}/streaming-upload-uploads/",
+        "file.upload.max-size=64KB"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class StreamingUploadTest {
+
+    private static final int MAX_SIZE = 64 * 1024;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void seed() {
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default')");
+        jdbc.update("INSERT INTO users (id, username, password) VALUES (1, 'user1', 'x')");
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) VALUES (1, 1, 0)");
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "streaming-upload-uploads"));
+    }
+
+    @Test
+    void oversizedBodyIsAbortedMidStreamWithoutLeavingAFile() throws IOException {
+        List<Path> before = storedFiles();
+        byte[] body = jpegHeaderFollowedBy(4 * MAX_SIZE);
+        CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(body));
+
+        assertThatThrownBy(() -> fileStorageService.storeStream(in, "large.jpg"))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        assertThat(in.count).isLessThan(body.length); // 沒有讀完整個內容
+        assertThat(storedFiles()).isEqualTo(before);
+    }
+
+    @Test
+    void oversizedUploadReturns413() throws Exception {
+        mockMvc.perform(put("/api/profile/1/avatar")
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .content(jpegHeaderFollowedBy(2 * MAX_SIZE)))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    void nonImageContentReturns415WithoutCreatingAFile() throws Exception {
+        List<Path> before = storedFiles();
+        mockMvc.perform(put("/api/profile/1/avatar")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .header("X-File-Name", "avatar.jpg")
+                        .content("%PDF-1.7 not an image".getBytes()))
+                .andExpect(status().isUnsupportedMediaType());
+        assertThat(storedFiles()).isEqualTo(before);
+    }
+
+    @Test
+    void emptyBodyIsRejected() throws Exception {
+        List<Path> before = storedFiles();
+        mockMvc.perform(put("/api/profile/1/avatar")
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .content(new byte[0]))
+                .andExpect(status().isUnsupportedMediaType());
+        assertThat(storedFiles()).isEqualTo(before);
+    }
+
+    @Test
+    void extensionFollowsTheSniffedType() throws IOException {
+        byte[] jpeg = EmbeddedProfileApplication.sampleJpeg(20, 20);
+
+        StoredFile mislabeled = fileStorageService.storeStream(new ByteArrayInputStream(jpeg), "photo.png");
+        assertThat(mislabeled.contentType()).isEqualTo(MediaType.IMAGE_JPEG_VALUE);
+        assertThat(mislabeled.url()).endsWith("_photo.png.jpg");
+
+        StoredFile unnamed = fileStorageService.storeStream(new ByteArrayInputStream(jpeg), "photo");
+        assertThat(unnamed.url()).endsWith("_photo.jpg");
+
+        StoredFile labeled = fileStorageService.storeStream(new ByteArrayInputStream(jpeg), "photo.jpg");
+        assertThat(labeled.url()).endsWith("_photo.jpg").doesNotEndWith(".jpg.jpg");
+        assertThat(labeled.size()).isEqualTo(jpeg.length);
+    }
+
+    // JPEG 的 magic number 之後接任意內容 (只有開頭會被檢查)
+    private static byte[] jpegHeaderFollowedBy(int length) {
+        byte[] body = new byte[length];
+        Arrays.fill(body, (byte) 0x55);
+        body[0] = (byte) 0xFF;
+        body[1] = (byte) 0xD8;
+        body[2] = (byte) 0xFF;
+        return body;
+    }
+
+    private List<Path> storedFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(fileStorageService.getStorageLocation())) {
+            return files.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
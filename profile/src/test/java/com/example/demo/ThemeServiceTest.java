@@ -0,0 +1,125 @@
+package com.example.demo;
+
+import com.example.demo.entity.Theme;
+import com.example.demo.service.ThemeService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 主題快取：讀取回傳快取內容的複本 (呼叫端修改不會影響快取)，
+ * 新增、更新、刪除主題在交易提交後才清除三個快取 (依 ID、依名稱、主題清單)。
+ */
+@SpringBootTest(properties = {
+        "test.database=theme-service",
+        "file.upload.dir=${java.io.tmpdir}/theme-service-uploads/"})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ThemeServiceTest {
+
+    @Autowired
+    private ThemeService themeService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void seed() {
+        jdbc.update("INSERT INTO themes (id, theme_name, version) VALUES (1, 'Default', 0), (2, 'Dark', 0), (3, 'Retired', 0)");
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "theme-service-uploads"));
+    }
+
+    @Test
+    void cachedThemesAreReturnedAsCopies() {
+        Theme byId = themeService.getThemeById(1L).orElseThrow();
+        byId.setThemeName("Modified");
+        themeService.getThemeByName("Default").orElseThrow().setDescription("Modified");
+        themeService.getAllThemes().get(0).setThemeName("Modified");
+
+        assertThat(themeService.getThemeById(1L).orElseThrow()).isNotSameAs(byId)
+                .extracting(Theme::getThemeName).isEqualTo("Default");
+        assertThat(themeService.getThemeByName("Default").orElseThrow().getDescription()).isNull();
+        assertThat(themeService.getAllThemes()).extracting(Theme::getThemeName).doesNotContain("Modified");
+    }
+
+    @Test
+    void createClearsTheCachesAfterCommit() {
+        Theme theme = new Theme();
+        theme.setThemeName("Blue");
+
+        Theme created = writeAndCheckCachesClearedAfterCommit(() -> themeService.createTheme(theme));
+
+        assertThat(themeService.getThemeById(created.getId())).isPresent();
+        assertThat(themeService.getAllThemes()).extracting(Theme::getThemeName).contains("Blue");
+    }
+
+    @Test
+    void updateClearsTheCachesAfterCommit() {
+        Theme theme = themeService.getThemeById(2L).orElseThrow();
+        theme.setThemeName("Midnight");
+
+        writeAndCheckCachesClearedAfterCommit(() -> themeService.updateTheme(theme));
+
+        assertThat(themeService.getThemeById(2L).orElseThrow().getThemeName()).isEqualTo("Midnight");
+        assertThat(themeService.getThemeByName("Dark")).isEmpty();
+        assertThat(themeService.getAllThemes()).extracting(Theme::getThemeName).contains("Midnight").doesNotContain("Dark");
+    }
+
+    @Test
+    void deleteClearsTheCachesAfterCommit() {
+        themeService.getThemeByName("Retired").orElseThrow();
+
+        writeAndCheckCachesClearedAfterCommit(() -> {
+            themeService.deleteTheme(3L);
+            return null;
+        });
+
+        assertThat(themeService.getThemeById(3L)).isEmpty();
+        assertThat(themeService.getThemeByName("Retired")).isEmpty();
+        assertThat(themeService.getAllThemes()).extracting(Theme::getThemeName).doesNotContain("Retired");
+    }
+
+    // 三個快取都有內容時在交易中寫入：提交前的讀取全部命中快取，提交後全部重新查詢
+    private <T> T writeAndCheckCachesClearedAfterCommit(Supplier<T> write) {
+        readAllCaches();
+        T result = new TransactionTemplate(transactionManager).execute(status -> {
+            T written = write.get();
+            long misses = themeService.getCacheStats().missCount();
+            readAllCaches();
+            assertThat(themeService.getCacheStats().missCount()).isEqualTo(misses);
+            return written;
+        });
+
+        long misses = themeService.getCacheStats().missCount();
+        readAllCaches();
+        assertThat(themeService.getCacheStats().missCount()).isEqualTo(misses + 3);
+        return result;
+    }
+
+    private void readAllCaches() {
+        themeService.getThemeById(1L);
+        themeService.getThemeByName("Default");
+        themeService.getAllThemes();
+    }
+}
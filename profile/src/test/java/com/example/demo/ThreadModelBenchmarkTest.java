@@ -0,0 +1,183 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 比較平台執行緒池與虛擬執行緒兩種模式在同時上傳與讀取個人檔案時的吞吐量與延遲。
+ * 兩種模式各啟動一次應用程式 (H2 記憶體資料庫、暫存上傳目錄)，以相同的負載執行後輸出比較表。
+ * 上傳以緩慢的用戶端模擬 (分段送出並在每段之間暫停)，這正是會佔住平台執行緒的情境。
+ *
+ * 預設不執行，使用 mvn test -Pbenchmark 執行。可用系統屬性調整：
+ * benchmark.clients (同時的用戶端數)、benchmark.seconds (每種模式的量測秒數)、
+ * benchmark.platform-threads (平台模式的 Tomcat 執行緒數)。
+ */
+@Tag("benchmark")
+class ThreadModelBenchmarkTest {
+
+    private static final int CLIENTS = Integer.getInteger("benchmark.clients", 400);
+    private static final int SECONDS = Integer.getInteger("benchmark.seconds", 20);
+    private static final int PLATFORM_THREADS = Integer.getInteger("benchmark.platform-threads", 50);
+    private static final int PROFILES = 1000;
+
+    // 每 10 個請求中有 2 個是上傳
+    private static final int UPLOAD_RATIO = 2;
+
+    @Test
+    void compareThreadModels() throws Exception {
+        byte[] image = EmbeddedProfileApplication.sampleJpeg(400, 300);
+        Result platform = run(false, image);
+        Result virtual = run(true, image);
+
+        StringBuilder report = new StringBuilder()
+                .append(String.format("%-10s %12s %12s %12s %12s %12s %8s%n",
+                        "mode", "req/s", "read p50 ms", "read p99 ms", "upload p50", "upload p99", "errors"))
+                .append(platform.format("platform"))
+                .append(virtual.format("virtual"));
+        System.out.println(report);
+        Path output = Path.of("target", "benchmark", "thread-model.txt");
+        Files.createDirectories(output.getParent());
+        Files.writeString(output, report);
+
+        assertThat(platform.reads()).isNotEmpty();
+        assertThat(virtual.reads()).isNotEmpty();
+    }
+
+    private Result run(boolean virtualThreads, byte[] image) throws Exception {
+        try (EmbeddedProfileApplication application = EmbeddedProfileApplication.start("benchmark-" + virtualThreads,
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                "--server.tomcat.threads.max=" + PLATFORM_THREADS,
+                // 不使用個人檔案快取，讓每次讀取都實際查詢資料庫
+                "--profile.cache.max-size=0",
+                // 緩慢的上傳用戶端會超過上傳的准入限制，這裡比較的是執行緒模型本身
+                "--profile.upload.max-concurrent=0",
+                "--profile.upload.max-concurrent-per-user=0",
+                "--profile.upload.bytes-per-second=0",
+                "--profile.upload.bytes-per-second-per-user=0")) {
+            seed(application.jdbc());
+            return load(application.baseUrl(), image);
+        }
+    }
+
+    private static void seed(JdbcTemplate jdbc) {
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default')");
+        List<Object[]> users = new ArrayList<>();
+        for (long id = 1; id <= PROFILES; id++) {
+            users.add(new Object[] {id, "user" + id});
+        }
+        jdbc.batchUpdate("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", users);
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) SELECT id, 1, 0 FROM users");
+    }
+
+    private static Result load(String baseUrl, byte[] image) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        List<Long> reads = Collections.synchronizedList(new ArrayList<>());
+        List<Long> uploads = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong errors = new AtomicLong();
+
+        // 先暖機，讓 JIT 與連線池就緒
+        long warmupEnd = System.nanoTime() + Duration.ofSeconds(3).toNanos();
+        long end = warmupEnd + Duration.ofSeconds(SECONDS).toNanos();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CLIENTS; i++) {
+                clients.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < end) {
+                        long userId = random.nextLong(1, PROFILES + 1);
+                        boolean upload = random.nextInt(10) < UPLOAD_RATIO;
+                        long start = System.nanoTime();
+                        try {
+                            HttpRequest request = upload
+                                    ? HttpRequest.newBuilder(URI.create(baseUrl + "/api/profile/" + userId + "/avatar"))
+                                            .header("Content-Type", "image/jpeg")
+                                            .PUT(HttpRequest.BodyPublishers.ofInputStream(() -> new SlowInputStream(image)))
+                                            .build()
+                                    : HttpRequest.newBuilder(URI.create(baseUrl + "/api/profile/" + userId)).GET().build();
+                            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                            long elapsed = System.nanoTime() - start;
+                            if (status != 200) {
+                                errors.incrementAndGet();
+                            } else if (start > warmupEnd) {
+                                (upload ? uploads : reads).add(elapsed);
+                            }
+                        } catch (IOException ex) {
+                            errors.incrementAndGet();
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                });
+            }
+        }
+        return new Result(reads, uploads, errors.get(), SECONDS);
+    }
+
+    /**
+     * 模擬網路緩慢的用戶端：每次最多讀出 8KB，並在每段之間暫停 5ms。
+     */
+    private static final class SlowInputStream extends InputStream {
+        private final InputStream delegate;
+
+        SlowInputStream(byte[] content) {
+            this.delegate = new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return delegate.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            }
+            return delegate.read(buffer, offset, Math.min(length, 8 * 1024));
+        }
+    }
+
+    private record Result(List<Long> reads, List<Long> uploads, long errors, int seconds) {
+
+        String format(String mode) {
+            return String.format("%-10s %12.1f %12.1f %12.1f %12.1f %12.1f %8d%n", mode,
+                    (reads.size() + uploads.size()) / (double) seconds,
+                    percentile(reads, 50), percentile(reads, 99),
+                    percentile(uploads, 50), percentile(uploads, 99), errors);
+        }
+
+        private static double percentile(List<Long> samples, int percentile) {
+            if (samples.isEmpty()) {
+                return Double.NaN;
+            }
+            List<Long> sorted = new ArrayList<>(samples);
+            Collections.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+            return sorted.get(Math.max(0, index)) / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.demo;
+
+import com.example.demo.service.UploadAdmissionLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 上傳端點的准入控制：超過每位使用者或全域的同時上傳數、或每位使用者的上傳速度時回傳 429 與 Retry-After。
+ * 每位使用者每秒只允許 1KB，因此一張測試圖片就會用完權杖桶；每個測試使用不同的使用者。
+ */
+@SpringBootTest(properties = {
+        "test.database=upload-admission",
+        "file.upload.dir=${java.io.tmpdir}/upload-admission-uploads/",
+        "profile.upload.max-concurrent=3",
+        "profile.upload.max-concurrent-per-user=1",
+        "profile.upload.bytes-per-second=0",
+        "profile.upload.bytes-per-second-per-user=1KB"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UploadAdmissionTest {
+
+    private static final int USERS = 10;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UploadAdmissionLimiter limiter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private byte[] image;
+
+    @BeforeAll
+    void seed() throws IOException {
+        image = EmbeddedProfileApplication.sampleJpeg(64, 64);
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default')");
+        for (long id = 1; id <= USERS; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+        }
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) SELECT id, 1, 0 FROM users");
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "upload-admission-uploads"));
+    }
+
+    @Test
+    void rejectsUploadsOverPerUserRate() throws Exception {
+        double rejectedBefore = rejected("user", "rate");
+        mockMvc.perform(streamAvatar(1)).andExpect(status().isOk());
+
+        MvcResult rejected = mockMvc.perform(streamAvatar(1))
+                .andExpect(status().isTooManyRequests())
+                .andReturn();
+        // 權杖桶欠了約一張圖片的量，以每秒 1KB 補回
+        long retryAfter = Long.parseLong(rejected.getResponse().getHeader(HttpHeaders.RETRY_AFTER));
+        assertThat(retryAfter).isGreaterThanOrEqualTo(image.length / 1024);
+        assertThat(rejected("user", "rate")).isEqualTo(rejectedBefore + 1);
+
+        // 其他使用者不受影響
+        mockMvc.perform(streamAvatar(2)).andExpect(status().isOk());
+    }
+
+    @Test
+    void rejectsConcurrentUploadsFromSameUser() throws Exception {
+        UploadAdmissionLimiter.Permit inProgress = limiter.admit(3, 0);
+        try {
+            mockMvc.perform(multipart("/api/profile/3/background-image")
+                            .file(new MockMultipartFile("file", "background.jpg", MediaType.IMAGE_JPEG_VALUE, image)))
+                    .andExpect(status().isTooManyRequests())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        } finally {
+            inProgress.release();
+        }
+        mockMvc.perform(multipart("/api/profile/3/background-image")
+                        .file(new MockMultipartFile("file", "background.jpg", MediaType.IMAGE_JPEG_VALUE, image)))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void rejectsUploadsOverGlobalConcurrency() throws Exception {
+        double rejectedBefore = rejected("global", "concurrency");
+        List<UploadAdmissionLimiter.Permit> inProgress = List.of(limiter.admit(4, 0), limiter.admit(5, 0), limiter.admit(6, 0));
+        try {
+            mockMvc.perform(streamAvatar(7))
+                    .andExpect(status().isTooManyRequests())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+            assertThat(meterRegistry.get("profile.upload.in-flight").gauge().value()).isEqualTo(3);
+        } finally {
+            inProgress.forEach(UploadAdmissionLimiter.Permit::release);
+        }
+        assertThat(rejected("global", "concurrency")).isEqualTo(rejectedBefore + 1);
+        mockMvc.perform(streamAvatar(7)).andExpect(status().isOk());
+        assertThat(meterRegistry.get("profile.upload.in-flight").gauge().value()).isZero();
+    }
+
+    private RequestBuilder streamAvatar(long userId) {
+        return put("/api/profile/" + userId + "/avatar").contentType(MediaType.IMAGE_JPEG).content(image);
+    }
+
+    private double rejected(String scope, String reason) {
+        Counter counter = meterRegistry.find("profile.upload.rejected").tag("scope", scope).tag("reason", reason).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
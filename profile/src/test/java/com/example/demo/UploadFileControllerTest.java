@@ -0,0 +1,123 @@
+package com.example.demo;
+
+import com.example.demo.service.FileStorageService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * /uploads/** 的回應：immutable 快取標頭、ETag 條件式請求、單一 Range 請求 (含 If-Range)，
+ * 以及 ?w= 沒有對應縮圖時以原圖代替。
+ */
+@SpringBootTest(properties = {
+        "test.database=upload-file-controller",
+        "file.upload.dir=${java.io.tmpdir}/upload-file-controller-uploads/"})
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UploadFileControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    private byte[] image;
+    private String url;
+
+    @BeforeAll
+    void store() throws IOException {
+        image = EmbeddedProfileApplication.sampleJpeg(40, 30);
+        url = fileStorageService.storeFile(new MockMultipartFile("file", "photo.jpg", MediaType.IMAGE_JPEG_VALUE, image));
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "upload-file-controller-uploads"));
+    }
+
+    @Test
+    void servesTheFileAsImmutable() throws Exception {
+        mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+                .andExpect(content().bytes(image));
+    }
+
+    @Test
+    void matchingIfNoneMatchReturns304() throws Exception {
+        String etag = mockMvc.perform(get(url)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void servesARange() throws Exception {
+        mockMvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=0-9"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-9/" + image.length))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+                .andExpect(content().bytes(Arrays.copyOfRange(image, 0, 10)));
+    }
+
+    @Test
+    void servesASuffixRange() throws Exception {
+        int last = image.length - 1;
+        mockMvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes " + (image.length - 5) + "-" + last + "/" + image.length))
+                .andExpect(content().bytes(Arrays.copyOfRange(image, image.length - 5, image.length)));
+    }
+
+    @Test
+    void unsatisfiableRangeReturns416() throws Exception {
+        mockMvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=" + image.length + "-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + image.length))
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void mismatchedIfRangeReturnsTheFullFile() throws Exception {
+        mockMvc.perform(get(url)
+                        .header(HttpHeaders.RANGE, "bytes=0-9")
+                        .header(HttpHeaders.IF_RANGE, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().bytes(image));
+    }
+
+    @Test
+    void missingVariantFallsBackToTheOriginal() throws Exception {
+        mockMvc.perform(get(url).param("w", "20"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, public"))
+                .andExpect(content().bytes(image));
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.demo;
+
+import com.example.demo.repository.UserProfileRepository;
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.UploadLayoutMigration;
+import com.example.demo.service.UserProfileService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 上傳目錄遷移：從檢查點繼續、重複執行不會改變結果、縮圖目錄跟著原圖搬移、搬移後舊的單層 URL 仍然可以讀取。
+ * 不啟用 file.upload.migrate-layout (啟動時不會在背景執行)，測試中直接建立遷移工具並呼叫 migrate()。
+ */
+@SpringBootTest(properties = {
+        "test.database=upload-layout-migration",
+        "file.upload.dir=${java.io.tmpdir}/upload-layout-migration-uploads/"})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UploadLayoutMigrationTest {
+
+    private static final String CHECKPOINT_FILE = ".layout-migration";
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private UserProfileRepository userProfileRepository;
+
+    @Autowired
+    private UserProfileService userProfileService;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private UploadLayoutMigration migration;
+
+    @BeforeAll
+    void createMigration() {
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default')");
+        // 每批 2 筆，4 個使用者分成兩批
+        migration = new UploadLayoutMigration(fileStorageService, userProfileRepository, userProfileService, 2);
+    }
+
+    @BeforeEach
+    void reset() throws IOException {
+        jdbc.update("DELETE FROM user_profiles");
+        jdbc.update("DELETE FROM users");
+        try (Stream<Path> entries = Files.list(fileStorageService.getStorageLocation())) {
+            for (Path entry : entries.toList()) {
+                FileSystemUtils.deleteRecursively(entry);
+            }
+        }
+        for (long id = 1; id <= 4; id++) {
+            String url = "/uploads/avatar" + id + ".jpg";
+            Files.write(fileStorageService.getStorageLocation().resolve("avatar" + id + ".jpg"),
+                    EmbeddedProfileApplication.sampleJpeg(20, 20));
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+            jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, avatar_url, version) VALUES (?, 1, ?, 0)", id, url);
+        }
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "upload-layout-migration-uploads"));
+    }
+
+    @Test
+    void movesFilesWithTheirVariantsAndRewritesUrls() throws Exception {
+        Path flat = fileStorageService.getStorageLocation().resolve("avatar1.jpg");
+        Path flatVariant = FileStorageService.variantDirectory(flat).resolve("w64.jpg");
+        Files.createDirectories(flatVariant.getParent());
+        Files.write(flatVariant, new byte[] {1});
+
+        migration.migrate();
+
+        for (long id = 1; id <= 4; id++) {
+            assertThat(avatarUrl(id)).isEqualTo("/uploads/" + FileStorageService.shardedPathOf("avatar" + id + ".jpg"));
+        }
+        Path sharded = fileStorageService.resolveUrl(avatarUrl(1));
+        assertThat(flat).doesNotExist();
+        assertThat(FileStorageService.variantDirectory(flat)).doesNotExist();
+        assertThat(FileStorageService.variantDirectory(sharded).resolve("w64.jpg")).exists();
+        assertThat(checkpoint()).isEqualTo("done");
+    }
+
+    @Test
+    void legacyFlatUrlStillResolvesAfterTheMove() {
+        migration.migrate();
+
+        Path resolved = fileStorageService.resolveUrl("/uploads/avatar2.jpg");
+        assertThat(resolved).isNotNull();
+        assertThat(resolved).isEqualTo(fileStorageService.resolveUrl(avatarUrl(2)));
+    }
+
+    @Test
+    void resumesFromTheCheckpointOfAnInterruptedRun() throws Exception {
+        // 上次執行處理完第一批 (userId 1、2) 後中斷；這兩筆的 URL 還是舊的，確認不會再被處理
+        Files.writeString(fileStorageService.getStorageLocation().resolve(CHECKPOINT_FILE), "2");
+
+        migration.migrate();
+
+        assertThat(avatarUrl(1)).isEqualTo("/uploads/avatar1.jpg");
+        assertThat(avatarUrl(2)).isEqualTo("/uploads/avatar2.jpg");
+        assertThat(avatarUrl(3)).isEqualTo("/uploads/" + FileStorageService.shardedPathOf("avatar3.jpg"));
+        assertThat(avatarUrl(4)).isEqualTo("/uploads/" + FileStorageService.shardedPathOf("avatar4.jpg"));
+        // 剩餘檔案的階段仍會搬移檔案，未更新的舊 URL 照常可以讀取
+        assertThat(fileStorageService.getStorageLocation().resolve("avatar1.jpg")).doesNotExist();
+        assertThat(fileStorageService.resolveUrl(avatarUrl(1))).isNotNull();
+        assertThat(checkpoint()).isEqualTo("done");
+    }
+
+    @Test
+    void rerunningIsIdempotent() throws Exception {
+        migration.migrate();
+        String[] urls = {avatarUrl(1), avatarUrl(2), avatarUrl(3), avatarUrl(4)};
+        byte[] content = Files.readAllBytes(fileStorageService.resolveUrl(urls[0]));
+
+        migration.migrate();
+        // 移除檢查點後從頭再執行一次：已經搬移的檔案與 URL 都不會再變動
+        Files.delete(fileStorageService.getStorageLocation().resolve(CHECKPOINT_FILE));
+        migration.migrate();
+
+        assertThat(new String[] {avatarUrl(1), avatarUrl(2), avatarUrl(3), avatarUrl(4)}).containsExactly(urls);
+        assertThat(Files.readAllBytes(fileStorageService.resolveUrl(urls[0]))).isEqualTo(content);
+        assertThat(checkpoint()).isEqualTo("done");
+    }
+
+    private String avatarUrl(long userId) {
+        return jdbc.queryForObject("SELECT avatar_url FROM user_profiles WHERE user_id = ?", String.class, userId);
+    }
+
+    private String checkpoint() throws IOException {
+        return Files.readString(fileStorageService.getStorageLocation().resolve(CHECKPOINT_FILE));
+    }
+}
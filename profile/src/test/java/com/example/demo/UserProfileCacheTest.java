@@ -0,0 +1,163 @@
+package com.example.demo;
+
+import com.example.demo.dto.UserProfilePatch;
+import com.example.demo.dto.UserProfileView;
+import com.example.demo.repository.UserProfileRepository;
+import com.example.demo.service.DatabaseConcurrencyLimiter;
+import com.example.demo.service.FileDeletionQueue;
+import com.example.demo.service.FileStorageService;
+import com.example.demo.service.ImageVariantService;
+import com.example.demo.service.ReadYourWrites;
+import com.example.demo.service.ThemeService;
+import com.example.demo.service.UserProfileService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 個人檔案快取的失效：寫入在交易提交後才清除快取、回滾的寫入不影響快取，
+ * 以及和清除同時進行的載入不會把清除前讀到的舊資料放回快取 (版本號檢查)。
+ * 每個測試使用不同的使用者；沒有設定副本，read-your-writes 不會略過快取。
+ */
+@SpringBootTest(properties = {
+        "test.database=user-profile-cache",
+        "file.upload.dir=${java.io.tmpdir}/user-profile-cache-uploads/"})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UserProfileCacheTest {
+
+    @Autowired
+    private UserProfileService userProfileService;
+
+    @Autowired
+    private UserProfileRepository userProfileRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ThemeService themeService;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private FileDeletionQueue fileDeletionQueue;
+
+    @Autowired
+    private DatabaseConcurrencyLimiter databaseConcurrencyLimiter;
+
+    @Autowired
+    private ReadYourWrites readYourWrites;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void seed() {
+        jdbc.update("INSERT INTO themes (id, theme_name) VALUES (1, 'Default'), (2, 'Dark')");
+        for (long id = 1; id <= 3; id++) {
+            jdbc.update("INSERT INTO users (id, username, password) VALUES (?, ?, 'x')", id, "user" + id);
+        }
+        jdbc.update("INSERT INTO user_profiles (user_id, current_theme_id, version) SELECT id, 1, 0 FROM users");
+    }
+
+    @AfterAll
+    void deleteUploads() throws IOException {
+        FileSystemUtils.deleteRecursively(Path.of(System.getProperty("java.io.tmpdir"), "user-profile-cache-uploads"));
+    }
+
+    @Test
+    void writeInvalidatesTheCacheOnlyAfterCommit() {
+        assertThat(themeOf(userProfileService.getUserProfile(1L).orElseThrow())).isEqualTo(1L);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            userProfileService.patchUserProfile(1L, new UserProfilePatch(null, 2L));
+            // 提交前其他執行緒仍然從快取讀到舊內容，不會查詢資料庫 (也就不會把未提交前的資料重新放入快取)
+            long hits = userProfileService.getCacheStats().hitCount();
+            UserProfileView duringTransaction = CompletableFuture.supplyAsync(() -> userProfileService.getUserProfile(1L).orElseThrow())
+                    .orTimeout(5, TimeUnit.SECONDS).join();
+            assertThat(themeOf(duringTransaction)).isEqualTo(1L);
+            assertThat(userProfileService.getCacheStats().hitCount()).isEqualTo(hits + 1);
+        });
+
+        assertThat(themeOf(userProfileService.getUserProfile(1L).orElseThrow())).isEqualTo(2L);
+    }
+
+    @Test
+    void rolledBackWriteLeavesTheCacheUntouched() {
+        assertThat(themeOf(userProfileService.getUserProfile(2L).orElseThrow())).isEqualTo(1L);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            userProfileService.patchUserProfile(2L, new UserProfilePatch(null, 2L));
+            status.setRollbackOnly();
+        });
+
+        long hits = userProfileService.getCacheStats().hitCount();
+        assertThat(themeOf(userProfileService.getUserProfile(2L).orElseThrow())).isEqualTo(1L);
+        assertThat(userProfileService.getCacheStats().hitCount()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    void loadRacingAnInvalidationDoesNotCacheStaleData() throws Exception {
+        // 讓第一次載入在讀到資料之後、放入快取之前停住，期間提交一次更新
+        CountDownLatch loaded = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean blockNextLoad = new AtomicBoolean(true);
+        UserProfileRepository pausingRepository = (UserProfileRepository) Proxy.newProxyInstance(
+                UserProfileRepository.class.getClassLoader(), new Class<?>[] {UserProfileRepository.class},
+                (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(userProfileRepository, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                    if (method.getName().equals("findViewByUserId") && blockNextLoad.getAndSet(false)) {
+                        loaded.countDown();
+                        release.await(10, TimeUnit.SECONDS);
+                    }
+                    return result;
+                });
+        UserProfileService service = new UserProfileService(pausingRepository, fileStorageService, themeService,
+                imageVariantService, fileDeletionQueue, databaseConcurrencyLimiter, readYourWrites, transactionManager,
+                new SimpleMeterRegistry(), 100, Duration.ofMinutes(10));
+
+        CompletableFuture<UserProfileView> racingLoad = CompletableFuture.supplyAsync(() -> service.getUserProfile(3L).orElseThrow());
+        assertThat(loaded.await(10, TimeUnit.SECONDS)).isTrue();
+        new TransactionTemplate(transactionManager).executeWithoutResult(
+                status -> service.patchUserProfile(3L, new UserProfilePatch(null, 2L)));
+        release.countDown();
+
+        assertThat(themeOf(racingLoad.get(10, TimeUnit.SECONDS))).isEqualTo(1L); // 這次讀取本身看到的是舊內容
+        assertThat(themeOf(service.getUserProfile(3L).orElseThrow())).isEqualTo(2L); // 但舊內容沒有留在快取中
+    }
+
+    private static Long themeOf(UserProfileView profile) {
+        return profile.currentTheme().id();
+    }
+}